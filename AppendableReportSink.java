@@ -0,0 +1,44 @@
+package smartoffice.v1;
+
+import java.io.IOException;
+
+/**
+ * AppendableReportSink: human-readable report (title, header, one line per employee)
+ * written to any Appendable, e.g. System.out or a StringWriter.
+ */
+public class AppendableReportSink implements ReportSink {
+    private Appendable out;
+    private IOException error;
+
+    public AppendableReportSink(Appendable out) {
+        this.out = out;
+    }
+
+    public void begin(ReportRow.Kind kind, String title) {
+        write(title);
+        if (kind == ReportRow.Kind.DAILY) write("empId,empName,firstCheckIn,lastCheckOut,totalHours (approx),notes");
+        else write("empId,empName,daysPresent,totalHours(approx),notes");
+    }
+
+    public void row(ReportRow row) {
+        write(row.format(false));
+    }
+
+    public void end() {
+        // nothing buffered here
+    }
+
+    // First write error, or null
+    public IOException getError() {
+        return error;
+    }
+
+    private void write(String line) {
+        if (error != null) return;
+        try {
+            out.append(line).append(System.lineSeparator());
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+}
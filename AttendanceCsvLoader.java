@@ -0,0 +1,263 @@
+package smartoffice.v1;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * AttendanceCsvLoader: parallel startup loader for attendance.csv.
+ *
+ * - splits the file into byte ranges aligned on newlines
+ * - each range is memory-mapped and parsed on a fork-join pool
+ * - per-chunk results are returned in file order so the caller can merge them
+ *   into its record store exactly as the sequential loader would
+ * - small files (or parallelism 1) fall back to the plain BufferedReader loop
+ * - run main(path) to compare rows/second of both loaders on a real file
+ *
+ * Addresses: startup time on large attendance history, fork-join parallelism
+ */
+public class AttendanceCsvLoader {
+    // below this size splitting is not worth the task overhead
+    private static final long PARALLEL_THRESHOLD_BYTES = 1L << 20;
+    // upper bound for one mapped chunk (keeps each decode well under 2GB)
+    private static final long MAX_CHUNK_BYTES = 64L << 20;
+
+    private final int parallelism;
+
+    // statistics of the last load() call
+    private long lastRowCount;
+    private long lastRejectedCount;
+    private long lastElapsedNanos;
+
+    public AttendanceCsvLoader() {
+        this(ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    // Overloaded constructor: parallelism 1 forces the sequential loader
+    public AttendanceCsvLoader(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    // Load the file; result[i] holds the records of chunk i, chunks in file order.
+    // A missing file yields an empty result.
+    public AttendanceRecord[][] load(String path) throws IOException {
+        long start = System.nanoTime();
+        lastRowCount = 0;
+        lastRejectedCount = 0;
+        AttendanceRecord[][] result;
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            lastElapsedNanos = System.nanoTime() - start;
+            return new AttendanceRecord[0][];
+        }
+        try {
+            long size = channel.size();
+            if (parallelism == 1 || size < PARALLEL_THRESHOLD_BYTES) {
+                result = new AttendanceRecord[][] { loadSequential(path) };
+            } else {
+                result = loadParallel(channel, size);
+            }
+        } finally {
+            channel.close();
+        }
+        lastElapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    public long getLastRowCount() {
+        return lastRowCount;
+    }
+
+    public long getLastRejectedCount() {
+        return lastRejectedCount;
+    }
+
+    public long getLastElapsedNanos() {
+        return lastElapsedNanos;
+    }
+
+    public double getLastRowsPerSecond() {
+        if (lastElapsedNanos == 0) return 0.0;
+        return lastRowCount * 1_000_000_000.0 / lastElapsedNanos;
+    }
+
+    // ---------- sequential path (the original line-by-line loader) ----------
+    private AttendanceRecord[] loadSequential(String path) throws IOException {
+        RecordBuffer out = new RecordBuffer(16);
+        AttendanceCsvParser parser = new AttendanceCsvParser();
+        BufferedReader reader = null;
+        try {
+            // UTF-8 like parseChunk, so both paths read non-ASCII names the same way
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                AttendanceRecord r = parser.parseRecord(line, 0, line.length());
+                if (r != null) out.add(r);
+                else if (!line.trim().isEmpty()) lastRejectedCount++;
+            }
+        } finally {
+            if (reader != null) {
+                try { reader.close(); } catch (IOException ex) { /* ignore */ }
+            }
+        }
+        lastRowCount = out.size;
+        return out.toArray();
+    }
+
+    // ---------- parallel path ----------
+    private AttendanceRecord[][] loadParallel(FileChannel channel, long size) throws IOException {
+        int chunks = (int) Math.max(parallelism * 4L, (size + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+        long[] bounds = chunkBounds(channel, size, chunks);
+
+        AttendanceRecord[][] results = new AttendanceRecord[chunks][];
+        int[] rejected = new int[chunks];
+        ForkJoinPool pool = (parallelism == ForkJoinPool.getCommonPoolParallelism())
+                ? ForkJoinPool.commonPool() : new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new ChunkTask(channel, bounds, results, rejected, 0, chunks));
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw e;
+        } finally {
+            if (pool != ForkJoinPool.commonPool()) pool.shutdown();
+        }
+
+        for (int i = 0; i < chunks; i++) {
+            lastRowCount += results[i].length;
+            lastRejectedCount += rejected[i];
+        }
+        return results;
+    }
+
+    // split points moved forward to the byte after the next '\n'
+    private static long[] chunkBounds(FileChannel channel, long size, int chunks) throws IOException {
+        long[] bounds = new long[chunks + 1];
+        bounds[chunks] = size;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        for (int i = 1; i < chunks; i++) {
+            long pos = Math.max(bounds[i - 1], size * i / chunks);
+            boolean found = false;
+            while (!found && pos < size) {
+                probe.clear();
+                int n = channel.read(probe, pos);
+                if (n <= 0) break;
+                for (int k = 0; k < n; k++) {
+                    if (probe.get(k) == '\n') { pos += k + 1; found = true; break; }
+                }
+                if (!found) pos += n;
+            }
+            bounds[i] = Math.min(pos, size);
+        }
+        return bounds;
+    }
+
+    // parse one newline-aligned byte range
+    private static AttendanceRecord[] parseChunk(FileChannel channel, long start, long end, final int[] rejected,
+                                                 final int slot) throws IOException {
+        if (end <= start) return new AttendanceRecord[0];
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        String chunk = StandardCharsets.UTF_8.decode(mapped).toString();
+
+        // rough estimate of rows (~48 chars per row) to avoid most resizes
+        final RecordBuffer out = new RecordBuffer(Math.max(16, chunk.length() / 48));
+        new AttendanceCsvParser().parseLines(chunk, 0, chunk.length(), new AttendanceCsvParser.Handler() {
+            public void onRecord(AttendanceRecord rec) {
+                out.add(rec);
+            }
+
+            public void onMalformed(int lineNumber, CharSequence text, int from, int to, String reason) {
+                rejected[slot]++;
+            }
+        });
+        return out.toArray();
+    }
+
+    // divide-and-conquer over chunk indices [lo, hi)
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final AttendanceRecord[][] results;
+        private final int[] rejected;
+        private final int lo;
+        private final int hi;
+
+        ChunkTask(FileChannel channel, long[] bounds, AttendanceRecord[][] results, int[] rejected, int lo, int hi) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.results = results;
+            this.rejected = rejected;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute() {
+            if (hi - lo == 1) {
+                try {
+                    results[lo] = parseChunk(channel, bounds[lo], bounds[lo + 1], rejected, lo);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new ChunkTask(channel, bounds, results, rejected, lo, mid),
+                      new ChunkTask(channel, bounds, results, rejected, mid, hi));
+        }
+    }
+
+    // manually grown record array (no Lists)
+    private static class RecordBuffer {
+        private AttendanceRecord[] items;
+        private int size;
+
+        RecordBuffer(int capacity) {
+            items = new AttendanceRecord[capacity];
+        }
+
+        void add(AttendanceRecord r) {
+            if (size == items.length) {
+                AttendanceRecord[] bigger = new AttendanceRecord[items.length * 2];
+                System.arraycopy(items, 0, bigger, 0, size);
+                items = bigger;
+            }
+            items[size++] = r;
+        }
+
+        AttendanceRecord[] toArray() {
+            if (size == items.length) return items;
+            AttendanceRecord[] out = new AttendanceRecord[size];
+            System.arraycopy(items, 0, out, 0, size);
+            return out;
+        }
+    }
+
+    // Benchmark: java smartoffice.v1.AttendanceCsvLoader attendance.csv
+    public static void main(String[] args) throws IOException {
+        String path = (args.length > 0) ? args[0] : "attendance.csv";
+        AttendanceCsvLoader sequential = new AttendanceCsvLoader(1);
+        AttendanceCsvLoader parallel = new AttendanceCsvLoader();
+        for (int round = 1; round <= 3; round++) {
+            sequential.load(path);
+            parallel.load(path);
+            System.out.println("round " + round
+                    + ": sequential " + sequential.getLastRowCount() + " rows, "
+                    + String.format("%.0f", sequential.getLastRowsPerSecond()) + " rows/s"
+                    + " | parallel(" + parallel.parallelism + ") " + parallel.getLastRowCount() + " rows, "
+                    + String.format("%.0f", parallel.getLastRowsPerSecond()) + " rows/s");
+        }
+    }
+}
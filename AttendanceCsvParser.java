@@ -0,0 +1,282 @@
+package smartoffice.v1;
+
+/**
+ * AttendanceCsvParser: hand-rolled parser for attendance CSV rows.
+ *
+ * Row shape: employeeId,employeeName,method,isCheckIn,timestampIso
+ *
+ * - works over any CharSequence with start/end offsets (no split, trim or substring)
+ * - the integer id and the fixed-shape ISO timestamp (yyyy-MM-ddTHH:mm[:ss[.fffffffff]])
+ *   are parsed digit by digit straight into fields; the record gets the timestamp as
+ *   an epoch second + nano (EpochTime), no LocalDateTime
+ * - quoted names ("Doe, Jane", "say ""hi""") are handled; only an escaped name allocates a copy
+ * - repeated names and methods are served from small caches instead of new Strings
+ * - malformed rows are reported through Handler.onMalformed, never by throwing
+ *
+ * One parser instance is not thread-safe; use one per thread or chunk.
+ *
+ * Addresses: CSV parsing hot path of every load and import
+ */
+public class AttendanceCsvParser {
+
+    // Callback for parsed rows
+    public interface Handler {
+        void onRecord(AttendanceRecord rec);
+
+        // start/end delimit the offending line inside 'text'
+        void onMalformed(int lineNumber, CharSequence text, int start, int end, String reason);
+    }
+
+    private static final int NAME_CACHE_SIZE = 1024; // power of two
+    private static final String RFID = "RFID";
+
+    private int[] cachedIds;
+    private String[] cachedNames;
+    private String lastMethod = RFID;
+
+    // reason of the last parseRecord failure (null when it succeeded)
+    private String lastError;
+
+    // cursor shared by the field parsers of one row
+    private int pos;
+
+    // timestamp fields filled by parseTimestamp
+    private int year, month, day, hour, minute, second, nano;
+
+    // Parse every line of text[start, end); returns number of records delivered
+    public int parseLines(CharSequence text, int start, int end, Handler handler) {
+        int parsed = 0;
+        int lineNumber = 0;
+        int lineStart = start;
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && text.charAt(lineEnd) != '\n') lineEnd++;
+            lineNumber++;
+            if (!isBlank(text, lineStart, lineEnd)) {
+                AttendanceRecord rec = parseRecord(text, lineStart, lineEnd);
+                if (rec != null) {
+                    handler.onRecord(rec);
+                    parsed++;
+                } else {
+                    handler.onMalformed(lineNumber, text, lineStart, lineEnd, lastError);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return parsed;
+    }
+
+    // Parse one row text[start, end); returns null (see getLastError) when malformed
+    public AttendanceRecord parseRecord(CharSequence text, int start, int end) {
+        lastError = null;
+        // ignore a trailing '\r' and surrounding blanks
+        while (end > start && isSpace(text.charAt(end - 1))) end--;
+        pos = start;
+
+        skipSpaces(text, end);
+        int id = parseInt(text, end);
+        if (lastError != null) return null;
+        if (!expectComma(text, end, "employeeId")) return null;
+
+        String name = parseName(text, end, id);
+        if (name == null) return null;
+        if (!expectComma(text, end, "employeeName")) return null;
+
+        String method = parseMethod(text, end);
+        if (!expectComma(text, end, "method")) return null;
+
+        skipSpaces(text, end);
+        boolean isCheckIn = false;
+        int flagStart = pos;
+        while (pos < end && text.charAt(pos) != ',') pos++;
+        int flagEnd = trimEnd(text, flagStart, pos);
+        if (flagEnd - flagStart == 1 && text.charAt(flagStart) == '1') isCheckIn = true;
+        if (!expectComma(text, end, "isCheckIn")) return null;
+
+        skipSpaces(text, end);
+        if (!parseTimestamp(text, end)) return null;
+        return new AttendanceRecord(id, name, method, isCheckIn,
+                EpochTime.toEpochSecond(year, month, day, hour, minute, second), nano);
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    // ---------- fields ----------
+    private int parseInt(CharSequence text, int end) {
+        boolean negative = false;
+        if (pos < end && text.charAt(pos) == '-') { negative = true; pos++; }
+        int digits = 0;
+        long value = 0;
+        while (pos < end) {
+            char c = text.charAt(pos);
+            if (c < '0' || c > '9') break;
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE + 1L) { lastError = "employeeId out of range"; return 0; }
+            digits++;
+            pos++;
+        }
+        skipSpaces(text, end);
+        if (digits == 0) { lastError = "employeeId is not a number"; return 0; }
+        if (!negative && value > Integer.MAX_VALUE) { lastError = "employeeId out of range"; return 0; }
+        return (int) (negative ? -value : value);
+    }
+
+    private String parseName(CharSequence text, int end, int id) {
+        skipSpaces(text, end);
+        if (pos < end && text.charAt(pos) == '"') {
+            int from = ++pos;
+            boolean escaped = false;
+            while (true) {
+                if (pos >= end) { lastError = "unterminated quoted name"; return null; }
+                if (text.charAt(pos) == '"') {
+                    if (pos + 1 < end && text.charAt(pos + 1) == '"') { escaped = true; pos += 2; continue; }
+                    break;
+                }
+                pos++;
+            }
+            int to = pos++;
+            skipSpaces(text, end);
+            return escaped ? unescape(text, from, to) : cachedName(text, from, to, id);
+        }
+        int from = pos;
+        while (pos < end && text.charAt(pos) != ',') pos++;
+        return cachedName(text, from, trimEnd(text, from, pos), id);
+    }
+
+    private String parseMethod(CharSequence text, int end) {
+        skipSpaces(text, end);
+        int from = pos;
+        while (pos < end && text.charAt(pos) != ',') pos++;
+        int to = trimEnd(text, from, pos);
+        if (regionEquals(text, from, to, lastMethod)) return lastMethod;
+        lastMethod = text.subSequence(from, to).toString();
+        return lastMethod;
+    }
+
+    // yyyy-MM-ddTHH:mm[:ss[.f{1,9}]] up to the end of the row
+    private boolean parseTimestamp(CharSequence text, int end) {
+        year = digits(text, end, 4);
+        if (year < 0 || !expect(text, end, '-')) return badTimestamp();
+        month = digits(text, end, 2);
+        if (month < 1 || month > 12 || !expect(text, end, '-')) return badTimestamp();
+        day = digits(text, end, 2);
+        if (day < 1 || day > lengthOfMonth(year, month) || !expect(text, end, 'T')) return badTimestamp();
+        hour = digits(text, end, 2);
+        if (hour < 0 || hour > 23 || !expect(text, end, ':')) return badTimestamp();
+        minute = digits(text, end, 2);
+        if (minute < 0 || minute > 59) return badTimestamp();
+        second = 0;
+        nano = 0;
+        if (pos < end && text.charAt(pos) == ':') {
+            pos++;
+            second = digits(text, end, 2);
+            if (second < 0 || second > 59) return badTimestamp();
+            if (pos < end && text.charAt(pos) == '.') {
+                pos++;
+                int count = 0;
+                while (pos < end && count < 9) {
+                    char c = text.charAt(pos);
+                    if (c < '0' || c > '9') break;
+                    nano = nano * 10 + (c - '0');
+                    count++;
+                    pos++;
+                }
+                if (count == 0) return badTimestamp();
+                for (int i = count; i < 9; i++) nano *= 10;
+            }
+        }
+        if (pos != end) return badTimestamp();
+        return true;
+    }
+
+    private boolean badTimestamp() {
+        lastError = "timestamp is not ISO yyyy-MM-ddTHH:mm:ss";
+        return false;
+    }
+
+    // exactly n digits at pos, or -1
+    private int digits(CharSequence text, int end, int n) {
+        if (pos + n > end) return -1;
+        int value = 0;
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(pos + i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        pos += n;
+        return value;
+    }
+
+    private boolean expect(CharSequence text, int end, char c) {
+        if (pos < end && text.charAt(pos) == c) { pos++; return true; }
+        return false;
+    }
+
+    private boolean expectComma(CharSequence text, int end, String after) {
+        if (pos < end && text.charAt(pos) == ',') { pos++; return true; }
+        lastError = "missing column after " + after;
+        return false;
+    }
+
+    // ---------- helpers ----------
+    private String cachedName(CharSequence text, int from, int to, int id) {
+        if (cachedIds == null) {
+            cachedIds = new int[NAME_CACHE_SIZE];
+            cachedNames = new String[NAME_CACHE_SIZE];
+        }
+        int slot = id & (NAME_CACHE_SIZE - 1);
+        String cached = cachedNames[slot];
+        if (cached != null && cachedIds[slot] == id && regionEquals(text, from, to, cached)) return cached;
+        String name = text.subSequence(from, to).toString();
+        cachedIds[slot] = id;
+        cachedNames[slot] = name;
+        return name;
+    }
+
+    // copy text[from, to) collapsing "" into "
+    private static String unescape(CharSequence text, int from, int to) {
+        char[] out = new char[to - from];
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            out[n++] = c;
+            if (c == '"' && i + 1 < to && text.charAt(i + 1) == '"') i++;
+        }
+        return new String(out, 0, n);
+    }
+
+    private static boolean regionEquals(CharSequence text, int from, int to, String s) {
+        if (to - from != s.length()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (text.charAt(from + i) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private void skipSpaces(CharSequence text, int end) {
+        while (pos < end && isSpace(text.charAt(pos))) pos++;
+    }
+
+    private static int trimEnd(CharSequence text, int from, int to) {
+        while (to > from && isSpace(text.charAt(to - 1))) to--;
+        return to;
+    }
+
+    private static boolean isBlank(CharSequence text, int from, int to) {
+        return trimEnd(text, from, to) == from;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+            return leap ? 29 : 28;
+        }
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+    }
+}
@@ -0,0 +1,270 @@
+package smartoffice.v1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * AttendanceCsvWriter: long-lived append channel for attendance.csv with group commit.
+ *
+ * - the file is opened once and kept open (no open/flush/close per scan)
+ * - rows are buffered and written together when maxBatchRows is reached
+ *   or maxDelayMillis has passed since the first pending row
+ * - a background flusher thread does the write while new rows fill a second buffer
+ * - Durability.RELAXED: append() returns immediately, the batch is written later
+ * - Durability.STRICT: every batch is fsync'ed and append() waits until its batch is durable;
+ *   enqueue() queues without waiting and hands back a Receipt to wait on later
+ * - a failed write may leave a torn row behind, so the writer stops at the first failure:
+ *   that batch and every later row are reported as not written
+ *
+ * Addresses: I/O batching, durability modes, threads (wait/notify)
+ */
+public class AttendanceCsvWriter {
+    public enum Durability { RELAXED, STRICT }
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final String path;
+    private final Durability durability;
+    private final int maxBatchRows;
+    private final long maxDelayMillis;
+
+    private final Object lock = new Object();
+    private FileChannel channel;
+    private Thread flusher;
+    private Thread shutdownHook;
+    private boolean closed;
+
+    // rows waiting for the next batch (manually grown byte array)
+    private byte[] pending = new byte[8192];
+    private int pendingBytes;
+    private int pendingRows;
+    private long firstPendingAt;
+
+    // sequence numbers: every appended row gets one, durableSeq trails behind
+    private long appendedSeq;
+    private long durableSeq;
+    // first row of the batch that failed to write; nothing from there on reaches the file
+    private long failedSeq = Long.MAX_VALUE;
+
+    public AttendanceCsvWriter(String path, Durability durability, int maxBatchRows, long maxDelayMillis) {
+        this.path = path;
+        this.durability = durability;
+        this.maxBatchRows = Math.max(1, maxBatchRows);
+        this.maxDelayMillis = Math.max(0, maxDelayMillis);
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    // Queue one CSV row. In STRICT mode blocks until the row's batch is on disk.
+    // Returns false if the writer is closed or has failed, or (STRICT) the batch failed to write.
+    public boolean append(String row) {
+        return append(new String[] { row }, 0, 1);
+    }
+
+    // Overloaded: queue rows[from, to) together; they reach the file in the same write,
+    // and in STRICT mode the caller waits once for all of them
+    public boolean append(String[] rows, int from, int to) {
+        return enqueue(rows, from, to).await();
+    }
+
+    // Queue rows[from, to) like append() but return at once; the caller may release its own
+    // locks before waiting on the receipt, so other threads can join the same group commit
+    public Receipt enqueue(String[] rows, int from, int to) {
+        if (to <= from) return new Receipt(this, 0);
+        byte[][] bytes = new byte[to - from][];
+        for (int i = from; i < to; i++) bytes[i - from] = rows[i].getBytes(StandardCharsets.UTF_8);
+        synchronized (lock) {
+            if (closed || failedSeq != Long.MAX_VALUE) return new Receipt(this, -1);
+            if (!ensureOpen()) return new Receipt(this, -1);
+            for (int i = 0; i < bytes.length; i++) {
+                ensurePendingCapacity(bytes[i].length + LINE_SEPARATOR.length);
+                System.arraycopy(bytes[i], 0, pending, pendingBytes, bytes[i].length);
+                pendingBytes += bytes[i].length;
+                System.arraycopy(LINE_SEPARATOR, 0, pending, pendingBytes, LINE_SEPARATOR.length);
+                pendingBytes += LINE_SEPARATOR.length;
+            }
+            if (pendingRows == 0) firstPendingAt = System.currentTimeMillis();
+            pendingRows += bytes.length;
+            appendedSeq += bytes.length;
+            if (pendingRows == bytes.length || pendingRows >= maxBatchRows) lock.notifyAll();
+            return new Receipt(this, appendedSeq);
+        }
+    }
+
+    // STRICT: wait until the rows up to seq are on disk; false if their batch failed
+    private boolean awaitDurable(long seq) {
+        if (durability != Durability.STRICT) return true;
+        synchronized (lock) {
+            while (durableSeq < seq) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return seq < failedSeq;
+        }
+    }
+
+    // Rows queued by enqueue(): await() returns like append() would have
+    // (still valid after the writer is closed, which writes out everything queued)
+    public static class Receipt {
+        private final AttendanceCsvWriter writer;
+        private final long seq; // last row's sequence number, 0 = nothing queued, -1 = rejected
+
+        Receipt(AttendanceCsvWriter writer, long seq) {
+            this.writer = writer;
+            this.seq = seq;
+        }
+
+        public boolean await() {
+            if (seq <= 0) return seq == 0;
+            return writer.awaitDurable(seq);
+        }
+    }
+
+    // Write out everything queued so far and wait for it
+    public void flush() {
+        synchronized (lock) {
+            long target = appendedSeq;
+            if (flusher == null) return;
+            firstPendingAt = 0; // makes the flusher treat the batch as overdue
+            lock.notifyAll();
+            while (durableSeq < target) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Flush pending rows, stop the flusher thread and close the file
+    public void close() {
+        Thread t;
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            lock.notifyAll();
+            t = flusher;
+        }
+        if (t != null) {
+            try { t.join(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+        synchronized (lock) {
+            if (channel != null) {
+                try { channel.close(); } catch (IOException e) { /* ignore */ }
+                channel = null;
+            }
+        }
+        // writers are closed and replaced at every WAL checkpoint; don't let hooks pile up
+        if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM already shutting down
+            }
+        }
+    }
+
+    // open the channel and start the flusher on first use (caller holds lock)
+    private boolean ensureOpen() {
+        if (channel != null) return true;
+        try {
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Failed to open attendance CSV: " + e.getMessage());
+            return false;
+        }
+        flusher = new Thread(new Runnable() {
+            public void run() {
+                flushLoop();
+            }
+        }, "attendance-csv-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+        shutdownHook = new Thread(new Runnable() {
+            public void run() {
+                close();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        return true;
+    }
+
+    private void ensurePendingCapacity(int extra) {
+        if (pendingBytes + extra <= pending.length) return;
+        int size = pending.length * 2;
+        while (size < pendingBytes + extra) size *= 2;
+        byte[] bigger = new byte[size];
+        System.arraycopy(pending, 0, bigger, 0, pendingBytes);
+        pending = bigger;
+    }
+
+    private void flushLoop() {
+        byte[] spare = new byte[pending.length];
+        while (true) {
+            byte[] batch;
+            int batchBytes;
+            long batchLastSeq;
+            long batchFirstSeq;
+            synchronized (lock) {
+                // wait for work, then for the batch to fill up or become overdue
+                while (!closed && pendingRows == 0) {
+                    try { lock.wait(); } catch (InterruptedException e) { return; }
+                }
+                while (!closed && pendingRows < maxBatchRows) {
+                    long remaining = firstPendingAt + maxDelayMillis - System.currentTimeMillis();
+                    if (remaining <= 0) break;
+                    try { lock.wait(remaining); } catch (InterruptedException e) { return; }
+                }
+                if (pendingRows == 0) return; // closed with nothing left
+
+                // swap buffers so appends continue while this batch is written
+                batch = pending;
+                batchBytes = pendingBytes;
+                batchLastSeq = appendedSeq;
+                batchFirstSeq = appendedSeq - pendingRows + 1;
+                pending = (spare.length >= batch.length) ? spare : new byte[batch.length];
+                pendingBytes = 0;
+                pendingRows = 0;
+            }
+
+            boolean ok;
+            synchronized (lock) {
+                ok = failedSeq == Long.MAX_VALUE;
+            }
+            // after a failure the rows queued behind it are dropped, not written past a torn row
+            if (ok) ok = writeBatch(batch, batchBytes);
+
+            synchronized (lock) {
+                if (!ok) failedSeq = Math.min(failedSeq, batchFirstSeq);
+                durableSeq = batchLastSeq;
+                spare = batch;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private boolean writeBatch(byte[] batch, int length) {
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(batch, 0, length);
+            while (buf.hasRemaining()) channel.write(buf);
+            if (durability == Durability.STRICT) channel.force(false);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to append attendance CSV: " + e.getMessage());
+            return false;
+        }
+    }
+}
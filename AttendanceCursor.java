@@ -0,0 +1,374 @@
+package smartoffice.v1;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * AttendanceCursor: lazy, resumable result of AttendanceManager.query().
+ *
+ * - records come in (timestamp, employee id, direction) order, one day at a time
+ * - each fetch takes the manager's read lock for one day only and materializes at most
+ *   FETCH_ROWS records; filters are applied on primitive row data before that
+ *   (employee filter -> employee+date buckets of the index and segments)
+ * - a fetch starts each source at the last position (binary search in the day's sorted
+ *   rows) and reads only until it has a page of matches, so paging through a day is linear
+ *   in the rows returned, not quadratic
+ * - getPosition() is an opaque string for the last record returned; pass it to
+ *   AttendanceQuery.resumeAfter() to continue later (scans recorded in the meantime
+ *   after that point are picked up); repeated identical scans are counted, so none is lost
+ *   or returned twice at a page boundary
+ * - also usable as a Stream (stream()); nothing is read until it is consumed
+ * - ShardedAttendanceManager merges one cursor per shard by the same key; an employee's
+ *   scans live in one shard, so a position is valid for every shard's cursor
+ *
+ * Addresses: Iterator, lazy evaluation, paging through large ranges
+ */
+public class AttendanceCursor implements Iterator<AttendanceRecord> {
+    private static final int FETCH_ROWS = 512;
+    private static final long SECONDS_PER_DAY = 86400;
+
+    private final AttendanceManager manager;
+    private final AttendanceQuery query;
+    private final AttendanceCursor[] parts; // merged shard cursors (null when reading a manager)
+    private long day;
+    private Position last;
+
+    private AttendanceRecord[] page = new AttendanceRecord[0];
+    private int pagePos;
+    private boolean dayDone; // the current day has nothing left after 'last'
+
+    AttendanceCursor(AttendanceManager manager, AttendanceQuery query) {
+        this.manager = manager;
+        this.query = query;
+        this.parts = null;
+        this.last = query.getResumeAfter();
+        this.day = query.getStartDay();
+        if (last != null) day = Math.max(day, Math.floorDiv(last.epochSecond, SECONDS_PER_DAY));
+    }
+
+    // Overloaded: merge of cursors over disjoint sets of employees
+    AttendanceCursor(AttendanceCursor[] parts, AttendanceQuery query) {
+        this.manager = null;
+        this.query = query;
+        this.parts = parts;
+        this.last = query.getResumeAfter();
+    }
+
+    public boolean hasNext() {
+        if (parts != null) {
+            for (int k = 0; k < parts.length; k++) {
+                if (parts[k].hasNext()) return true;
+            }
+            return false;
+        }
+        while (pagePos == page.length) {
+            if (dayDone) {
+                day++;
+                dayDone = false;
+            }
+            if (day > query.getEndDay()) return false;
+            page = manager.fetchPage(query, day, last, FETCH_ROWS);
+            pagePos = 0;
+            if (page.length < FETCH_ROWS) dayDone = true;
+        }
+        return true;
+    }
+
+    public AttendanceRecord next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        AttendanceRecord rec;
+        if (parts != null) {
+            // smallest head of the parts (k is small: one per shard)
+            int best = -1;
+            for (int k = 0; k < parts.length; k++) {
+                if (!parts[k].hasNext()) continue;
+                if (best < 0 || compare(parts[k].peek(), parts[best].peek()) < 0) best = k;
+            }
+            rec = parts[best].next();
+        } else {
+            rec = page[pagePos];
+            page[pagePos++] = null;
+        }
+        last = Position.after(last, rec);
+        return rec;
+    }
+
+    // the record next() returns (a manager's cursor, after hasNext() returned true)
+    private AttendanceRecord peek() {
+        return page[pagePos];
+    }
+
+    private static int compare(AttendanceRecord a, AttendanceRecord b) {
+        return Position.compare(a.getEpochSecond(), a.getNano(), a.getEmployeeId(), a.isCheckIn(),
+                b.getEpochSecond(), b.getNano(), b.getEmployeeId(), b.isCheckIn());
+    }
+
+    // Opaque position of the last record returned (null before the first one)
+    public String getPosition() {
+        return (last == null) ? null : last.toString();
+    }
+
+    // Up to max further records (fewer at the end of the range); for dashboards paging
+    public AttendanceRecord[] nextPage(int max) {
+        AttendanceRecord[] out = new AttendanceRecord[Math.max(0, max)];
+        int c = 0;
+        while (c < out.length && hasNext()) out[c++] = next();
+        if (c == out.length) return out;
+        AttendanceRecord[] exact = new AttendanceRecord[c];
+        System.arraycopy(out, 0, exact, 0, c);
+        return exact;
+    }
+
+    // The remaining records as a sequential, ordered Stream
+    public Stream<AttendanceRecord> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // ========================= FETCH =============================
+    // Up to 'limit' records of one day matching the query and ordered after 'after'.
+    // Called by AttendanceManager with the partitions of that day loaded and read-locked.
+    static AttendanceRecord[] collectDay(AttendancePartition[] parts, AttendanceSegment[] segments,
+                                         AttendanceQuery query, long day, Position after, int limit) {
+        Candidates c = new Candidates(query, after);
+        long fromSec = day * SECONDS_PER_DAY;
+        int[] employees = query.getEmployees();
+        for (int p = 0; p < parts.length; p++) {
+            AttendanceIndex index = parts[p].getIndex();
+            AttendanceStore store = parts[p].getStore();
+            if (employees == null) {
+                c.addDayRows(store, index, day, fromSec, limit);
+            } else {
+                for (int e = 0; e < employees.length; e++) c.addStoreRows(store, index.rowsForEmployeeDay(employees[e], day));
+            }
+            AttendanceSegment[] snapshots = parts[p].getSnapshots();
+            for (int s = 0; s < snapshots.length; s++) {
+                if (snapshots[s].overlapsDays(day, day)) c.addSegmentRows(snapshots[s], employees, day, fromSec, limit);
+            }
+        }
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].overlapsDays(day, day)) c.addSegmentRows(segments[i], employees, day, fromSec, limit);
+        }
+        return c.take(limit);
+    }
+
+    // matching rows of one day as primitive columns; only the first 'limit' are materialized
+    private static class Candidates {
+        private final AttendanceQuery query;
+        private final Position after;
+        private int repeatsToSkip; // scans equal to 'after' that were already returned
+        private long[] second = new long[64];
+        private int[] nano = new int[64];
+        private int[] employee = new int[64];
+        private boolean[] checkIn = new boolean[64];
+        private Object[] source = new Object[64]; // AttendanceStore or AttendanceSegment
+        private int[] row = new int[64];
+        private int size;
+
+        Candidates(AttendanceQuery query, Position after) {
+            this.query = query;
+            this.after = after;
+            this.repeatsToSkip = (after == null) ? 0 : after.repeat;
+        }
+
+        void addStoreRows(AttendanceStore store, int[] rows) {
+            for (int i = 0; i < rows.length; i++) {
+                int r = rows[i];
+                add(store, r, store.getEpochSecond(r), store.getNano(r), store.getEmployeeId(r), store.isCheckIn(r));
+            }
+        }
+
+        // the day's rows of the index from 'after' on, until this source has 'limit' matches
+        // (plus rows sharing the last match's timestamp, which the key may order before it)
+        void addDayRows(AttendanceStore store, AttendanceIndex index, long day, long fromSec, int limit) {
+            int from = (after != null && after.epochSecond >= fromSec)
+                    ? index.firstDayRowAtOrAfter(store, day, after.epochSecond, after.nano) : 0;
+            int[] rows = new int[Math.max(16, Math.min(limit, FETCH_ROWS))];
+            int taken = 0;
+            long lastSec = 0;
+            int lastNano = 0;
+            for (int n = index.rowsForDay(day, from, rows); n > 0; n = index.rowsForDay(day, from, rows)) {
+                for (int i = 0; i < n; i++) {
+                    int r = rows[i];
+                    long sec = store.getEpochSecond(r);
+                    int ns = store.getNano(r);
+                    if (taken >= limit && (sec != lastSec || ns != lastNano)) return;
+                    if (add(store, r, sec, ns, store.getEmployeeId(r), store.isCheckIn(r))) {
+                        taken++;
+                        lastSec = sec;
+                        lastNano = ns;
+                    }
+                }
+                from += n;
+            }
+        }
+
+        void addSegmentRows(AttendanceSegment seg, int[] employees, long day, long fromSec, int limit) {
+            if (employees != null) {
+                for (int e = 0; e < employees.length; e++) {
+                    int[] rows = seg.rowsForEmployeeDay(employees[e], day);
+                    for (int i = 0; i < rows.length; i++) addSegmentRow(seg, rows[i]);
+                }
+                return;
+            }
+            // same early stop as addDayRows
+            long endSec = fromSec + SECONDS_PER_DAY;
+            int taken = 0;
+            long lastSec = 0;
+            int lastNano = 0;
+            long startSec = (after != null) ? Math.max(fromSec, after.epochSecond) : fromSec;
+            for (int r = seg.firstRowAtOrAfter(startSec); r < seg.getRowCount() && seg.getEpochSecond(r) < endSec; r++) {
+                long sec = seg.getEpochSecond(r);
+                int ns = seg.getNano(r);
+                if (taken >= limit && (sec != lastSec || ns != lastNano)) return;
+                if (addSegmentRow(seg, r)) {
+                    taken++;
+                    lastSec = sec;
+                    lastNano = ns;
+                }
+            }
+        }
+
+        private boolean addSegmentRow(AttendanceSegment seg, int r) {
+            return add(seg, r, seg.getEpochSecond(r), seg.getNano(r), seg.getEmployeeId(r), seg.isCheckIn(r));
+        }
+
+        // false if the row is filtered out or not after the position
+        private boolean add(Object src, int r, long sec, int ns, int emp, boolean in) {
+            if (!query.wantsDirection(in) || !query.wantsEmployee(emp)) return false;
+            if (after != null) {
+                int cmp = Position.compare(sec, ns, emp, in, after.epochSecond, after.nano, after.employeeId, after.checkIn);
+                if (cmp < 0) return false;
+                if (cmp == 0 && repeatsToSkip > 0) {
+                    repeatsToSkip--;
+                    return false;
+                }
+            }
+            if (size == second.length) grow();
+            second[size] = sec;
+            nano[size] = ns;
+            employee[size] = emp;
+            checkIn[size] = in;
+            source[size] = src;
+            row[size] = r;
+            size++;
+            return true;
+        }
+
+        // sort candidate positions by key and materialize the first 'limit'
+        AttendanceRecord[] take(int limit) {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+            sort(order, new int[size], 0, size);
+            AttendanceRecord[] out = new AttendanceRecord[Math.min(limit, size)];
+            for (int i = 0; i < out.length; i++) {
+                int k = order[i];
+                out[i] = (source[k] instanceof AttendanceStore)
+                        ? ((AttendanceStore) source[k]).get(row[k])
+                        : ((AttendanceSegment) source[k]).getRecord(row[k]);
+            }
+            return out;
+        }
+
+        // merge sort of candidate positions (stable; runs from one source are already in time order)
+        private void sort(int[] a, int[] tmp, int from, int to) {
+            if (to - from < 2) return;
+            int mid = (from + to) >>> 1;
+            sort(a, tmp, from, mid);
+            sort(a, tmp, mid, to);
+            if (compare(a[mid - 1], a[mid]) <= 0) return;
+            int i = from, j = mid, k = from;
+            while (i < mid && j < to) tmp[k++] = (compare(a[j], a[i]) < 0) ? a[j++] : a[i++];
+            while (i < mid) tmp[k++] = a[i++];
+            while (j < to) tmp[k++] = a[j++];
+            System.arraycopy(tmp, from, a, from, to - from);
+        }
+
+        private int compare(int x, int y) {
+            return Position.compare(second[x], nano[x], employee[x], checkIn[x],
+                    second[y], nano[y], employee[y], checkIn[y]);
+        }
+
+        private void grow() {
+            int n = second.length * 2;
+            long[] s = new long[n];
+            System.arraycopy(second, 0, s, 0, size);
+            second = s;
+            int[] ns = new int[n];
+            System.arraycopy(nano, 0, ns, 0, size);
+            nano = ns;
+            int[] e = new int[n];
+            System.arraycopy(employee, 0, e, 0, size);
+            employee = e;
+            boolean[] in = new boolean[n];
+            System.arraycopy(checkIn, 0, in, 0, size);
+            checkIn = in;
+            Object[] src = new Object[n];
+            System.arraycopy(source, 0, src, 0, size);
+            source = src;
+            int[] r = new int[n];
+            System.arraycopy(row, 0, r, 0, size);
+            row = r;
+        }
+    }
+
+    // ========================= POSITION =============================
+    // sort key of one record: timestamp, then employee id, then check-out before check-in
+    static class Position {
+        private static final String PREFIX = "ac1.";
+
+        final long epochSecond;
+        final int nano;
+        final int employeeId;
+        final boolean checkIn;
+        final int repeat; // how many scans with exactly this key have been returned
+
+        Position(long epochSecond, int nano, int employeeId, boolean checkIn, int repeat) {
+            this.epochSecond = epochSecond;
+            this.nano = nano;
+            this.employeeId = employeeId;
+            this.checkIn = checkIn;
+            this.repeat = repeat;
+        }
+
+        // position once 'rec' has been returned after 'prev'
+        static Position after(Position prev, AttendanceRecord rec) {
+            long sec = rec.getEpochSecond();
+            int ns = rec.getNano();
+            boolean same = prev != null && compare(sec, ns, rec.getEmployeeId(), rec.isCheckIn(),
+                    prev.epochSecond, prev.nano, prev.employeeId, prev.checkIn) == 0;
+            return new Position(sec, ns, rec.getEmployeeId(), rec.isCheckIn(), same ? prev.repeat + 1 : 1);
+        }
+
+        static int compare(long sec1, int ns1, int emp1, boolean in1, long sec2, int ns2, int emp2, boolean in2) {
+            if (sec1 != sec2) return (sec1 < sec2) ? -1 : 1;
+            if (ns1 != ns2) return (ns1 < ns2) ? -1 : 1;
+            if (emp1 != emp2) return (emp1 < emp2) ? -1 : 1;
+            if (in1 != in2) return in1 ? 1 : -1;
+            return 0;
+        }
+
+        // "ac1." + base-36 fields; only meant to be handed back to resumeAfter()
+        public String toString() {
+            return PREFIX + Long.toString(epochSecond, 36) + "." + Integer.toString(nano, 36) + "."
+                    + Integer.toString(employeeId, 36) + "." + (checkIn ? "i" : "o") + "." + Integer.toString(repeat, 36);
+        }
+
+        static Position parse(String s) {
+            String[] parts = s.startsWith(PREFIX) ? s.substring(PREFIX.length()).split("\\.", -1) : new String[0];
+            if (parts.length != 5 || !(parts[3].equals("i") || parts[3].equals("o"))) {
+                throw new IllegalArgumentException("Not a cursor position: " + s);
+            }
+            try {
+                return new Position(Long.parseLong(parts[0], 36), Integer.parseInt(parts[1], 36),
+                        Integer.parseInt(parts[2], 36), parts[3].equals("i"), Integer.parseInt(parts[4], 36));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a cursor position: " + s);
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package smartoffice.v1;
+
+/**
+ * AttendanceIndex: secondary index over the rows of an AttendanceStore.
+ *
+ * - date -> rows recorded that day (plus the distinct employee ids seen that day)
+ * - employeeId + date -> rows for that employee on that day, plus its DailySummary
+ * - every bucket stores row positions (not copies) kept sorted by timestamp
+ * - hash tables are plain arrays with open addressing (no Collections or Maps)
+ *
+ * Addresses: fast report lookups without rescanning the whole history
+ */
+public class AttendanceIndex implements SummarySource {
+    private final BucketTable byDay = new BucketTable();
+    private final BucketTable byEmployeeDay = new BucketTable();
+    private long lastDay = Long.MIN_VALUE; // latest day with a row
+
+    // Index a record 'rec' that was stored at position 'row' of 'store'
+    public void add(AttendanceStore store, int row, AttendanceRecord rec) {
+        long day = rec.getEpochDay();
+        if (day > lastDay) lastDay = day;
+
+        Bucket dayBucket = byDay.getOrCreate(day);
+        dayBucket.insertSorted(store, row);
+
+        long key = employeeDayKey(rec.getEmployeeId(), day);
+        Bucket empBucket = byEmployeeDay.get(key);
+        if (empBucket == null) {
+            empBucket = byEmployeeDay.getOrCreate(key);
+            empBucket.summary = new DailySummary(rec.getEmployeeId(), day);
+            dayBucket.addEmployee(rec.getEmployeeId());
+        }
+        empBucket.insertSorted(store, row);
+        empBucket.summary.update(rec);
+    }
+
+    // Latest epoch day holding a row (Long.MIN_VALUE if the index is empty)
+    public long lastDay() {
+        return lastDay;
+    }
+
+    // Rollup for one employee on one day (null if the employee has no records that day)
+    public DailySummary summary(int employeeId, long epochDay) {
+        Bucket b = byEmployeeDay.get(employeeDayKey(employeeId, epochDay));
+        return (b == null) ? null : b.summary;
+    }
+
+    // Rows for one day sorted by timestamp (empty array if none)
+    public int[] rowsForDay(long epochDay) {
+        Bucket b = byDay.get(epochDay);
+        return (b == null) ? new int[0] : b.rowsCopy();
+    }
+
+    // Position among the day's rows (timestamp order) of the first row at or after the
+    // timestamp; with rowsForDay(day, from, out) a pager reads on from there without copying
+    // the whole day
+    public int firstDayRowAtOrAfter(AttendanceStore store, long epochDay, long epochSecond, int nano) {
+        Bucket b = byDay.get(epochDay);
+        if (b == null) return 0;
+        int lo = 0;
+        int hi = b.size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            long s = store.getEpochSecond(b.rows[mid]);
+            if (s < epochSecond || (s == epochSecond && store.getNano(b.rows[mid]) < nano)) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Overloaded: copies up to out.length of the day's rows from position 'from' into 'out';
+    // returns how many (0 past the end)
+    public int rowsForDay(long epochDay, int from, int[] out) {
+        Bucket b = byDay.get(epochDay);
+        if (b == null || from >= b.size) return 0;
+        int n = Math.min(out.length, b.size - from);
+        System.arraycopy(b.rows, from, out, 0, n);
+        return n;
+    }
+
+    // Rows for one employee on one day sorted by timestamp (empty array if none)
+    public int[] rowsForEmployeeDay(int employeeId, long epochDay) {
+        Bucket b = byEmployeeDay.get(employeeDayKey(employeeId, epochDay));
+        return (b == null) ? new int[0] : b.rowsCopy();
+    }
+
+    // Distinct employee ids that have at least one record on the day, in first-seen order
+    public int[] employeesOnDay(long epochDay) {
+        Bucket b = byDay.get(epochDay);
+        return (b == null) ? new int[0] : b.employeesCopy();
+    }
+
+    // Distinct employee ids across an inclusive day range, in first-seen order
+    public int[] employeesBetween(long startDay, long endDay) {
+        IntSet seen = new IntSet();
+        for (long day = startDay; day <= endDay; day++) {
+            Bucket b = byDay.get(day);
+            if (b == null) continue;
+            for (int i = 0; i < b.employeeCount; i++) seen.add(b.employees[i]);
+        }
+        return seen.toArray();
+    }
+
+    private static long employeeDayKey(int employeeId, long epochDay) {
+        return ((long) employeeId << 32) | (epochDay & 0xFFFFFFFFL);
+    }
+
+    // ---------- bucket: rows sorted by timestamp ----------
+    private static class Bucket {
+        private int[] rows = new int[4];
+        private int size;
+        private int[] employees;
+        private int employeeCount;
+        private DailySummary summary; // only set for employee+date buckets
+
+        // Records usually arrive in time order, so this is normally an append;
+        // otherwise binary search for the slot after equal timestamps (stable)
+        void insertSorted(AttendanceStore store, int row) {
+            if (size == rows.length) {
+                int[] bigger = new int[rows.length * 2];
+                System.arraycopy(rows, 0, bigger, 0, size);
+                rows = bigger;
+            }
+            long sec = store.getEpochSecond(row);
+            int nano = store.getNano(row);
+            int pos = size;
+            if (size > 0 && isAfter(store, rows[size - 1], sec, nano)) {
+                int lo = 0;
+                int hi = size - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (isAfter(store, rows[mid], sec, nano)) hi = mid;
+                    else lo = mid + 1;
+                }
+                pos = lo;
+                System.arraycopy(rows, pos, rows, pos + 1, size - pos);
+            }
+            rows[pos] = row;
+            size++;
+        }
+
+        void addEmployee(int employeeId) {
+            if (employees == null) employees = new int[4];
+            if (employeeCount == employees.length) {
+                int[] bigger = new int[employees.length * 2];
+                System.arraycopy(employees, 0, bigger, 0, employeeCount);
+                employees = bigger;
+            }
+            employees[employeeCount++] = employeeId;
+        }
+
+        int[] rowsCopy() {
+            int[] out = new int[size];
+            System.arraycopy(rows, 0, out, 0, size);
+            return out;
+        }
+
+        int[] employeesCopy() {
+            int[] out = new int[employeeCount];
+            if (employeeCount > 0) System.arraycopy(employees, 0, out, 0, employeeCount);
+            return out;
+        }
+    }
+
+    // ---------- open-addressing table: long key -> bucket ----------
+    private static class BucketTable {
+        private long[] keys = new long[16];
+        private Bucket[] values = new Bucket[16];
+        private int size;
+
+        Bucket get(long key) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (values[i] != null) {
+                if (keys[i] == key) return values[i];
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        Bucket getOrCreate(long key) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (values[i] != null) {
+                if (keys[i] == key) return values[i];
+                i = (i + 1) & mask;
+            }
+            Bucket b = new Bucket();
+            keys[i] = key;
+            values[i] = b;
+            size++;
+            if (size * 2 > keys.length) grow();
+            return b;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            Bucket[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Bucket[oldValues.length * 2];
+            int mask = keys.length - 1;
+            for (int k = 0; k < oldKeys.length; k++) {
+                if (oldValues[k] == null) continue;
+                int i = mix(oldKeys[k]) & mask;
+                while (values[i] != null) i = (i + 1) & mask;
+                keys[i] = oldKeys[k];
+                values[i] = oldValues[k];
+            }
+        }
+    }
+
+    // ---------- small int set used to de-duplicate employee ids ----------
+    static class IntSet {
+        private int[] slots = new int[16];
+        private boolean[] used = new boolean[16];
+        private int[] order = new int[16];
+        private int size;
+
+        void add(int value) {
+            int mask = slots.length - 1;
+            int i = mix(value) & mask;
+            while (used[i]) {
+                if (slots[i] == value) return;
+                i = (i + 1) & mask;
+            }
+            slots[i] = value;
+            used[i] = true;
+            if (size == order.length) {
+                int[] bigger = new int[order.length * 2];
+                System.arraycopy(order, 0, bigger, 0, size);
+                order = bigger;
+            }
+            order[size++] = value;
+            if (size * 2 > slots.length) grow();
+        }
+
+        boolean contains(int value) {
+            int mask = slots.length - 1;
+            for (int i = mix(value) & mask; used[i]; i = (i + 1) & mask) {
+                if (slots[i] == value) return true;
+            }
+            return false;
+        }
+
+        int[] toArray() {
+            int[] out = new int[size];
+            System.arraycopy(order, 0, out, 0, size);
+            return out;
+        }
+
+        private void grow() {
+            slots = new int[slots.length * 2];
+            used = new boolean[used.length * 2];
+            int mask = slots.length - 1;
+            for (int k = 0; k < size; k++) {
+                int i = mix(order[k]) & mask;
+                while (used[i]) i = (i + 1) & mask;
+                slots[i] = order[k];
+                used[i] = true;
+            }
+        }
+    }
+
+    private static boolean isAfter(AttendanceStore store, int row, long sec, int nano) {
+        long s = store.getEpochSecond(row);
+        return s > sec || (s == sec && store.getNano(row) > nano);
+    }
+
+    // spread hash bits so sequential ids/days do not cluster
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
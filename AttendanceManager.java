@@ -5,101 +5,834 @@
 package smartoffice.v1;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * AttendanceManager (array-based): manages attendance records in memory and persists to CSV.
  *
  * - Uses arrays with manual resizing instead of Lists
+ * - rows live in an AttendanceStore: AttendanceRecord objects, or primitive columns
+ *   (AttendanceOptions.StorageMode.COLUMNAR) materialized only on demand
  * - No Collections, Maps, or StringBuilder
- * - Reports implemented by brute-force scanning (no grouping structures)
+ * - AttendanceIndex (date, employee+date) is kept up to date on every addRecord,
+ *   so reports only touch the records in the requested range
+ * - each employee+date also carries a DailySummary (firstIn, lastOut, count, anomaly)
+ *   updated as scans arrive; reports read those rollups instead of raw records
+ * - closed months can be moved into memory-mapped AttendanceSegments (attachSegment);
+ *   reports combine segment and live rollups
+ * - report rows are computed per employee on a fork-join pool (sequential when
+ *   AttendanceOptions.setReportParallelism(1)), emitted in the same employee order
+ * - query(AttendanceQuery): lazy, resumable cursor / Stream over a date range, filtered by
+ *   employees and direction inside the index and segments, read one day at a time
+ * - OccupancyTracker (getOccupancy): per-employee in/out state, present set and count, per
+ *   department, updated on every scan; rebuilt at start-up from the most recent day only
+ * - optional per-day sketches (AttendanceOptions.setSketches): approximate distinct employees
+ *   (overall, per department) and hours quantiles over long ranges, see AttendanceSketches
+ * - importScans: bulk import of reader export files (validated, de-duplicated, sorted batches)
+ * - optional write-ahead log + snapshots (AttendanceOptions.setWriteAheadLog): restart maps
+ *   each partition's snapshots and replays only the checksummed log tail
+ * - optional time partitioning (AttendanceOptions.PartitionScheme): one CSV per month or day,
+ *   loaded lazily when a query overlaps it and evicted LRU under a resident-row budget
+ * - thread-safe: a read/write lock guards the in-memory state. Queries merge pending scans
+ *   and load partitions under the write lock, then downgrade to the shared read lock, so
+ *   reports run side by side. With write stripes (AttendanceOptions.setWriteStripes, on by
+ *   default) writers only take the shared lock: scans go to striped append buffers (and
+ *   straight to the file writer) and are merged into the index in timestamp order by the
+ *   next query or a full stripe. Writers wait for durability (STRICT) after releasing the
+ *   lock, so their rows share group commits; run main() for a multithreaded stress test.
  **/
  
 public class AttendanceManager {
     private String attendanceCsvPath;
+    private AttendanceOptions options;
 
-    // dynamic array for records
-    private AttendanceRecord[] records;
-    private int recordCount;
+    // dated partitions (PartitionScheme MONTHLY/DAILY), sorted by first day, non-overlapping
+    private AttendancePartition[] partitions = new AttendancePartition[0];
+    private int partitionCount;
 
-    private static final int INITIAL_CAPACITY = 16;
+    // the single attendance.csv: the only partition in NONE mode, or a legacy file that
+    // covers every date in partitioned mode (null if absent)
+    private AttendancePartition legacyPartition;
+
+    // LRU clock for partition eviction
+    private long useClock;
+
+    // memory-mapped binary segments holding closed months of history
+    private AttendanceSegment[] segments = new AttendanceSegment[0];
+
+    // in-memory state lock (see class comment); writers with stripes share the read lock
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+    // striped append buffers (null unless AttendanceOptions.getWriteStripes() > 0)
+    private WriteStripe[] stripes;
+    private static final int STRIPE_MERGE_ROWS = 1024;
+
+    // live "who is in" state, updated on every recorded scan
+    private final OccupancyTracker occupancy = new OccupancyTracker();
+
+    // per-day distinct-count and hours sketches (null unless AttendanceOptions.setSketches)
+    private AttendanceSketches sketches;
 
     public AttendanceManager(String attendanceCsvPath) {
-        this.attendanceCsvPath = attendanceCsvPath;
-        this.records = new AttendanceRecord[INITIAL_CAPACITY];
-        this.recordCount = 0;
-        loadFromCsv();
+        this(attendanceCsvPath, new AttendanceOptions());
     }
 
-    // add record to internal array (dynamic grow)
-    private void addRecord(AttendanceRecord rec) {
-        if (recordCount == records.length) {
-            AttendanceRecord[] bigger = new AttendanceRecord[records.length * 2];
-            System.arraycopy(records, 0, bigger, 0, records.length);
-            records = bigger;
+    // Overloaded constructor: choose the group-commit thresholds and durability mode
+    public AttendanceManager(String attendanceCsvPath, AttendanceCsvWriter.Durability durability,
+                             int maxBatchRows, long maxBatchDelayMillis) {
+        this(attendanceCsvPath, new AttendanceOptions().setDurability(durability)
+                .setMaxBatchRows(maxBatchRows).setMaxBatchDelayMillis(maxBatchDelayMillis));
+    }
+
+    // Overloaded constructor: all start-up settings (storage mode, group commit, partitioning)
+    public AttendanceManager(String attendanceCsvPath, AttendanceOptions options) {
+        this.attendanceCsvPath = attendanceCsvPath;
+        this.options = options;
+        if (options.getPartitionScheme() == AttendanceOptions.PartitionScheme.NONE) {
+            legacyPartition = new AttendancePartition(attendanceCsvPath, Long.MIN_VALUE, Long.MAX_VALUE, options);
+            legacyPartition.load();
+        } else {
+            discoverPartitions();
+            AttendancePartition legacy = new AttendancePartition(attendanceCsvPath, Long.MIN_VALUE, Long.MAX_VALUE, options);
+            if (legacy.existsOnDisk()) legacyPartition = legacy;
+        }
+        if (options.getWriteStripes() > 0) {
+            stripes = new WriteStripe[options.getWriteStripes()];
+            for (int i = 0; i < stripes.length; i++) stripes[i] = new WriteStripe();
+        }
+        rebuildOccupancy();
+        if (options.isSketches()) {
+            // loaded, then removed until close() writes it again: a crash leaves no stale sketches
+            sketches = AttendanceSketches.load(sketchPath());
+            new File(sketchPath()).delete();
         }
-        records[recordCount++] = rec;
     }
 
     // Record a new attendance event and persist to CSV
+    // (in STRICT durability mode this returns only once the row's batch is fsync'ed)
     public void recordAttendance(AttendanceRecord rec) {
-        addRecord(rec);
-        appendToCsv(rec);
+        recordAttendance(new AttendanceRecord[] { rec }, 0, 1);
+    }
+
+    // Overloaded: record recs[from, to) as a batch; consecutive records of the same
+    // partition are queued on its writer together (one write, one STRICT wait). The index
+    // is updated and the rows queued under the lock; the wait for durability comes after
+    // releasing it, so concurrent writers share group commits and readers are not held up.
+    public void recordAttendance(AttendanceRecord[] recs, int from, int to) {
+        PendingWrites pending = new PendingWrites();
+        enqueueAttendance(recs, from, to, pending);
+        pending.awaitAll();
+    }
+
+    // recordAttendance without the wait: the rows' receipts are added to 'pending', to be
+    // awaited once the caller has released every lock (the caller may hold the write lock)
+    private void enqueueAttendance(AttendanceRecord[] recs, int from, int to, PendingWrites pending) {
+        for (int i = from; i < to; i++) {
+            occupancy.onScan(recs[i].getEmployeeId(), recs[i].isCheckIn(), recs[i].getEpochSecond(), recs[i].getNano());
+        }
+        if (stripes != null) {
+            enqueueStriped(recs, from, to, pending);
+            return;
+        }
+        stateLock.writeLock().lock();
+        try {
+            int runStart = from;
+            AttendancePartition run = null;
+            for (int i = from; i < to; i++) {
+                AttendancePartition p = writablePartition(recs[i].getEpochDay());
+                if (p != run) {
+                    if (run != null) pending.add(run.enqueue(recs, runStart, i));
+                    run = p;
+                    runStart = i;
+                }
+                p.add(recs[i]);    // only kept in memory if the partition is loaded
+            }
+            if (run != null) pending.add(run.enqueue(recs, runStart, to));
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        markSketchesDirty(recs, from, to);
+    }
+
+    // Only once the rows are inserted: a day sketch built between marking and inserting would
+    // miss them and still count as up to date
+    private void markSketchesDirty(AttendanceRecord[] recs, int from, int to) {
+        if (sketches == null) return;
+        for (int i = from; i < to; i++) sketches.markDirty(recs[i].getEpochDay());
     }
 
-    // Append a CSV row (simple, append mode)
-    private void appendToCsv(AttendanceRecord rec) {
-        BufferedWriter writer = null;
+    // ---------- striped writes ----------
+    // Each run of records for one partition goes to the calling thread's stripe and to the
+    // partition's writer while holding only the shared lock. Merges take the write lock,
+    // so a record is never half recorded (in the file but not yet buffered) during one.
+    // STRICT waits are left to the caller, after every lock is released.
+    private void enqueueStriped(AttendanceRecord[] recs, int from, int to, PendingWrites pending) {
+        WriteStripe stripe = stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+        int runStart = from;
+        while (runStart < to) {
+            long day = recs[runStart].getEpochDay();
+            AttendancePartition p = lockWritablePartition(day);
+            int runEnd = runStart + 1;
+            int buffered;
+            try {
+                while (runEnd < to && p.covers(recs[runEnd].getEpochDay())) runEnd++;
+                buffered = stripe.add(recs, runStart, runEnd);
+                pending.add(p.enqueue(recs, runStart, runEnd));
+            } finally {
+                stateLock.readLock().unlock();
+            }
+            afterStripedWrite(p, buffered);
+            runStart = runEnd;
+        }
+        // buffered rows are merged by the next query, so a sketch built from now on sees them
+        markSketchesDirty(recs, from, to);
+    }
+
+    // Partition for 'day', returned with the read lock held (briefly upgrades to the
+    // write lock when the partition has to be created)
+    private AttendancePartition lockWritablePartition(long day) {
+        stateLock.readLock().lock();
+        if (options.getPartitionScheme() == AttendanceOptions.PartitionScheme.NONE) return legacyPartition;
+        AttendancePartition p = findPartition(day);
+        if (p != null) return p;
+        stateLock.readLock().unlock();
+        stateLock.writeLock().lock();
         try {
-            writer = new BufferedWriter(new FileWriter(attendanceCsvPath, true)); // append
-            writer.write(rec.toCsvRow());
-            writer.newLine();
-            writer.flush();
+            p = writablePartition(day);
+            stateLock.readLock().lock(); // downgrade
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        return p;
+    }
+
+    // Merge a full stripe (skipped if someone else holds the lock, unless the stripe has
+    // grown far past the threshold) and run a due WAL checkpoint
+    private void afterStripedWrite(AttendancePartition p, int buffered) {
+        boolean checkpointDue = options.isWriteAheadLog() && p.getWalRows() >= options.getCheckpointRows();
+        if (buffered < STRIPE_MERGE_ROWS && !checkpointDue) return;
+        if (buffered >= 4 * STRIPE_MERGE_ROWS || checkpointDue) {
+            stateLock.writeLock().lock();
+        } else if (!stateLock.writeLock().tryLock()) {
+            return;
+        }
+        try {
+            mergeStripes();
+            if (checkpointDue && p.isLoaded() && p.getWalRows() >= options.getCheckpointRows()) p.checkpoint();
         } catch (IOException e) {
-            System.err.println("Failed to append attendance CSV: " + e.getMessage());
+            System.err.println("Failed to checkpoint attendance partition " + p.getPath() + ": " + e.getMessage());
         } finally {
-            if (writer != null) {
-                try { writer.close(); } catch (IOException ex) { /* ignore */ }
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    // Move every buffered scan into the index, in timestamp order (caller holds write lock)
+    private void mergeStripes() {
+        if (stripes == null) return;
+        AttendanceRecord[][] taken = new AttendanceRecord[stripes.length][];
+        int total = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            taken[i] = stripes[i].takeAll();
+            total += taken[i].length;
+        }
+        if (total == 0) return;
+        AttendanceRecord[] all = new AttendanceRecord[total];
+        int c = 0;
+        for (int i = 0; i < taken.length; i++) {
+            System.arraycopy(taken[i], 0, all, c, taken[i].length);
+            c += taken[i].length;
+        }
+        Arrays.sort(all, new Comparator<AttendanceRecord>() {
+            public int compare(AttendanceRecord a, AttendanceRecord b) {
+                return EpochTime.compare(a.getEpochSecond(), a.getNano(), b.getEpochSecond(), b.getNano());
             }
+        });
+        for (int i = 0; i < total; i++) {
+            // the partition was created when the scan was recorded
+            writablePartition(all[i].getEpochDay()).add(all[i]);
         }
     }
 
-    // Load all records from CSV into memory (simple)
-    private void loadFromCsv() {
-        BufferedReader reader = null;
+    // Merge pending scans and load the partitions of a range under the write lock, then
+    // downgrade: returns with the read lock held, caller unlocks it when done
+    private AttendancePartition[] lockRange(long startDay, long endDay) {
+        stateLock.writeLock().lock();
         try {
-            reader = new BufferedReader(new FileReader(attendanceCsvPath));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                AttendanceRecord r = AttendanceRecord.fromCsvRow(line);
-                if (r != null) addRecord(r);
+            mergeStripes();
+            AttendancePartition[] parts = partitionsFor(startDay, endDay);
+            stateLock.readLock().lock();
+            return parts;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    // one append buffer; writer threads are spread over the stripes by thread id
+    private static class WriteStripe {
+        private AttendanceRecord[] items = new AttendanceRecord[64];
+        private int size;
+
+        // returns the number of buffered records after adding
+        synchronized int add(AttendanceRecord[] recs, int from, int to) {
+            int n = to - from;
+            if (size + n > items.length) {
+                AttendanceRecord[] bigger = new AttendanceRecord[Math.max(items.length * 2, size + n)];
+                System.arraycopy(items, 0, bigger, 0, size);
+                items = bigger;
             }
-        } catch (IOException e) {
-            // file might not exist; that's fine
+            System.arraycopy(recs, from, items, size, n);
+            size += n;
+            return size;
+        }
+
+        synchronized AttendanceRecord[] takeAll() {
+            AttendanceRecord[] out = new AttendanceRecord[size];
+            System.arraycopy(items, 0, out, 0, size);
+            for (int i = 0; i < size; i++) items[i] = null;
+            size = 0;
+            return out;
+        }
+    }
+
+    // receipts of rows queued by enqueueAttendance, awaited once no lock is held
+    private static class PendingWrites {
+        private AttendanceCsvWriter.Receipt[] receipts = new AttendanceCsvWriter.Receipt[4];
+        private int count;
+
+        void add(AttendanceCsvWriter.Receipt receipt) {
+            if (count == receipts.length) {
+                AttendanceCsvWriter.Receipt[] bigger = new AttendanceCsvWriter.Receipt[receipts.length * 2];
+                System.arraycopy(receipts, 0, bigger, 0, count);
+                receipts = bigger;
+            }
+            receipts[count++] = receipt;
+        }
+
+        void awaitAll() {
+            for (int i = 0; i < count; i++) receipts[i].await();
+        }
+    }
+
+    // ========================= OCCUPANCY =============================
+    // Who is in the building: isPresent(id), getPresentCount(), getPresentEmployees(department)
+    public OccupancyTracker getOccupancy() {
+        return occupancy;
+    }
+
+    // Start-up: replay only the most recent day's scans into the occupancy tracker
+    // (dated partitions are sorted, so that day lives in the last one)
+    private void rebuildOccupancy() {
+        AttendancePartition latest = (partitionCount > 0) ? partitions[partitionCount - 1] : legacyPartition;
+        if (latest == null) return;
+        ensureLoaded(latest);
+        AttendanceSegment[] snapshots = latest.getSnapshots();
+        long day = latest.getIndex().lastDay();
+        for (int s = 0; s < snapshots.length; s++) {
+            if (snapshots[s].getRowCount() > 0) {
+                day = Math.max(day, snapshots[s].getMaxTimestamp().toLocalDate().toEpochDay());
+            }
+        }
+        if (day == Long.MIN_VALUE) return;
+
+        AttendanceStore store = latest.getStore();
+        int[] rows = latest.getIndex().rowsForDay(day);
+        for (int i = 0; i < rows.length; i++) {
+            occupancy.onScan(store.getEmployeeId(rows[i]), store.isCheckIn(rows[i]),
+                    store.getEpochSecond(rows[i]), store.getNano(rows[i]));
+        }
+        long endSecond = (day + 1) * 86400;
+        for (int s = 0; s < snapshots.length; s++) {
+            AttendanceSegment snapshot = snapshots[s];
+            for (int row = snapshot.firstRowAtOrAfter(day * 86400);
+                 row < snapshot.getRowCount() && snapshot.getEpochSecond(row) < endSecond; row++) {
+                occupancy.onScan(snapshot.getEmployeeId(row), snapshot.isCheckIn(row),
+                        snapshot.getEpochSecond(row), snapshot.getNano(row));
+            }
+        }
+    }
+
+    // ========================= APPROXIMATE ANALYTICS =============================
+    // Sketch-based answers for long ranges (AttendanceOptions.setSketches(true)); each day is
+    // summarized once and reused until it gets new scans. Error bounds: see AttendanceSketches.
+
+    // About how many different employees scanned in [start, end] (1.6% standard error)
+    public long estimateDistinctEmployees(LocalDate start, LocalDate end) {
+        return estimateDistinctEmployees(start, end, null);
+    }
+
+    // Overloaded: only employees of one department (OccupancyTracker department names)
+    public long estimateDistinctEmployees(LocalDate start, LocalDate end, String department) {
+        return employeesSketch(start, end, department).estimate();
+    }
+
+    // merged employee sketch of the range (ShardedAttendanceManager unions the shards' ones)
+    HyperLogLog employeesSketch(LocalDate start, LocalDate end, String department) {
+        long startDay = start.toEpochDay();
+        long endDay = end.toEpochDay();
+        refreshSketches(startDay, endDay);
+        return sketches.employees(startDay, endDay, department);
+    }
+
+    // Approximate q-quantile (0..1, e.g. 0.5 = median) of the hours worked per employee-day in
+    // [start, end], days with a missing check-in or check-out left out; within 2.5 minutes of
+    // the exact value, NaN when there are no such days
+    public double estimateHoursQuantile(LocalDate start, LocalDate end, double q) {
+        return hoursSketch(start, end).quantile(q);
+    }
+
+    // merged hours sketch of the range
+    HoursSketch hoursSketch(LocalDate start, LocalDate end) {
+        long startDay = start.toEpochDay();
+        long endDay = end.toEpochDay();
+        refreshSketches(startDay, endDay);
+        return sketches.hours(startDay, endDay);
+    }
+
+    private void refreshSketches(long startDay, long endDay) {
+        if (sketches == null) throw new IllegalStateException("Sketches are off (AttendanceOptions.setSketches)");
+        if (endDay < startDay) throw new IllegalArgumentException("End date is before start date");
+        sketches.refresh(startDay, endDay, new AttendanceSketches.DayBuilder() {
+            public AttendanceSketches.DaySketch build(long epochDay) {
+                return buildDaySketch(epochDay);
+            }
+        });
+    }
+
+    // one pass over the day's rollups (null if nobody scanned that day)
+    private AttendanceSketches.DaySketch buildDaySketch(long day) {
+        AttendancePartition[] parts = lockRange(day, day);
+        try {
+            SummarySource src = summarySourceFor(parts, day, day);
+            int[] ids = src.employeesBetween(day, day);
+            if (ids.length == 0) return null;
+            AttendanceSketches.DaySketch s = new AttendanceSketches.DaySketch();
+            for (int i = 0; i < ids.length; i++) {
+                s.add(ids[i], OccupancyTracker.departmentOf(ids[i]), src.summary(ids[i], day));
+            }
+            return s;
         } finally {
-            if (reader != null) {
-                try { reader.close(); } catch (IOException ex) { /* ignore */ }
+            stateLock.readLock().unlock();
+        }
+    }
+
+    private String sketchPath() {
+        return attendanceCsvPath + ".sketch";
+    }
+
+    // ========================= BULK IMPORT =============================
+    private static final int IMPORT_BATCH_ROWS = 4096;
+
+    // Import a reader export file (attendance CSV rows); see importScans(Reader)
+    public ScanImportResult importScans(String path) throws IOException {
+        Reader in = new FileReader(path);
+        try {
+            return importScans(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    // Overloaded: import scans given as attendance CSV rows. Rows are validated, sorted by
+    // time, de-duplicated (same employee, timestamp and direction, inside the input or
+    // already recorded) and recorded in sorted batches: one writer append per batch, and
+    // index inserts that only ever append.
+    public ScanImportResult importScans(Reader in) throws IOException {
+        long start = System.nanoTime();
+        ScanImportResult result = new ScanImportResult();
+        AttendanceRecord[] recs = readScans(in, result);
+        importParsed(recs, recs.length, result);
+        result.setElapsedNanos(System.nanoTime() - start);
+        return result;
+    }
+
+    // the valid rows of an import file; malformed and invalid lines are only counted
+    static AttendanceRecord[] readScans(Reader in, ScanImportResult result) throws IOException {
+        AttendanceCsvParser parser = new AttendanceCsvParser();
+        BufferedReader reader = new BufferedReader(in);
+        // reader clocks may run a little ahead
+        long latest = EpochTime.toEpochSecond(LocalDateTime.now()) + EpochTime.SECONDS_PER_DAY;
+        AttendanceRecord[] recs = new AttendanceRecord[1024];
+        int n = 0;
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) continue;
+            result.countLine();
+            AttendanceRecord rec = parser.parseRecord(line, 0, line.length());
+            if (rec == null) {
+                result.countMalformed(lineNumber, parser.getLastError());
+                continue;
+            }
+            if (rec.getEmployeeId() <= 0 || rec.getEpochSecond() > latest) {
+                result.countInvalid();
+                continue;
+            }
+            if (n == recs.length) {
+                AttendanceRecord[] bigger = new AttendanceRecord[recs.length * 2];
+                System.arraycopy(recs, 0, bigger, 0, n);
+                recs = bigger;
+            }
+            recs[n++] = rec;
+        }
+        if (n == recs.length) return recs;
+        AttendanceRecord[] exact = new AttendanceRecord[n];
+        System.arraycopy(recs, 0, exact, 0, n);
+        return exact;
+    }
+
+    // sort, de-duplicate and record recs[0, n) (importScans after parsing; recs is consumed)
+    void importParsed(AttendanceRecord[] recs, int n, ScanImportResult result) {
+        // time order first; employee and direction make exact duplicates adjacent
+        Arrays.sort(recs, 0, n, new Comparator<AttendanceRecord>() {
+            public int compare(AttendanceRecord a, AttendanceRecord b) {
+                int c = EpochTime.compare(a.getEpochSecond(), a.getNano(), b.getEpochSecond(), b.getNano());
+                if (c != 0) return c;
+                if (a.getEmployeeId() != b.getEmployeeId()) return (a.getEmployeeId() < b.getEmployeeId()) ? -1 : 1;
+                return Boolean.compare(a.isCheckIn(), b.isCheckIn());
+            }
+        });
+
+        // duplicate checks and recording must not interleave with other writers; the STRICT
+        // wait comes after the lock is released, as in recordAttendance
+        PendingWrites pending = new PendingWrites();
+        stateLock.writeLock().lock();
+        try {
+            mergeStripes();
+            importSorted(recs, n, result, pending);
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        pending.awaitAll();
+    }
+
+    // de-duplicate and queue sorted scans in batches (caller holds the write lock and
+    // awaits 'pending' after releasing it)
+    private void importSorted(AttendanceRecord[] recs, int n, ScanImportResult result, PendingWrites pending) {
+        AttendanceRecord[] batch = new AttendanceRecord[Math.min(IMPORT_BATCH_ROWS, Math.max(1, n))];
+        int count = 0;
+        AttendanceRecord prev = null;
+        AttendancePartition[] parts = null;
+        long partsDay = 0;
+        for (int i = 0; i < n; i++) {
+            AttendanceRecord rec = recs[i];
+            recs[i] = null;
+            if (prev != null && sameScan(prev, rec)) {
+                result.countDuplicate();
+                continue;
+            }
+            prev = rec;
+            long day = rec.getEpochDay();
+            if (parts == null || day != partsDay) {
+                parts = partitionsFor(day, day);
+                partsDay = day;
             }
+            if (isRecorded(rec, parts)) {
+                result.countAlreadyKnown();
+                continue;
+            }
+            batch[count++] = rec;
+            if (count == batch.length) {
+                enqueueAttendance(batch, 0, count, pending);
+                result.countImported(count);
+                count = 0;
+                mergeStripes();
+                parts = null; // recording may have evicted partitions
+            }
+        }
+        if (count > 0) {
+            enqueueAttendance(batch, 0, count, pending);
+            result.countImported(count);
+        }
+    }
+
+    private static boolean sameScan(AttendanceRecord a, AttendanceRecord b) {
+        return a.getEmployeeId() == b.getEmployeeId() && a.isCheckIn() == b.isCheckIn()
+                && a.getEpochSecond() == b.getEpochSecond() && a.getNano() == b.getNano();
+    }
+
+    // true if the scan is already held by one of the (loaded) partitions of its day,
+    // a partition snapshot, or an attached segment
+    private boolean isRecorded(AttendanceRecord rec, AttendancePartition[] parts) {
+        long day = rec.getEpochDay();
+        long second = rec.getEpochSecond();
+        int nano = rec.getNano();
+        for (int p = 0; p < parts.length; p++) {
+            AttendanceStore store = parts[p].getStore();
+            int[] rows = parts[p].getIndex().rowsForEmployeeDay(rec.getEmployeeId(), day);
+            for (int k = 0; k < rows.length; k++) {
+                if (store.getEpochSecond(rows[k]) == second && store.getNano(rows[k]) == nano
+                        && store.isCheckIn(rows[k]) == rec.isCheckIn()) {
+                    return true;
+                }
+            }
+            AttendanceSegment[] snapshots = parts[p].getSnapshots();
+            for (int s = 0; s < snapshots.length; s++) {
+                if (snapshots[s].containsEvent(rec.getEmployeeId(), second, nano, rec.isCheckIn())) return true;
+            }
+        }
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].containsEvent(rec.getEmployeeId(), second, nano, rec.isCheckIn())) return true;
+        }
+        return false;
+    }
+
+    // Force queued rows to disk
+    public void flush() {
+        stateLock.readLock().lock();
+        try {
+            if (legacyPartition != null) legacyPartition.flush();
+            for (int i = 0; i < partitionCount; i++) partitions[i].flush();
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // Write-ahead log mode: fold every partition's log tail into a new snapshot now
+    // (this also happens on its own every AttendanceOptions.getCheckpointRows() scans)
+    public void checkpoint() throws IOException {
+        stateLock.writeLock().lock();
+        try {
+            mergeStripes();
+            AttendancePartition[] all = allPartitions();
+            for (int i = 0; i < all.length; i++) {
+                if (!all[i].isLoaded() && all[i].getWalRows() == 0) continue;
+                ensureLoaded(all[i]);
+                all[i].checkpoint();
+            }
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    // Flush queued rows and release the CSV files
+    public void close() {
+        stateLock.writeLock().lock();
+        try {
+            mergeStripes();
+            if (legacyPartition != null) legacyPartition.close();
+            for (int i = 0; i < partitionCount; i++) partitions[i].close();
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        if (sketches != null) {
+            try {
+                sketches.save(sketchPath());
+            } catch (IOException e) {
+                System.err.println("Could not save attendance sketches: " + e.getMessage());
+            }
+        }
+    }
+
+    // ---------- partitions ----------
+    // Register the dated files already on disk (nothing is read until a query needs it)
+    private void discoverPartitions() {
+        File csv = new File(attendanceCsvPath).getAbsoluteFile();
+        File dir = csv.getParentFile();
+        File[] files = (dir == null) ? null : dir.listFiles();
+        if (files == null) return;
+        String stem = fileStem(csv.getName()) + "-";
+        String ext = fileExtension(csv.getName());
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+            if (options.isWriteAheadLog()) name = AttendancePartition.dataFileName(name);
+            if (!name.startsWith(stem) || !name.endsWith(ext) || name.length() <= stem.length() + ext.length()) continue;
+            String key = name.substring(stem.length(), name.length() - ext.length());
+            try {
+                LocalDate first = (options.getPartitionScheme() == AttendanceOptions.PartitionScheme.MONTHLY)
+                        ? YearMonth.parse(key).atDay(1) : LocalDate.parse(key);
+                if (findPartition(first.toEpochDay()) == null) insertPartition(newPartition(first.toEpochDay()));
+            } catch (DateTimeException e) {
+                // not one of our partition files
+            }
+        }
+    }
+
+    // Partition that new scans for 'day' are written to (created on demand)
+    private AttendancePartition writablePartition(long day) {
+        if (options.getPartitionScheme() == AttendanceOptions.PartitionScheme.NONE) return legacyPartition;
+        AttendancePartition p = findPartition(day);
+        if (p == null) {
+            p = newPartition(day);
+            insertPartition(p);
+            if (!p.existsOnDisk()) {
+                p.load(); // nothing to read yet, keep the new partition resident
+                touch(p);
+                enforceBudget(new AttendancePartition[] { p });
+            }
+        }
+        return p;
+    }
+
+    private AttendancePartition newPartition(long day) {
+        LocalDate date = LocalDate.ofEpochDay(day);
+        File csv = new File(attendanceCsvPath);
+        String prefix = (csv.getParent() == null) ? "" : csv.getParent() + File.separator;
+        String stem = prefix + fileStem(csv.getName()) + "-";
+        String ext = fileExtension(csv.getName());
+        if (options.getPartitionScheme() == AttendanceOptions.PartitionScheme.MONTHLY) {
+            LocalDate first = date.withDayOfMonth(1);
+            return new AttendancePartition(stem + YearMonth.from(date) + ext, first.toEpochDay(),
+                    date.withDayOfMonth(date.lengthOfMonth()).toEpochDay(), options);
+        }
+        return new AttendancePartition(stem + date + ext, day, day, options);
+    }
+
+    // binary search over the sorted, non-overlapping dated partitions
+    private AttendancePartition findPartition(long day) {
+        int lo = 0;
+        int hi = partitionCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            AttendancePartition p = partitions[mid];
+            if (day < p.getFirstDay()) hi = mid - 1;
+            else if (day > p.getLastDay()) lo = mid + 1;
+            else return p;
+        }
+        return null;
+    }
+
+    private void insertPartition(AttendancePartition p) {
+        if (partitionCount == partitions.length) {
+            AttendancePartition[] bigger = new AttendancePartition[Math.max(8, partitions.length * 2)];
+            System.arraycopy(partitions, 0, bigger, 0, partitionCount);
+            partitions = bigger;
+        }
+        int pos = partitionCount;
+        while (pos > 0 && partitions[pos - 1].getFirstDay() > p.getFirstDay()) {
+            partitions[pos] = partitions[pos - 1];
+            pos--;
+        }
+        partitions[pos] = p;
+        partitionCount++;
+    }
+
+    // Loaded partitions overlapping the inclusive day range (partition pruning):
+    // only these files are opened, and each is loaded on first use
+    private AttendancePartition[] partitionsFor(long startDay, long endDay) {
+        AttendancePartition[] tmp = new AttendancePartition[partitionCount + 1];
+        int c = 0;
+        if (legacyPartition != null) tmp[c++] = legacyPartition;
+        // first partition that could overlap
+        int lo = 0;
+        int hi = partitionCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (partitions[mid].getLastDay() < startDay) lo = mid + 1;
+            else hi = mid;
+        }
+        for (int i = lo; i < partitionCount && partitions[i].getFirstDay() <= endDay; i++) tmp[c++] = partitions[i];
+        AttendancePartition[] out = new AttendancePartition[c];
+        System.arraycopy(tmp, 0, out, 0, c);
+        // the whole range stays resident until the caller is done, even above the budget
+        for (int i = 0; i < c; i++) {
+            touch(out[i]);
+            out[i].load();
+        }
+        enforceBudget(out);
+        return out;
+    }
+
+    private void ensureLoaded(AttendancePartition p) {
+        touch(p);
+        if (p.isLoaded()) return;
+        p.load();
+        enforceBudget(new AttendancePartition[] { p });
+    }
+
+    private void touch(AttendancePartition p) {
+        p.setLastUsed(++useClock);
+    }
+
+    // Evict least recently used partitions until resident rows fit the budget.
+    // Partitions in 'keep' (the range a caller is about to read) are never evicted.
+    private void enforceBudget(AttendancePartition[] keep) {
+        long budget = options.getMaxResidentRows();
+        while (true) {
+            long resident = 0;
+            AttendancePartition victim = null;
+            AttendancePartition[] all = allPartitions();
+            for (int i = 0; i < all.length; i++) {
+                AttendancePartition p = all[i];
+                resident += p.residentRows();
+                if (p.isLoaded() && !contains(keep, p) && p != legacyPartition
+                        && (victim == null || p.getLastUsed() < victim.getLastUsed())) {
+                    victim = p;
+                }
+            }
+            if (resident <= budget || victim == null) return;
+            victim.evict();
+        }
+    }
+
+    private static boolean contains(AttendancePartition[] parts, AttendancePartition p) {
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i] == p) return true;
+        }
+        return false;
+    }
+
+    private AttendancePartition[] allPartitions() {
+        int extra = (legacyPartition == null) ? 0 : 1;
+        AttendancePartition[] out = new AttendancePartition[partitionCount + extra];
+        if (extra == 1) out[0] = legacyPartition;
+        System.arraycopy(partitions, 0, out, extra, partitionCount);
+        return out;
+    }
+
+    private static String fileStem(String name) {
+        int dot = name.lastIndexOf('.');
+        return (dot <= 0) ? name : name.substring(0, dot);
+    }
+
+    private static String fileExtension(String name) {
+        int dot = name.lastIndexOf('.');
+        return (dot <= 0) ? "" : name.substring(dot);
+    }
+
+    // Attach a binary history segment (see AttendanceSegmentTool); reports and range
+    // queries read it through the mapping without loading its rows into the heap
+    public void attachSegment(String segmentPath) throws IOException {
+        AttendanceSegment seg = AttendanceSegment.open(segmentPath);
+        stateLock.writeLock().lock();
+        try {
+            AttendanceSegment[] bigger = new AttendanceSegment[segments.length + 1];
+            System.arraycopy(segments, 0, bigger, 0, segments.length);
+            bigger[segments.length] = seg;
+            segments = bigger;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        if (sketches != null && seg.getRowCount() > 0) {
+            sketches.markDirty(seg.getMinTimestamp().toLocalDate().toEpochDay(),
+                    seg.getMaxTimestamp().toLocalDate().toEpochDay());
         }
     }
 
     // Simulated RFID scan by employeeId (stub)
     // If isCheckIn true -> record check-in, else check-out
     public AttendanceRecord simulateRFIDScan(int employeeId, boolean isCheckIn) {
-        String name = lookupEmployeeNameById(employeeId);
-        if (name == null) {
-            name = "Unknown-" + employeeId; // allow unknown IDs to be recorded
-        }
-        AttendanceRecord rec = new AttendanceRecord(employeeId, name, "RFID", isCheckIn);
+        AttendanceRecord rec = new AttendanceRecord(employeeId, resolveEmployeeName(employeeId), "RFID", isCheckIn);
         recordAttendance(rec);
         return rec;
     }
 
+    // Name recorded for a scan ("Unknown-<id>" so unknown IDs can still be recorded)
+    public String resolveEmployeeName(int employeeId) {
+        String name = lookupEmployeeNameById(employeeId);
+        return (name == null) ? "Unknown-" + employeeId : name;
+    }
+
     // Helper: find employee name by id using OfficeSystem (simple public helper)
     private String lookupEmployeeNameById(int id) {
         Employee e = OfficeSystem.findEmployeeByIdStatic(id);
@@ -107,354 +840,534 @@ public class AttendanceManager {
         return null;
     }
 
-    // Return a shallow copy array of all records (caller gets array sized exactly to count)
+    // Return an array of all records (caller gets array sized exactly to count);
+    // in columnar mode the records are materialized here. Loads every partition.
     public AttendanceRecord[] getAllRecords() {
-        AttendanceRecord[] out = new AttendanceRecord[recordCount];
-        System.arraycopy(records, 0, out, 0, recordCount);
+        AttendanceRecord[][] parts;
+        int total = 0;
+        stateLock.writeLock().lock();
+        try {
+            mergeStripes();
+            AttendancePartition[] all = allPartitions();
+            parts = new AttendanceRecord[all.length][];
+            for (int p = 0; p < all.length; p++) {
+                ensureLoaded(all[p]);
+                parts[p] = all[p].getRecords();
+                total += parts[p].length;
+            }
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        AttendanceRecord[] out = new AttendanceRecord[total];
+        int c = 0;
+        for (int p = 0; p < parts.length; p++) {
+            System.arraycopy(parts[p], 0, out, c, parts[p].length);
+            c += parts[p].length;
+        }
         return out;
     }
 
-    // helper: collect records for a specific date into a temp array, returns array sized to count
-    private AttendanceRecord[] collectRecordsForDate(LocalDate date) {
-        AttendanceRecord[] tmp = new AttendanceRecord[recordCount];
-        int c = 0;
-        for (int i = 0; i < recordCount; i++) {
-            AttendanceRecord r = records[i];
-            if (r != null && r.getTimestamp().toLocalDate().equals(date)) {
-                tmp[c++] = r;
+    // Rough heap footprint of the resident rows (for comparing storage modes)
+    public long getEstimatedMemoryBytes() {
+        long bytes = 0;
+        stateLock.writeLock().lock();
+        try {
+            mergeStripes();
+            AttendancePartition[] all = allPartitions();
+            for (int i = 0; i < all.length; i++) {
+                if (all[i].isLoaded()) bytes += all[i].getStore().estimateBytes();
             }
+        } finally {
+            stateLock.writeLock().unlock();
         }
-        AttendanceRecord[] out = new AttendanceRecord[c];
-        System.arraycopy(tmp, 0, out, 0, c);
-        return out;
+        return bytes;
     }
 
-    // helper: collect records between inclusive start and end
-    private AttendanceRecord[] collectRecordsBetween(LocalDate start, LocalDate end) {
-        AttendanceRecord[] tmp = new AttendanceRecord[recordCount];
-        int c = 0;
-        for (int i = 0; i < recordCount; i++) {
-            AttendanceRecord r = records[i];
-            LocalDate d = r.getTimestamp().toLocalDate();
-            if ((d.isEqual(start) || d.isAfter(start)) && (d.isEqual(end) || d.isBefore(end))) {
-                tmp[c++] = r;
+    // Records for a specific date, sorted by timestamp (index lookup, no full scan)
+    public AttendanceRecord[] collectRecordsForDate(LocalDate date) {
+        return collectRecordsBetween(date, date);
+    }
+
+    // Records between inclusive start and end, sorted by timestamp
+    // (live records merged with any attached segment covering the range)
+    public AttendanceRecord[] collectRecordsBetween(LocalDate start, LocalDate end) {
+        long startDay = start.toEpochDay();
+        long endDay = end.toEpochDay();
+        AttendanceRecord[] out = new AttendanceRecord[0];
+        AttendancePartition[] parts = lockRange(startDay, endDay);
+        try {
+            for (int p = 0; p < parts.length; p++) {
+                AttendanceIndex index = parts[p].getIndex();
+                AttendanceStore store = parts[p].getStore();
+                int total = 0;
+                int[][] perDay = new int[(int) Math.max(0, endDay - startDay + 1)][];
+                for (int i = 0; i < perDay.length; i++) {
+                    perDay[i] = index.rowsForDay(startDay + i);
+                    total += perDay[i].length;
+                }
+                AttendanceRecord[] recs = new AttendanceRecord[total];
+                int c = 0;
+                for (int i = 0; i < perDay.length; i++) {
+                    for (int k = 0; k < perDay[i].length; k++) recs[c++] = store.get(perDay[i][k]);
+                }
+                out = (out.length == 0) ? recs : mergeByTimestamp(out, recs);
+                AttendanceSegment[] snapshots = parts[p].getSnapshots();
+                for (int s = 0; s < snapshots.length; s++) {
+                    if (snapshots[s].overlapsDays(startDay, endDay)) {
+                        out = mergeByTimestamp(out, snapshots[s].recordsBetween(startDay, endDay));
+                    }
+                }
+            }
+            for (int i = 0; i < segments.length; i++) {
+                if (segments[i].overlapsDays(startDay, endDay)) {
+                    out = mergeByTimestamp(out, segments[i].recordsBetween(startDay, endDay));
+                }
             }
+        } finally {
+            stateLock.readLock().unlock();
         }
-        AttendanceRecord[] out = new AttendanceRecord[c];
-        System.arraycopy(tmp, 0, out, 0, c);
         return out;
     }
 
-    // insertion sort by timestamp (in-place) for small arrays
-    private void sortRecordsByTimestamp(AttendanceRecord[] arr) {
-        if (arr == null) return;
-        for (int i = 1; i < arr.length; i++) {
-            AttendanceRecord key = arr[i];
-            int j = i - 1;
-            while (j >= 0 && arr[j].getTimestamp().isAfter(key.getTimestamp())) {
-                arr[j + 1] = arr[j];
-                j--;
-            }
-            arr[j + 1] = key;
+    // Lazy range query: records matching the query's date range, employees and direction,
+    // read one day at a time as the cursor (or its stream()) is consumed
+    public AttendanceCursor query(AttendanceQuery query) {
+        return new AttendanceCursor(this, query);
+    }
+
+    // one cursor fetch: lock and load only the partitions of that day
+    AttendanceRecord[] fetchPage(AttendanceQuery query, long day, AttendanceCursor.Position after, int limit) {
+        AttendancePartition[] parts = lockRange(day, day);
+        try {
+            return AttendanceCursor.collectDay(parts, segments, query, day, after, limit);
+        } finally {
+            stateLock.readLock().unlock();
         }
     }
 
-    // ========================= DAILY REPORT =============================
-    // Returns human-readable report and writes CSV file
-    public String generateReportDaily(LocalDate date) {
-        // collect records for date
-        AttendanceRecord[] dayRecords = collectRecordsForDate(date);
+    // helper: merge two timestamp-sorted arrays
+    private static AttendanceRecord[] mergeByTimestamp(AttendanceRecord[] a, AttendanceRecord[] b) {
+        AttendanceRecord[] out = new AttendanceRecord[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            boolean bFirst = EpochTime.compare(b[j].getEpochSecond(), b[j].getNano(), a[i].getEpochSecond(), a[i].getNano()) < 0;
+            out[k++] = bFirst ? b[j++] : a[i++];
+        }
+        while (i < a.length) out[k++] = a[i++];
+        while (j < b.length) out[k++] = b[j++];
+        return out;
+    }
 
-        // find unique employee IDs present that day (brute force)
-        int[] empIdsTmp = new int[dayRecords.length];
-        int empIdCount = 0;
-        for (int i = 0; i < dayRecords.length; i++) {
-            int id = dayRecords[i].getEmployeeId();
-            boolean found = false;
-            for (int j = 0; j < empIdCount; j++) {
-                if (empIdsTmp[j] == id) { found = true; break; }
+    // helper: rollups for a report range; indexes of the overlapping partitions,
+    // plus attached segments and partition snapshots that overlap it
+    private SummarySource summarySourceFor(AttendancePartition[] parts, long startDay, long endDay) {
+        int n = parts.length;
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].overlapsDays(startDay, endDay)) n++;
+        }
+        // taken once: a background merge may replace a partition's snapshots meanwhile
+        AttendanceSegment[][] snapshots = new AttendanceSegment[parts.length][];
+        for (int i = 0; i < parts.length; i++) {
+            snapshots[i] = parts[i].getSnapshots();
+            for (int s = 0; s < snapshots[i].length; s++) {
+                if (snapshots[i][s].overlapsDays(startDay, endDay)) n++;
             }
-            if (!found) empIdsTmp[empIdCount++] = id;
         }
-
-        String sb = "";
-        String header = "Daily Attendance Report for " + date.toString();
-        sb += header + System.lineSeparator();
-        sb += "empId,empName,firstCheckIn,lastCheckOut,totalHours (approx),notes" + System.lineSeparator();
-
-        String outCsv = "attendance-report-" + date.format(DateTimeFormatter.BASIC_ISO_DATE) + ".csv";
-        BufferedWriter writer = null;
-        try {
-            writer = new BufferedWriter(new FileWriter(outCsv));
-            writer.write("empId,empName,firstCheckIn,lastCheckOut,totalHours,notes");
-            writer.newLine();
-
-            // For each employee id, scan records again to collect that employee's records for the day
-            for (int eidx = 0; eidx < empIdCount; eidx++) {
-                int empId = empIdsTmp[eidx];
-
-                // collect this employee's records for the date
-                AttendanceRecord[] tmp = new AttendanceRecord[dayRecords.length];
-                int tc = 0;
-                for (int k = 0; k < dayRecords.length; k++) {
-                    if (dayRecords[k].getEmployeeId() == empId) tmp[tc++] = dayRecords[k];
-                }
-                AttendanceRecord[] empRecords = new AttendanceRecord[tc];
-                System.arraycopy(tmp, 0, empRecords, 0, tc);
-
-                // sort by timestamp
-                sortRecordsByTimestamp(empRecords);
-
-                // compute firstIn and lastOut
-                LocalDateTime firstIn = null;
-                LocalDateTime lastOut = null;
-                for (int r = 0; r < empRecords.length; r++) {
-                    AttendanceRecord ar = empRecords[r];
-                    if (ar.isCheckIn() && firstIn == null) firstIn = ar.getTimestamp();
-                    if (!ar.isCheckIn()) lastOut = ar.getTimestamp();
+        final SummarySource[] sources = new SummarySource[n];
+        int c = 0;
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].overlapsDays(startDay, endDay)) sources[c++] = segments[i];
+        }
+        for (int i = 0; i < parts.length; i++) {
+            for (int s = 0; s < snapshots[i].length; s++) {
+                if (snapshots[i][s].overlapsDays(startDay, endDay)) sources[c++] = snapshots[i][s];
+            }
+            sources[c++] = parts[i].getIndex();
+        }
+        if (n == 1) return sources[0];
+        return new SummarySource() {
+            public int[] employeesBetween(long from, long to) {
+                AttendanceIndex.IntSet seen = new AttendanceIndex.IntSet();
+                for (int i = 0; i < sources.length; i++) {
+                    int[] ids = sources[i].employeesBetween(from, to);
+                    for (int k = 0; k < ids.length; k++) seen.add(ids[k]);
                 }
+                return seen.toArray();
+            }
 
-                String notes = "";
-                double hours = 0.0;
-                if (firstIn != null && lastOut != null && lastOut.isAfter(firstIn)) {
-                    Duration dur = Duration.between(firstIn, lastOut);
-                    hours = dur.toMinutes() / 60.0;
-                } else {
-                    notes = "missing check-in or check-out";
+            public DailySummary summary(int employeeId, long epochDay) {
+                DailySummary merged = null;
+                for (int i = 0; i < sources.length; i++) {
+                    DailySummary s = sources[i].summary(employeeId, epochDay);
+                    if (s == null) continue;
+                    merged = (merged == null) ? s : merged.merge(s);
                 }
+                return merged;
+            }
+        };
+    }
 
-                String empName = (empRecords.length > 0) ? empRecords[0].getEmployeeName() : ("Emp-" + empId);
-                String firstStr = (firstIn == null) ? "" : firstIn.format(AttendanceRecord.FORMATTER);
-                String lastStr = (lastOut == null) ? "" : lastOut.format(AttendanceRecord.FORMATTER);
+    // ========================= REPORT PIPELINE =============================
+    // Single pass over the employees of [startDay, endDay]: one ReportRow per employee,
+    // handed to every sink in employee order (nothing accumulated beyond one block).
+    // DAILY rows when kind is DAILY, PERIOD rows (days present, hours) otherwise.
+    // Runs under the shared read lock, so several reports can stream at once.
+    private void streamReport(ReportRow.Kind kind, String title, long startDay, long endDay, ReportSink[] sinks) {
+        AttendancePartition[] parts = lockRange(startDay, endDay);
+        try {
+            streamReport(kind, title, summarySourceFor(parts, startDay, endDay), startDay, endDay, sinks);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
 
-                sb += empId + "," + empName + "," + firstStr + "," + lastStr + "," +
-                      String.format("%.2f", hours) + "," + notes + System.lineSeparator();
+    private void streamReport(ReportRow.Kind kind, String title, SummarySource src, long startDay, long endDay,
+                              ReportSink[] sinks) {
+        int[] empIds = src.employeesBetween(startDay, endDay);
 
-                writer.write(empId + "," + escapeCsv(empName) + "," + firstStr + "," + lastStr + "," +
-                             String.format("%.2f", hours) + "," + notes);
-                writer.newLine();
+        for (int s = 0; s < sinks.length; s++) sinks[s].begin(kind, title);
+        int parallelism = options.getReportParallelism();
+        if (parallelism == 1 || empIds.length < 2 * REPORT_LEAF_EMPLOYEES) {
+            for (int ei = 0; ei < empIds.length; ei++) {
+                ReportRow row = reportRow(kind, src, empIds[ei], startDay, endDay);
+                for (int s = 0; s < sinks.length; s++) sinks[s].row(row);
             }
+        } else {
+            streamReportParallel(kind, src, empIds, startDay, endDay, sinks, parallelism);
+        }
+        for (int s = 0; s < sinks.length; s++) sinks[s].end();
+    }
 
-            writer.flush();
-        } catch (IOException e) {
-            sb += "Failed to write daily report CSV: " + e.getMessage() + System.lineSeparator();
-        } finally {
-            if (writer != null) {
-                try { writer.close(); } catch (IOException ex) { /* ignore */ }
+    // employees per fork-join leaf task, and per block handed to the sinks
+    private static final int REPORT_LEAF_EMPLOYEES = 64;
+    private static final int REPORT_BLOCK_EMPLOYEES = 4096;
+
+    // Rows of one block are computed on the pool, then emitted in employee order
+    // before the next block starts, so output matches the sequential loop exactly
+    // and at most one block of rows is held at a time.
+    private static void streamReportParallel(ReportRow.Kind kind, SummarySource src, int[] empIds,
+                                             long startDay, long endDay, ReportSink[] sinks, int parallelism) {
+        ForkJoinPool pool = (parallelism == ForkJoinPool.getCommonPoolParallelism())
+                ? ForkJoinPool.commonPool() : new ForkJoinPool(parallelism);
+        try {
+            ReportRow[] block = new ReportRow[Math.min(REPORT_BLOCK_EMPLOYEES, empIds.length)];
+            for (int from = 0; from < empIds.length; from += block.length) {
+                int to = Math.min(empIds.length, from + block.length);
+                pool.invoke(new ReportRowTask(kind, src, empIds, startDay, endDay, block, from, from, to));
+                for (int i = 0; i < to - from; i++) {
+                    for (int s = 0; s < sinks.length; s++) sinks[s].row(block[i]);
+                    block[i] = null;
+                }
             }
+        } finally {
+            if (pool != ForkJoinPool.commonPool()) pool.shutdown();
         }
+    }
 
-        return sb;
+    // divide-and-conquer over employee positions [lo, hi); rows land at out[i - base]
+    private static class ReportRowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ReportRow.Kind kind;
+        private final SummarySource src;
+        private final int[] empIds;
+        private final long startDay;
+        private final long endDay;
+        private final ReportRow[] out;
+        private final int base;
+        private final int lo;
+        private final int hi;
+
+        ReportRowTask(ReportRow.Kind kind, SummarySource src, int[] empIds, long startDay, long endDay,
+                      ReportRow[] out, int base, int lo, int hi) {
+            this.kind = kind;
+            this.src = src;
+            this.empIds = empIds;
+            this.startDay = startDay;
+            this.endDay = endDay;
+            this.out = out;
+            this.base = base;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute() {
+            if (hi - lo <= REPORT_LEAF_EMPLOYEES) {
+                for (int i = lo; i < hi; i++) out[i - base] = reportRow(kind, src, empIds[i], startDay, endDay);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new ReportRowTask(kind, src, empIds, startDay, endDay, out, base, lo, mid),
+                      new ReportRowTask(kind, src, empIds, startDay, endDay, out, base, mid, hi));
+        }
     }
 
-    // ========================= WEEKLY REPORT =============================
-    public String generateReportWeekly(LocalDate anyDateInWeek) {
-        LocalDate monday = anyDateInWeek.with(java.time.DayOfWeek.MONDAY);
-        LocalDate sunday = monday.plusDays(6);
+    private static ReportRow reportRow(ReportRow.Kind kind, SummarySource src, int empId, long startDay, long endDay) {
+        return (kind == ReportRow.Kind.DAILY) ? dailyRow(src, empId, startDay) : periodRow(src, empId, startDay, endDay);
+    }
 
-        // collect records between dates
-        AttendanceRecord[] weekRecords = collectRecordsBetween(monday, sunday);
+    // one employee's day from the pre-aggregated rollup
+    private static ReportRow dailyRow(SummarySource src, int empId, long day) {
+        DailySummary summary = src.summary(empId, day);
+        String notes = summary.isAnomaly() ? "missing check-in or check-out" : "";
+        return new ReportRow(empId, summary.getEmployeeName(), summary.getFirstIn(), summary.getLastOut(),
+                             summary.getHours(), notes);
+    }
 
-        // find unique employee IDs in weekRecords
-        int[] empIdsTmp = new int[weekRecords.length];
-        int empIdCount = 0;
-        for (int i = 0; i < weekRecords.length; i++) {
-            int id = weekRecords[i].getEmployeeId();
-            boolean found = false;
-            for (int j = 0; j < empIdCount; j++) {
-                if (empIdsTmp[j] == id) { found = true; break; }
+    // one employee's days present and hours over a range of days
+    private static ReportRow periodRow(SummarySource src, int empId, long startDay, long endDay) {
+        int daysPresent = 0;
+        double totalHours = 0.0;
+        String notes = "";
+        String empName = null;
+
+        for (long cur = startDay; cur <= endDay; cur++) {
+            // pre-aggregated rollup for this employee and date
+            DailySummary summary = src.summary(empId, cur);
+            if (summary == null) continue;
+
+            daysPresent++;
+            if (empName == null) empName = summary.getEmployeeName();
+
+            if (summary.isAnomaly()) {
+                notes = "some days missing check-in/out";
+            } else {
+                totalHours += summary.getHours();
             }
-            if (!found) empIdsTmp[empIdCount++] = id;
-        }
+        } // each day
 
-        String sb = "";
-        sb += "Weekly Attendance Report for " + monday.toString() + " to " + sunday.toString() + System.lineSeparator();
-        sb += "empId,empName,daysPresent,totalHours(approx),notes" + System.lineSeparator();
+        if (empName == null) empName = "Emp-" + empId;
+        return new ReportRow(empId, empName, daysPresent, totalHours, notes);
+    }
 
-        String outCsv = "attendance-report-week-" + monday.format(DateTimeFormatter.BASIC_ISO_DATE) + ".csv";
-        BufferedWriter writer = null;
+    // ========================= SHARD MERGE =============================
+    // Report rows in employee id order, computed a block at a time, so ShardedAttendanceManager
+    // can merge the shards' streams without holding whole reports. Holds the shared read lock
+    // until close(), which must run on the opening thread.
+    ReportStream openReportStream(ReportRow.Kind kind, long startDay, long endDay) {
+        AttendancePartition[] parts = lockRange(startDay, endDay);
         try {
-            writer = new BufferedWriter(new FileWriter(outCsv));
-            writer.write("empId,empName,daysPresent,totalHours,notes");
-            writer.newLine();
-
-            for (int ei = 0; ei < empIdCount; ei++) {
-                int empId = empIdsTmp[ei];
-
-                double totalHours = 0.0;
-                int daysPresent = 0;
-                String notes = "";
-
-                // for each day in week, check presence
-                for (int d = 0; d < 7; d++) {
-                    LocalDate cur = monday.plusDays(d);
-
-                    // collect this employee's records for this date (scan weekRecords)
-                    AttendanceRecord[] tmp = new AttendanceRecord[weekRecords.length];
-                    int tc = 0;
-                    for (int k = 0; k < weekRecords.length; k++) {
-                        if (weekRecords[k].getEmployeeId() == empId &&
-                            weekRecords[k].getTimestamp().toLocalDate().equals(cur)) {
-                            tmp[tc++] = weekRecords[k];
-                        }
-                    }
-                    if (tc == 0) continue;
+            SummarySource src = summarySourceFor(parts, startDay, endDay);
+            int[] empIds = src.employeesBetween(startDay, endDay);
+            Arrays.sort(empIds);
+            return new ReportStream(kind, src, empIds, startDay, endDay, options.getReportParallelism() != 1);
+        } catch (RuntimeException e) {
+            stateLock.readLock().unlock();
+            throw e;
+        }
+    }
 
-                    // got records for this date
-                    daysPresent++;
+    class ReportStream {
+        private final ReportRow.Kind kind;
+        private final SummarySource src;
+        private final int[] empIds;
+        private final long startDay;
+        private final long endDay;
+        private final boolean parallel;
+        private int next; // first employee position not handed out yet
+
+        ReportStream(ReportRow.Kind kind, SummarySource src, int[] empIds, long startDay, long endDay,
+                     boolean parallel) {
+            this.kind = kind;
+            this.src = src;
+            this.empIds = empIds;
+            this.startDay = startDay;
+            this.endDay = endDay;
+            this.parallel = parallel;
+        }
 
-                    AttendanceRecord[] dayList = new AttendanceRecord[tc];
-                    System.arraycopy(tmp, 0, dayList, 0, tc);
-                    sortRecordsByTimestamp(dayList);
+        boolean isDone() {
+            return next == empIds.length;
+        }
 
-                    LocalDateTime firstIn = null;
-                    LocalDateTime lastOut = null;
-                    for (int r = 0; r < dayList.length; r++) {
-                        AttendanceRecord ar = dayList[r];
-                        if (ar.isCheckIn() && firstIn == null) firstIn = ar.getTimestamp();
-                        if (!ar.isCheckIn()) lastOut = ar.getTimestamp();
-                    }
+        // rows of up to max further employees into out[from..]; returns how many
+        int fill(ReportRow[] out, int from, int max) {
+            int to = Math.min(empIds.length, next + max);
+            if (parallel && to - next >= 2 * REPORT_LEAF_EMPLOYEES) {
+                new ReportRowTask(kind, src, empIds, startDay, endDay, out, next - from, next, to).invoke();
+            } else {
+                for (int i = next; i < to; i++) out[from + i - next] = reportRow(kind, src, empIds[i], startDay, endDay);
+            }
+            int n = to - next;
+            next = to;
+            return n;
+        }
 
-                    if (firstIn != null && lastOut != null && lastOut.isAfter(firstIn)) {
-                        totalHours += Duration.between(firstIn, lastOut).toMinutes() / 60.0;
-                    } else {
-                        notes = "some days missing check-in/out";
-                    }
-                } // each day
+        void close() {
+            stateLock.readLock().unlock();
+        }
+    }
 
-                // pick a name from any matching record in weekRecords
-                String empName = "Emp-" + empId;
-                for (int k = 0; k < weekRecords.length; k++) {
-                    if (weekRecords[k].getEmployeeId() == empId) { empName = weekRecords[k].getEmployeeName(); break; }
-                }
+    // console text + CSV file, the way the String-returning report methods always worked
+    private String reportToText(ReportRow.Kind kind, String title, long startDay, long endDay,
+                                String outCsv, String label) {
+        StringWriter text = new StringWriter();
+        CsvReportSink csv = new CsvReportSink(outCsv);
+        streamReport(kind, title, startDay, endDay, new ReportSink[] { new AppendableReportSink(text), csv });
+        if (csv.getError() != null) {
+            text.write("Failed to write " + label + " report CSV: " + csv.getError().getMessage() + System.lineSeparator());
+        }
+        return text.toString();
+    }
 
-                sb += empId + "," + empName + "," + daysPresent + "," +
-                      String.format("%.2f", totalHours) + "," + notes + System.lineSeparator();
+    // ========================= DAILY REPORT =============================
+    // Returns human-readable report and writes CSV file
+    public String generateReportDaily(LocalDate date) {
+        long day = date.toEpochDay();
+        String outCsv = "attendance-report-" + date.format(DateTimeFormatter.BASIC_ISO_DATE) + ".csv";
+        return reportToText(ReportRow.Kind.DAILY, dailyTitle(date), day, day, outCsv, "daily");
+    }
 
-                writer.write(empId + "," + escapeCsv(empName) + "," + daysPresent + "," +
-                             String.format("%.2f", totalHours) + "," + notes);
-                writer.newLine();
-            }
+    // Overloaded: stream the daily report to the given sinks only
+    public void generateReportDaily(LocalDate date, ReportSink... sinks) {
+        long day = date.toEpochDay();
+        streamReport(ReportRow.Kind.DAILY, dailyTitle(date), day, day, sinks);
+    }
 
-            writer.flush();
-        } catch (IOException e) {
-            sb += "Failed to write weekly report CSV: " + e.getMessage() + System.lineSeparator();
-        } finally {
-            if (writer != null) {
-                try { writer.close(); } catch (IOException ex) { /* ignore */ }
-            }
-        }
+    static String dailyTitle(LocalDate date) {
+        return "Daily Attendance Report for " + date.toString();
+    }
 
-        return sb;
+    // ========================= WEEKLY REPORT =============================
+    public String generateReportWeekly(LocalDate anyDateInWeek) {
+        LocalDate monday = anyDateInWeek.with(java.time.DayOfWeek.MONDAY);
+        String outCsv = "attendance-report-week-" + monday.format(DateTimeFormatter.BASIC_ISO_DATE) + ".csv";
+        return reportToText(ReportRow.Kind.PERIOD, weeklyTitle(monday), monday.toEpochDay(),
+                            monday.toEpochDay() + 6, outCsv, "weekly");
+    }
+
+    // Overloaded: stream the weekly report to the given sinks only
+    public void generateReportWeekly(LocalDate anyDateInWeek, ReportSink... sinks) {
+        LocalDate monday = anyDateInWeek.with(java.time.DayOfWeek.MONDAY);
+        streamReport(ReportRow.Kind.PERIOD, weeklyTitle(monday), monday.toEpochDay(), monday.toEpochDay() + 6, sinks);
+    }
+
+    static String weeklyTitle(LocalDate monday) {
+        return "Weekly Attendance Report for " + monday.toString() + " to " + monday.plusDays(6).toString();
     }
 
     // ========================= MONTHLY REPORT =============================
     public String generateReportMonthly(int year, int month) {
         LocalDate start = LocalDate.of(year, month, 1);
         LocalDate end = start.withDayOfMonth(start.lengthOfMonth());
+        String outCsv = "attendance-report-month-" + year + String.format("%02d", month) + ".csv";
+        return reportToText(ReportRow.Kind.PERIOD, monthlyTitle(year, month), start.toEpochDay(),
+                            end.toEpochDay(), outCsv, "monthly");
+    }
 
-        AttendanceRecord[] monthRecords = collectRecordsBetween(start, end);
+    // Overloaded: stream the monthly report to the given sinks only
+    public void generateReportMonthly(int year, int month, ReportSink... sinks) {
+        LocalDate start = LocalDate.of(year, month, 1);
+        LocalDate end = start.withDayOfMonth(start.lengthOfMonth());
+        streamReport(ReportRow.Kind.PERIOD, monthlyTitle(year, month), start.toEpochDay(), end.toEpochDay(), sinks);
+    }
 
-        // find unique employee IDs in monthRecords
-        int[] empIdsTmp = new int[monthRecords.length];
-        int empIdCount = 0;
-        for (int i = 0; i < monthRecords.length; i++) {
-            int id = monthRecords[i].getEmployeeId();
-            boolean found = false;
-            for (int j = 0; j < empIdCount; j++) {
-                if (empIdsTmp[j] == id) { found = true; break; }
-            }
-            if (!found) empIdsTmp[empIdCount++] = id;
-        }
+    static String monthlyTitle(int year, int month) {
+        return "Monthly Attendance Report for " + year + "-" + String.format("%02d", month);
+    }
 
-        String sb = "";
-        sb += "Monthly Attendance Report for " + year + "-" + String.format("%02d", month) + System.lineSeparator();
-        sb += "empId,empName,daysPresent,totalHours(approx),notes" + System.lineSeparator();
+    // ========================= STRESS TEST =============================
+    // java smartoffice.v1.AttendanceManager [csv] [writers] [scansPerWriter] [RELAXED|STRICT] [stripes]
+    // Writer threads record distinct scans while two reader threads run reports; afterwards
+    // every scan must be there exactly once, live and after a restart, with the same monthly
+    // report. Exits with status 1 on any missing or duplicated scan.
+    public static void main(String[] args) throws Exception {
+        String path = (args.length > 0) ? args[0] : "attendance-stress.csv";
+        final int writers = (args.length > 1) ? Integer.parseInt(args[1]) : 8;
+        final int perWriter = (args.length > 2) ? Integer.parseInt(args[2]) : 2000;
+        AttendanceOptions options = new AttendanceOptions()
+                .setDurability(AttendanceCsvWriter.Durability.valueOf((args.length > 3) ? args[3] : "RELAXED"));
+        if (args.length > 4) options.setWriteStripes(Integer.parseInt(args[4]));
+        if (new File(path).exists()) {
+            System.err.println(path + " already exists; pass a new file name");
+            System.exit(2);
+        }
 
-        String outCsv = "attendance-report-month-" + year + String.format("%02d", month) + ".csv";
-        BufferedWriter writer = null;
-        try {
-            writer = new BufferedWriter(new FileWriter(outCsv));
-            writer.write("empId,empName,daysPresent,totalHours,notes");
-            writer.newLine();
-
-            for (int ei = 0; ei < empIdCount; ei++) {
-                int empId = empIdsTmp[ei];
-
-                int daysPresent = 0;
-                double totalHours = 0.0;
-                String notes = "";
-
-                // iterate each date in month
-                int daysInMonth = start.lengthOfMonth();
-                for (int d = 1; d <= daysInMonth; d++) {
-                    LocalDate cur = LocalDate.of(year, month, d);
-
-                    // collect this employee's records for this date (scan monthRecords)
-                    AttendanceRecord[] tmp = new AttendanceRecord[monthRecords.length];
-                    int tc = 0;
-                    for (int k = 0; k < monthRecords.length; k++) {
-                        if (monthRecords[k].getEmployeeId() == empId &&
-                            monthRecords[k].getTimestamp().toLocalDate().equals(cur)) {
-                            tmp[tc++] = monthRecords[k];
+        final AttendanceManager manager = new AttendanceManager(path, options);
+        final LocalDateTime base = LocalDateTime.of(2025, 3, 1, 8, 0);
+        final boolean[] stop = new boolean[1];
+        final long[] reports = new long[1];
+        Thread[] readers = new Thread[2];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(new Runnable() {
+                public void run() {
+                    while (true) {
+                        synchronized (stop) {
+                            if (stop[0]) return;
+                        }
+                        manager.generateReportMonthly(2025, 3, new CollectingReportSink());
+                        manager.collectRecordsForDate(base.toLocalDate());
+                        synchronized (stop) {
+                            reports[0]++;
                         }
                     }
-                    if (tc == 0) continue;
-
-                    daysPresent++;
-                    AttendanceRecord[] dayList = new AttendanceRecord[tc];
-                    System.arraycopy(tmp, 0, dayList, 0, tc);
-                    sortRecordsByTimestamp(dayList);
-
-                    LocalDateTime firstIn = null;
-                    LocalDateTime lastOut = null;
-                    for (int r = 0; r < dayList.length; r++) {
-                        AttendanceRecord ar = dayList[r];
-                        if (ar.isCheckIn() && firstIn == null) firstIn = ar.getTimestamp();
-                        if (!ar.isCheckIn()) lastOut = ar.getTimestamp();
-                    }
-
-                    if (firstIn != null && lastOut != null && lastOut.isAfter(firstIn)) {
-                        totalHours += Duration.between(firstIn, lastOut).toMinutes() / 60.0;
-                    } else {
-                        notes = "some days missing check-in/out";
+                }
+            });
+            readers[r].start();
+        }
+        // scan i of writer k is at base + i * writers + k seconds, so every timestamp is unique
+        Thread[] threads = new Thread[writers];
+        long started = System.nanoTime();
+        for (int k = 0; k < writers; k++) {
+            final int writer = k;
+            threads[k] = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < perWriter; i++) {
+                        int id = writer * 1000 + i % 100;
+                        manager.recordAttendance(new AttendanceRecord(id, "Emp-" + id, "RFID", i % 2 == 0,
+                                base.plusSeconds((long) i * writers + writer)));
                     }
-                } // each day
-
-                // pick name from any matching record
-                String empName = "Emp-" + empId;
-                for (int k = 0; k < monthRecords.length; k++) {
-                    if (monthRecords[k].getEmployeeId() == empId) { empName = monthRecords[k].getEmployeeName(); break; }
                 }
-
-                sb += empId + "," + empName + "," + daysPresent + "," +
-                      String.format("%.2f", totalHours) + "," + notes + System.lineSeparator();
-
-                writer.write(empId + "," + escapeCsv(empName) + "," + daysPresent + "," +
-                             String.format("%.2f", totalHours) + "," + notes);
-                writer.newLine();
-            }
-
-            writer.flush();
-        } catch (IOException e) {
-            sb += "Failed to write monthly report CSV: " + e.getMessage() + System.lineSeparator();
-        } finally {
-            if (writer != null) {
-                try { writer.close(); } catch (IOException ex) { /* ignore */ }
-            }
+            });
+            threads[k].start();
         }
-
-        return sb;
+        for (int k = 0; k < writers; k++) threads[k].join();
+        long writeNanos = System.nanoTime() - started;
+        synchronized (stop) {
+            stop[0] = true;
+        }
+        for (int r = 0; r < readers.length; r++) readers[r].join();
+
+        int expected = writers * perWriter;
+        CollectingReportSink live = new CollectingReportSink();
+        manager.generateReportMonthly(2025, 3, live);
+        String liveProblem = checkStress(manager.getAllRecords(), base, expected);
+        manager.close();
+        AttendanceManager reopened = new AttendanceManager(path, options);
+        CollectingReportSink reloaded = new CollectingReportSink();
+        reopened.generateReportMonthly(2025, 3, reloaded);
+        String reloadProblem = checkStress(reopened.getAllRecords(), base, expected);
+        reopened.close();
+        String[] a = new String[live.getRows().length];
+        String[] b = new String[reloaded.getRows().length];
+        for (int i = 0; i < a.length; i++) a[i] = live.getRows()[i].format(true);
+        for (int i = 0; i < b.length; i++) b[i] = reloaded.getRows()[i].format(true);
+        Arrays.sort(a); // row order follows index insertion order, which a restart may change
+        Arrays.sort(b);
+
+        System.out.println(writers + " writers x " + perWriter + " scans (" + options.getDurability() + ", "
+                + options.getWriteStripes() + " stripes): "
+                + String.format("%.0f", expected * 1_000_000_000.0 / writeNanos) + " scans/s, "
+                + reports[0] + " reports meanwhile");
+        if (liveProblem != null || reloadProblem != null || !Arrays.equals(a, b)) {
+            System.out.println("FAILED: live " + (liveProblem == null ? "ok" : liveProblem)
+                    + ", reloaded " + (reloadProblem == null ? "ok" : reloadProblem)
+                    + ", reports " + (Arrays.equals(a, b) ? "same" : "differ"));
+            System.exit(1);
+        }
+        System.out.println("OK: " + expected + " scans, each exactly once, live and after restart");
     }
 
-    // Basic CSV escaping helper for names in output
-    private String escapeCsv(String s) {
-        if (s == null) return "";
-        if (s.contains(",") || s.contains("\"") || s.contains("\n")) {
-            s = s.replace("\"", "\"\"");
-            return "\"" + s + "\"";
+    // null if recs holds each of the stress test's scans exactly once, else what is wrong
+    private static String checkStress(AttendanceRecord[] recs, LocalDateTime base, int expected) {
+        long first = base.toEpochSecond(ZoneOffset.UTC);
+        boolean[] seen = new boolean[expected];
+        for (int i = 0; i < recs.length; i++) {
+            long k = recs[i].getEpochSecond() - first;
+            if (k < 0 || k >= expected) return "unexpected scan " + recs[i].describe();
+            if (seen[(int) k]) return "duplicate scan " + recs[i].describe();
+            seen[(int) k] = true;
         }
-        return s;
+        return (recs.length == expected) ? null : (expected - recs.length) + " scans missing";
     }
 }
-
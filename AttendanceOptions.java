@@ -0,0 +1,148 @@
+package smartoffice.v1;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * AttendanceOptions: start-up settings for AttendanceManager.
+ *
+ * Plain settings object with chainable setters, e.g.
+ *   new AttendanceOptions().setStorageMode(AttendanceOptions.StorageMode.COLUMNAR)
+ *
+ * Defaults match the original behaviour: object storage, relaxed group commit.
+ */
+public class AttendanceOptions {
+    // How rows are kept in memory
+    public enum StorageMode { OBJECTS, COLUMNAR }
+
+    // How scans are split across CSV files (NONE = the single attendance.csv)
+    public enum PartitionScheme { NONE, MONTHLY, DAILY }
+
+    private StorageMode storageMode = StorageMode.OBJECTS;
+    private AttendanceCsvWriter.Durability durability = AttendanceCsvWriter.Durability.RELAXED;
+    private int maxBatchRows = 256;
+    private long maxBatchDelayMillis = 20;
+    private PartitionScheme partitionScheme = PartitionScheme.NONE;
+    private long maxResidentRows = Long.MAX_VALUE;
+    private int reportParallelism = ForkJoinPool.getCommonPoolParallelism();
+    private boolean writeAheadLog;
+    private int checkpointRows = 100_000;
+    private int writeStripes = Runtime.getRuntime().availableProcessors();
+    private boolean sketches;
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    public AttendanceOptions setStorageMode(StorageMode storageMode) {
+        this.storageMode = storageMode;
+        return this;
+    }
+
+    public AttendanceCsvWriter.Durability getDurability() {
+        return durability;
+    }
+
+    public AttendanceOptions setDurability(AttendanceCsvWriter.Durability durability) {
+        this.durability = durability;
+        return this;
+    }
+
+    public int getMaxBatchRows() {
+        return maxBatchRows;
+    }
+
+    public AttendanceOptions setMaxBatchRows(int maxBatchRows) {
+        this.maxBatchRows = maxBatchRows;
+        return this;
+    }
+
+    public long getMaxBatchDelayMillis() {
+        return maxBatchDelayMillis;
+    }
+
+    public AttendanceOptions setMaxBatchDelayMillis(long maxBatchDelayMillis) {
+        this.maxBatchDelayMillis = maxBatchDelayMillis;
+        return this;
+    }
+
+    public PartitionScheme getPartitionScheme() {
+        return partitionScheme;
+    }
+
+    public AttendanceOptions setPartitionScheme(PartitionScheme partitionScheme) {
+        this.partitionScheme = partitionScheme;
+        return this;
+    }
+
+    // Memory budget for partitioned mode: least recently used partitions are evicted
+    // once more than this many rows are resident
+    public long getMaxResidentRows() {
+        return maxResidentRows;
+    }
+
+    public AttendanceOptions setMaxResidentRows(long maxResidentRows) {
+        this.maxResidentRows = maxResidentRows;
+        return this;
+    }
+
+    // Worker threads for per-employee report rows; 1 forces the sequential loop
+    // (output is identical either way, so the two can be compared and timed)
+    public int getReportParallelism() {
+        return reportParallelism;
+    }
+
+    public AttendanceOptions setReportParallelism(int reportParallelism) {
+        this.reportParallelism = Math.max(1, reportParallelism);
+        return this;
+    }
+
+    // Persist scans to a checksummed write-ahead log plus periodic binary snapshots
+    // (restart maps the snapshots and replays only the log tail) instead of the plain CSV
+    public boolean isWriteAheadLog() {
+        return writeAheadLog;
+    }
+
+    public AttendanceOptions setWriteAheadLog(boolean writeAheadLog) {
+        this.writeAheadLog = writeAheadLog;
+        return this;
+    }
+
+    // Log entries per partition after which a new snapshot is written and the log restarted
+    public int getCheckpointRows() {
+        return checkpointRows;
+    }
+
+    public AttendanceOptions setCheckpointRows(int checkpointRows) {
+        this.checkpointRows = Math.max(1, checkpointRows);
+        return this;
+    }
+
+    // Concurrent writers: scans are buffered in this many striped append buffers (picked by
+    // thread) and merged into the index in timestamp order by the next reader or when a
+    // stripe fills up (default: one per processor). 0 = scans go straight into the index
+    // under the manager's write lock.
+    public int getWriteStripes() {
+        return writeStripes;
+    }
+
+    public AttendanceOptions setWriteStripes(int writeStripes) {
+        this.writeStripes = Math.max(0, writeStripes);
+        return this;
+    }
+
+    // Keep per-day HyperLogLog and hours sketches for the estimate* queries of
+    // AttendanceManager (saved to "<csv>.sketch" on close)
+    public boolean isSketches() {
+        return sketches;
+    }
+
+    public AttendanceOptions setSketches(boolean sketches) {
+        this.sketches = sketches;
+        return this;
+    }
+
+    // Fresh store for the configured storage mode
+    public AttendanceStore newStore() {
+        return (storageMode == StorageMode.COLUMNAR) ? new ColumnarAttendanceStore() : new ObjectAttendanceStore();
+    }
+}
@@ -0,0 +1,495 @@
+package smartoffice.v1;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * AttendancePartition: one attendance CSV file covering a fixed day range
+ * (a month, a day, or everything for the legacy single-file layout).
+ *
+ * - rows are loaded lazily into their own AttendanceStore + AttendanceIndex
+ * - evict() drops the in-memory rows; the next query reloads them from the file
+ * - new scans are appended through the partition's own group-commit writer,
+ *   whether or not the rows are currently in memory
+ * - write-ahead log mode (AttendanceOptions.setWriteAheadLog): scans go to "<path>.wal"
+ *   (see AttendanceWal) instead of the CSV; every checkpointRows entries the log tail (only
+ *   the rows held in memory) is written to a new binary snapshot
+ *   "<path>.snap.<first>-<last generation>" (AttendanceSegment format) and the log restarts,
+ *   so a checkpoint costs the tail, not the partition's history. Loading maps the snapshots
+ *   and replays only the log tail into memory. A plain CSV found without a snapshot is
+ *   imported once and then left untouched.
+ * - once there are more than MAX_SNAPSHOTS snapshots, a background thread merges the newest
+ *   ones (and each older one no larger than them together) into one file, keeping the count
+ *   logarithmic in the history; the merged file replaces its inputs on disk and, if they are
+ *   still the ones loaded, in memory. A snapshot whose generations another one covers is
+ *   left over from an interrupted merge and is deleted on load.
+ *
+ * Addresses: time-partitioned storage, lazy loading, eviction, WAL + snapshot recovery
+ */
+public class AttendancePartition {
+    static final int MAX_SNAPSHOTS = 4;
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    private final String path;
+    private final long firstDay; // inclusive epoch days
+    private final long lastDay;
+    private final AttendanceOptions options;
+
+    private AttendanceStore store;
+    private AttendanceIndex index;
+    private AttendanceCsvWriter writer;
+    private long lastUsed; // LRU clock value set by AttendanceManager
+
+    // write-ahead log mode only
+    private volatile AttendanceSegment[] snapshots = new AttendanceSegment[0]; // oldest first, mapped while loaded
+    private int walGeneration;          // generation of the current log (0 = not checked yet)
+    private int walRows;                // entries in the current log
+    private Thread merger;              // background snapshot merge, if running
+
+    public AttendancePartition(String path, long firstDay, long lastDay, AttendanceOptions options) {
+        this.path = path;
+        this.firstDay = firstDay;
+        this.lastDay = lastDay;
+        this.options = options;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getFirstDay() {
+        return firstDay;
+    }
+
+    public long getLastDay() {
+        return lastDay;
+    }
+
+    public boolean covers(long epochDay) {
+        return epochDay >= firstDay && epochDay <= lastDay;
+    }
+
+    public boolean overlaps(long startDay, long endDay) {
+        return startDay <= lastDay && endDay >= firstDay;
+    }
+
+    public boolean isLoaded() {
+        return store != null;
+    }
+
+    public AttendanceStore getStore() {
+        return store;
+    }
+
+    public AttendanceIndex getIndex() {
+        return index;
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    public void setLastUsed(long lastUsed) {
+        this.lastUsed = lastUsed;
+    }
+
+    // Snapshots holding the rows up to the last checkpoint, oldest first (WAL mode, while
+    // loaded); together with the in-memory rows they hold every row exactly once
+    public AttendanceSegment[] getSnapshots() {
+        return snapshots;
+    }
+
+    // Log entries written since the last snapshot
+    public synchronized int getWalRows() {
+        return walRows;
+    }
+
+    // true if this partition has anything on disk yet
+    public boolean existsOnDisk() {
+        if (new File(path).exists()) return true;
+        return options.isWriteAheadLog() && (listSnapshots().length > 0 || new File(walPath()).exists());
+    }
+
+    // Rows held in memory (0 when evicted; snapshot rows stay in the mapped file)
+    public int residentRows() {
+        return (store == null) ? 0 : store.size();
+    }
+
+    // All rows of a loaded partition: each snapshot's rows (time order) followed by the in-memory rows
+    public AttendanceRecord[] getRecords() {
+        AttendanceSegment[] snaps = snapshots;
+        int total = store.size();
+        for (int s = 0; s < snaps.length; s++) total += snaps[s].getRowCount();
+        AttendanceRecord[] out = new AttendanceRecord[total];
+        int c = 0;
+        for (int s = 0; s < snaps.length; s++) {
+            for (int i = 0; i < snaps[s].getRowCount(); i++) out[c++] = snaps[s].getRecord(i);
+        }
+        for (int i = 0; i < store.size(); i++) out[c++] = store.get(i);
+        return out;
+    }
+
+    // Read the partition into memory: the CSV file (chunks parsed in parallel, merged in
+    // file order), or in WAL mode the snapshot mapping plus the replayed log tail
+    public void load() {
+        if (store != null) return;
+        if (writer != null) writer.flush(); // make queued scans visible to the loader
+        store = options.newStore();
+        index = new AttendanceIndex();
+        try {
+            if (options.isWriteAheadLog()) {
+                recover();
+            } else {
+                loadCsv();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load attendance CSV " + path + ": " + e.getMessage());
+        }
+    }
+
+    private void loadCsv() throws IOException {
+        AttendanceRecord[][] chunks = new AttendanceCsvLoader().load(path);
+        for (int c = 0; c < chunks.length; c++) {
+            for (int i = 0; i < chunks[c].length; i++) add(chunks[c][i]);
+        }
+    }
+
+    // snapshots + log tail; a log written before the snapshots' last generation is discarded
+    private void recover() throws IOException {
+        String[] files = listSnapshots();
+        AttendanceSegment[] found = new AttendanceSegment[files.length];
+        for (int i = 0; i < files.length; i++) found[i] = AttendanceSegment.open(files[i]);
+        snapshots = found;
+        int absorbed = (files.length == 0) ? 0 : lastGeneration(files[files.length - 1]);
+        if (files.length == 0) loadCsv(); // first start in WAL mode: import the plain CSV
+
+        AttendanceWal wal = new AttendanceWal(walPath());
+        AttendanceRecord[] tail = wal.recover(absorbed + 1);
+        for (int i = 0; i < tail.length; i++) add(tail[i]);
+        walGeneration = (wal.getGeneration() < 0) ? absorbed + 1 : wal.getGeneration();
+        walRows = tail.length;
+        if (walRows >= options.getCheckpointRows()) checkpoint();
+    }
+
+    // Drop the in-memory rows (the files are untouched)
+    public void evict() {
+        store = null;
+        index = null;
+        snapshots = new AttendanceSegment[0];
+    }
+
+    // Add a record to the in-memory rows (no-op while evicted)
+    public void add(AttendanceRecord rec) {
+        if (store == null) return;
+        int row = store.add(rec);
+        index.add(store, row, rec);
+    }
+
+    // Queue a CSV row (or log entry) on this partition's group-commit writer
+    public void append(AttendanceRecord rec) {
+        append(new AttendanceRecord[] { rec }, 0, 1);
+    }
+
+    // Overloaded: queue recs[from, to) as one batch (a single write on the writer thread)
+    // and wait for it like AttendanceCsvWriter.append
+    public void append(AttendanceRecord[] recs, int from, int to) {
+        enqueue(recs, from, to).await();
+    }
+
+    // Queue recs[from, to) as one batch without waiting for durability. Safe to call from
+    // several threads; the writer itself is shared, so STRICT callers that wait on their
+    // receipts after releasing the manager's lock still join the same group commit.
+    public AttendanceCsvWriter.Receipt enqueue(AttendanceRecord[] recs, int from, int to) {
+        String[] rows = new String[to - from];
+        AttendanceCsvWriter w;
+        if (!options.isWriteAheadLog()) {
+            for (int i = from; i < to; i++) rows[i - from] = recs[i].toCsvRow();
+            w = openWriter(path);
+            return w.enqueue(rows, 0, rows.length);
+        }
+        for (int i = from; i < to; i++) rows[i - from] = AttendanceWal.entryLine(recs[i]);
+        w = openWriter(walPath());
+        AttendanceCsvWriter.Receipt receipt = w.enqueue(rows, 0, rows.length);
+        synchronized (this) {
+            walRows += rows.length;
+        }
+        // with write stripes the manager checkpoints once the buffered rows are merged
+        if (options.getWriteStripes() == 0 && walRows >= options.getCheckpointRows() && store != null) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                System.err.println("Failed to checkpoint attendance partition " + path + ": " + e.getMessage());
+            }
+        }
+        return receipt;
+    }
+
+    // the partition's writer, created on first use
+    private synchronized AttendanceCsvWriter openWriter(String file) {
+        if (writer == null) {
+            if (!options.isWriteAheadLog()) {
+                writer = newWriter(file);
+            } else {
+                if (walGeneration == 0) checkLog();
+                boolean fresh = !new File(file).exists() || new File(file).length() == 0;
+                writer = newWriter(file);
+                if (fresh) writer.enqueue(new String[] { AttendanceWal.headerLine(walGeneration) }, 0, 1);
+            }
+        }
+        return writer;
+    }
+
+    // Before appending to a log that was never loaded: find its generation and cut any
+    // torn tail, so new entries do not land behind a damaged one
+    private void checkLog() {
+        try {
+            String[] files = listSnapshots();
+            int absorbed = (files.length == 0) ? 0 : lastGeneration(files[files.length - 1]);
+            AttendanceWal wal = new AttendanceWal(walPath());
+            wal.recover(absorbed + 1);
+            walGeneration = (wal.getGeneration() < 0) ? absorbed + 1 : wal.getGeneration();
+            walRows = wal.getEntryCount();
+        } catch (IOException e) {
+            System.err.println("Failed to read attendance log " + walPath() + ": " + e.getMessage());
+            walGeneration = 1;
+        }
+    }
+
+    // Fold the current log into a new snapshot of its own and start the next log generation.
+    // Only the in-memory rows (the log tail) are written: to a temporary file, fsync'ed and
+    // renamed into place; only then is the log deleted. A crash in between leaves a log whose
+    // generation a snapshot already carries, and recovery discards it.
+    public synchronized void checkpoint() throws IOException {
+        if (!options.isWriteAheadLog()) return;
+        load();
+        if (store.size() == 0 && walRows == 0 && snapshots.length > 0) return; // nothing new
+        if (writer != null) {
+            writer.close(); // every queued entry is in the log file now
+            writer = null;
+        }
+        AttendanceRecord[] tail = new AttendanceRecord[store.size()];
+        for (int i = 0; i < tail.length; i++) tail[i] = store.get(i);
+        String file = snapshotPath(walGeneration, walGeneration);
+        AttendanceSegment.write(file + ".tmp", tail, walGeneration);
+        force(file + ".tmp");
+        Files.move(Paths.get(file + ".tmp"), Paths.get(file),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(Paths.get(walPath()));
+
+        AttendanceSegment[] grown = new AttendanceSegment[snapshots.length + 1];
+        System.arraycopy(snapshots, 0, grown, 0, snapshots.length);
+        grown[snapshots.length] = AttendanceSegment.open(file);
+        snapshots = grown;
+        store = options.newStore();
+        index = new AttendanceIndex();
+        walGeneration++;
+        walRows = 0;
+        if (snapshots.length > MAX_SNAPSHOTS && merger == null) startMerge();
+    }
+
+    // ---------- snapshot merging ----------
+    // Merge the newest snapshots, plus each older one no larger than them together (caller holds this lock)
+    private void startMerge() {
+        AttendanceSegment[] snaps = snapshots;
+        int from = snaps.length - 2;
+        long rows = (long) snaps[from].getRowCount() + snaps[from + 1].getRowCount();
+        while (from > 0 && snaps[from - 1].getRowCount() <= rows) {
+            from--;
+            rows += snaps[from].getRowCount();
+        }
+        final AttendanceSegment[] inputs = new AttendanceSegment[snaps.length - from];
+        System.arraycopy(snaps, from, inputs, 0, inputs.length);
+        merger = new Thread(new Runnable() {
+            public void run() {
+                mergeSnapshots(inputs);
+            }
+        }, "attendance-snapshot-merge");
+        merger.setDaemon(true);
+        merger.start();
+    }
+
+    private void mergeSnapshots(AttendanceSegment[] inputs) {
+        String file = snapshotPath(firstGeneration(inputs[0].getPath()), inputs[inputs.length - 1].getWalGeneration());
+        try {
+            AttendanceSegment.merge(file + ".tmp", inputs, inputs[inputs.length - 1].getWalGeneration());
+            Files.move(Paths.get(file + ".tmp"), Paths.get(file),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            AttendanceSegment merged = AttendanceSegment.open(file);
+            synchronized (this) {
+                // swap in memory only if the inputs are still loaded (not evicted meanwhile)
+                AttendanceSegment[] snaps = snapshots;
+                int at = indexOf(snaps, inputs[0]);
+                if (at >= 0 && at + inputs.length <= snaps.length && snaps[at + inputs.length - 1] == inputs[inputs.length - 1]) {
+                    AttendanceSegment[] shrunk = new AttendanceSegment[snaps.length - inputs.length + 1];
+                    System.arraycopy(snaps, 0, shrunk, 0, at);
+                    shrunk[at] = merged;
+                    System.arraycopy(snaps, at + inputs.length, shrunk, at + 1, snaps.length - at - inputs.length);
+                    snapshots = shrunk;
+                }
+            }
+            // readers still holding the inputs keep their mappings after the files are gone
+            for (int i = 0; i < inputs.length; i++) {
+                if (!inputs[i].getPath().equals(file)) Files.deleteIfExists(Paths.get(inputs[i].getPath()));
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to merge attendance snapshots of " + path + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(Paths.get(file + ".tmp"));
+            } catch (IOException ex) {
+                // ignore
+            }
+        } finally {
+            synchronized (this) {
+                merger = null;
+                if (snapshots.length > MAX_SNAPSHOTS && store != null) startMerge();
+                notifyAll();
+            }
+        }
+    }
+
+    private static int indexOf(AttendanceSegment[] snaps, AttendanceSegment s) {
+        for (int i = 0; i < snaps.length; i++) {
+            if (snaps[i] == s) return i;
+        }
+        return -1;
+    }
+
+    // Snapshot files of this partition, ordered by generation; files whose generations a
+    // wider one also covers (left over from an interrupted merge) are deleted
+    private String[] listSnapshots() {
+        File base = new File(path).getAbsoluteFile();
+        File dir = base.getParentFile();
+        String[] names = (dir == null) ? null : dir.list();
+        if (names == null) return new String[0];
+        String prefix = base.getName() + SNAPSHOT_SUFFIX;
+        String parent = new File(path).getParent();
+        String[] found = new String[names.length];
+        int n = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (!names[i].startsWith(prefix)) continue;
+            String file = (parent == null) ? names[i] : parent + File.separator + names[i];
+            if (firstGeneration(file) >= 0) found[n++] = file;
+        }
+        // by first generation, the widest first among equals
+        for (int i = 1; i < n; i++) {
+            String f = found[i];
+            int j = i - 1;
+            while (j >= 0 && (firstGeneration(found[j]) > firstGeneration(f)
+                    || (firstGeneration(found[j]) == firstGeneration(f) && lastGeneration(found[j]) < lastGeneration(f)))) {
+                found[j + 1] = found[j];
+                j--;
+            }
+            found[j + 1] = f;
+        }
+        String[] kept = new String[n];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (k > 0 && lastGeneration(found[i]) <= lastGeneration(kept[k - 1])) {
+                try {
+                    Files.deleteIfExists(Paths.get(found[i]));
+                } catch (IOException e) {
+                    System.err.println("Failed to delete merged snapshot " + found[i] + ": " + e.getMessage());
+                }
+                continue;
+            }
+            kept[k++] = found[i];
+        }
+        String[] out = new String[k];
+        System.arraycopy(kept, 0, out, 0, k);
+        return out;
+    }
+
+    // "<path>.snap.<first>-<last>" -> first (the single "<path>.snap" of older versions
+    // covers everything from 0); -1 if not a snapshot name
+    private int firstGeneration(String file) {
+        if (file.equals(snapshotPath())) return 0;
+        String prefix = snapshotPath() + ".";
+        if (!file.startsWith(prefix)) return -1;
+        String range = file.substring(prefix.length());
+        int dash = range.indexOf('-');
+        if (dash <= 0 || !digits(range, 0, dash) || !digits(range, dash + 1, range.length())) return -1;
+        return Integer.parseInt(range.substring(0, dash));
+    }
+
+    private int lastGeneration(String file) {
+        if (file.equals(snapshotPath())) {
+            try {
+                return AttendanceSegment.open(file).getWalGeneration();
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+        return Integer.parseInt(file.substring(file.lastIndexOf('-') + 1));
+    }
+
+    private static boolean digits(String s, int from, int to) {
+        if (to <= from || to - from > 9) return false;
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') return false;
+        }
+        return true;
+    }
+
+    // data file name behind a partition file name ("x.csv.wal", "x.csv.snap.3-7" -> "x.csv")
+    static String dataFileName(String name) {
+        int snap = name.lastIndexOf(SNAPSHOT_SUFFIX);
+        if (snap > 0 && (name.length() == snap + SNAPSHOT_SUFFIX.length() || name.charAt(snap + SNAPSHOT_SUFFIX.length()) == '.')) {
+            return name.substring(0, snap);
+        }
+        return name.endsWith(".wal") ? name.substring(0, name.length() - 4) : name;
+    }
+
+    private static void force(String file) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.WRITE);
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    public void flush() {
+        AttendanceCsvWriter w;
+        synchronized (this) {
+            w = writer;
+        }
+        if (w != null) w.flush();
+    }
+
+    // Close the writer and wait for a running snapshot merge
+    public synchronized void close() {
+        if (writer != null) writer.close();
+        writer = null;
+        while (merger != null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private AttendanceCsvWriter newWriter(String file) {
+        return new AttendanceCsvWriter(file, options.getDurability(),
+                options.getMaxBatchRows(), options.getMaxBatchDelayMillis());
+    }
+
+    // single snapshot file of older versions (read, merged away, never written)
+    private String snapshotPath() {
+        return path + SNAPSHOT_SUFFIX;
+    }
+
+    private String snapshotPath(int firstGeneration, int lastGeneration) {
+        return snapshotPath() + "." + firstGeneration + "-" + lastGeneration;
+    }
+
+    private String walPath() {
+        return path + ".wal";
+    }
+}
@@ -0,0 +1,85 @@
+package smartoffice.v1;
+
+import java.time.LocalDate;
+
+/**
+ * AttendanceQuery: filters for AttendanceManager.query().
+ *
+ * Settings object with chainable setters, e.g.
+ *   new AttendanceQuery(start, end).setEmployees(7, 12).setDirection(AttendanceQuery.Direction.IN)
+ *
+ * - date range (inclusive) is required; employees and direction are optional
+ * - resumeAfter(position) continues a previous cursor from AttendanceCursor.getPosition()
+ *
+ * Addresses: filter pushdown to the index (employee + date buckets) and segments
+ */
+public class AttendanceQuery {
+    // Which scans to return
+    public enum Direction { BOTH, IN, OUT }
+
+    private final long startDay;
+    private final long endDay;
+    private int[] employees; // null = every employee
+    private AttendanceIndex.IntSet employeeSet;
+    private Direction direction = Direction.BOTH;
+    private AttendanceCursor.Position resumeAfter;
+
+    public AttendanceQuery(LocalDate start, LocalDate end) {
+        this.startDay = start.toEpochDay();
+        this.endDay = end.toEpochDay();
+    }
+
+    public long getStartDay() {
+        return startDay;
+    }
+
+    public long getEndDay() {
+        return endDay;
+    }
+
+    // Only these employee ids (no argument = every employee)
+    public AttendanceQuery setEmployees(int... employeeIds) {
+        if (employeeIds == null || employeeIds.length == 0) {
+            employees = null;
+            employeeSet = null;
+            return this;
+        }
+        employeeSet = new AttendanceIndex.IntSet();
+        for (int i = 0; i < employeeIds.length; i++) employeeSet.add(employeeIds[i]);
+        employees = employeeSet.toArray(); // de-duplicated
+        return this;
+    }
+
+    // null if every employee is wanted
+    public int[] getEmployees() {
+        return employees;
+    }
+
+    public boolean wantsEmployee(int employeeId) {
+        return employeeSet == null || employeeSet.contains(employeeId);
+    }
+
+    public AttendanceQuery setDirection(Direction direction) {
+        this.direction = (direction == null) ? Direction.BOTH : direction;
+        return this;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public boolean wantsDirection(boolean isCheckIn) {
+        return direction == Direction.BOTH || (direction == Direction.IN) == isCheckIn;
+    }
+
+    // Start after a position returned by AttendanceCursor.getPosition() (null = from the start).
+    // Throws IllegalArgumentException if the position string is not one of ours.
+    public AttendanceQuery resumeAfter(String position) {
+        this.resumeAfter = (position == null) ? null : AttendanceCursor.Position.parse(position);
+        return this;
+    }
+
+    AttendanceCursor.Position getResumeAfter() {
+        return resumeAfter;
+    }
+}
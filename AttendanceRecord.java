@@ -9,7 +9,9 @@ import java.time.format.DateTimeFormatter;
  * CSV columns used for persistence:
  * employeeId,employeeName,method,isCheckIn,timestampIso
  *
- * - Uses java.time.LocalDateTime for timestamp.
+ * - timestamp kept as epoch second + nano (EpochTime); the LocalDateTime view is built
+ *   on the first getTimestamp() call, so parsing, stores and the CSV writer never need it
+ * - toCsvRow writes the whole row into a per-thread char buffer (one String per row)
  *
  * Addresses: attendance data model, timestamps, CSV persistence
  */
@@ -18,17 +20,48 @@ public class AttendanceRecord {
     private String employeeName;
     private String method;    // "RFID"
     private boolean isCheckIn;
-    private LocalDateTime timestamp;
+    private long epochSecond;
+    private int nano;
+    private LocalDateTime timestamp; // built on demand from epochSecond + nano
 
     // DateTime format for CSV and display
     public static final DateTimeFormatter FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
 
+    // one reusable row parser per thread for fromCsvRow
+    private static final ThreadLocal<AttendanceCsvParser> PARSER = new ThreadLocal<AttendanceCsvParser>() {
+        @Override
+        protected AttendanceCsvParser initialValue() {
+            return new AttendanceCsvParser();
+        }
+    };
+
+    // one reusable row buffer per thread for toCsvRow
+    private static final ThreadLocal<char[]> ROW_BUFFER = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[128];
+        }
+    };
+
     public AttendanceRecord(int employeeId, String employeeName, String method, boolean isCheckIn, LocalDateTime timestamp) {
         this.employeeId = employeeId;
         this.employeeName = employeeName;
         this.method = method;
         this.isCheckIn = isCheckIn;
         this.timestamp = timestamp;
+        this.epochSecond = EpochTime.toEpochSecond(timestamp);
+        this.nano = timestamp.getNano();
+    }
+
+    // Overloaded: timestamp as epoch second + nano (see EpochTime), no LocalDateTime needed
+    public AttendanceRecord(int employeeId, String employeeName, String method, boolean isCheckIn,
+                            long epochSecond, int nano) {
+        this.employeeId = employeeId;
+        this.employeeName = employeeName;
+        this.method = method;
+        this.isCheckIn = isCheckIn;
+        this.epochSecond = epochSecond;
+        this.nano = nano;
     }
 
     // Create record with current time
@@ -53,52 +86,86 @@ public class AttendanceRecord {
     }
 
     public LocalDateTime getTimestamp() {
+        if (timestamp == null) timestamp = EpochTime.toLocalDateTime(epochSecond, nano);
         return timestamp;
     }
 
-    // CSV row string
-    public String toCsvRow() {
-        return employeeId + "," + escapeCsv(employeeName) + "," + method + "," + (isCheckIn ? "1" : "0") + "," + timestamp.format(FORMATTER);
+    // Seconds since 1970-01-01T00:00 (local time, no zone)
+    public long getEpochSecond() {
+        return epochSecond;
     }
 
-    // Parse CSV row into AttendanceRecord. Returns null if parse error.
-    public static AttendanceRecord fromCsvRow(String row) {
-        // Expect 5 columns separated by commas: id,name,method,isCheckIn,timestamp
-        String[] parts = row.split(",", 5);
-        if (parts.length < 5) return null;
-        try {
-            int id = Integer.parseInt(parts[0].trim());
-            String name = unescapeCsv(parts[1].trim());
-            String method = parts[2].trim();
-            boolean isCheckIn = parts[3].trim().equals("1");
-            java.time.LocalDateTime ts = java.time.LocalDateTime.parse(parts[4].trim(), FORMATTER);
-            return new AttendanceRecord(id, name, method, isCheckIn, ts);
-        } catch (Exception e) {
-            throw new ParsingException();
-            return null;
+    public int getNano() {
+        return nano;
+    }
+
+    // Date of the scan as LocalDate.toEpochDay()
+    public long getEpochDay() {
+        return EpochTime.epochDay(epochSecond);
+    }
+
+    // CSV row string: id,name (quoted when needed),method,1|0,ISO timestamp
+    public String toCsvRow() {
+        String m = String.valueOf(method);
+        char[] buf = ROW_BUFFER.get();
+        int need = 12 + employeeName.length() * 2 + 2 + m.length() + 3 + EpochTime.MAX_ISO_LENGTH;
+        if (buf.length < need) {
+            buf = new char[Math.max(need, buf.length * 2)];
+            ROW_BUFFER.set(buf);
         }
+
+        int pos = writeInt(employeeId, buf, 0);
+        buf[pos++] = ',';
+        pos = writeName(employeeName, buf, pos);
+        buf[pos++] = ',';
+        m.getChars(0, m.length(), buf, pos);
+        pos += m.length();
+        buf[pos++] = ',';
+        buf[pos++] = isCheckIn ? '1' : '0';
+        buf[pos++] = ',';
+        int end = EpochTime.writeIso(epochSecond, nano, buf, pos);
+        if (end < 0) return new String(buf, 0, pos) + getTimestamp().format(FORMATTER);
+        return new String(buf, 0, end);
     }
 
-    // Basic escaping for CSV field (escape quotes)
-    private static String escapeCsv(String s) {
-        if (s.contains(",") || s.contains("\"") || s.contains("\n")) {
-            s = s.replace("\"", "\"\"");
-            return "\"" + s + "\"";
+    // decimal digits of an int (Integer.toString) into buf at pos; returns the new position
+    private static int writeInt(int value, char[] buf, int pos) {
+        long v = value;
+        if (v < 0) {
+            buf[pos++] = '-';
+            v = -v;
         }
-        return s;
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) digits++;
+        for (int i = digits - 1; i >= 0; i--) {
+            buf[pos + i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        return pos + digits;
     }
 
-    private static String unescapeCsv(String s) {
-        s = s.trim();
-        if (s.startsWith("\"") && s.endsWith("\"") && s.length() >= 2) {
-            s = s.substring(1, s.length() - 1);
-            s = s.replace("\"\"", "\"");
+    // name as a CSV field: quoted (quotes doubled) if it holds a comma, quote or newline
+    private static int writeName(String s, char[] buf, int pos) {
+        boolean quote = s.indexOf(',') >= 0 || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0;
+        if (quote) buf[pos++] = '"';
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            buf[pos++] = c;
+            if (quote && c == '"') buf[pos++] = '"';
         }
-        return s;
+        if (quote) buf[pos++] = '"';
+        return pos;
+    }
+
+    // Parse CSV row into AttendanceRecord. Returns null if parse error.
+    public static AttendanceRecord fromCsvRow(String row) {
+        // Expect 5 columns separated by commas: id,name,method,isCheckIn,timestamp
+        if (row == null) return null;
+        return PARSER.get().parseRecord(row, 0, row.length());
     }
 
     public String describe() {
         return "AttendanceRecord[empId=" + employeeId + ", name=" + employeeName + ", method=" + method +
-                ", type=" + (isCheckIn ? "IN" : "OUT") + ", time=" + timestamp.format(FORMATTER) + "]";
+                ", type=" + (isCheckIn ? "IN" : "OUT") + ", time=" + EpochTime.formatIso(epochSecond, nano) + "]";
     }
 }
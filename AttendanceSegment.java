@@ -0,0 +1,583 @@
+package smartoffice.v1;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * AttendanceSegment: read-only, memory-mapped binary file holding a closed range
+ * (typically one month) of attendance history.
+ *
+ * File layout (big-endian):
+ * - header (72 bytes): magic, version, min/max epoch second, row/employee/method counts,
+ *   write-ahead log generation (snapshots only, else 0),
+ *   offsets of the employee table, rows, row refs and strings sections
+ * - employee table, sorted by id, 16 bytes each: id, firstRef, refCount, nameOffset
+ * - rows, sorted by timestamp, 20 bytes each: epochSecond, nano, employeeId, flags
+ *   (flags bit 0 = check-in, bits 8.. = method index)
+ * - row refs: row numbers grouped per employee, each group in time order
+ * - strings: methods then names, each as u16 length + UTF-8 bytes
+ *
+ * Reads go straight to the mapped file; only the handful of method strings live on
+ * the heap. Files of any size are mapped in 1 GB windows (each overlapping the next by
+ * 8 bytes, so no single read spans two). Implements SummarySource so reports can be
+ * served from the segment.
+ *
+ * Names are normalized: the file keeps one name per employee (from the employee's earliest
+ * row written to it), and every row read back carries that name.
+ *
+ * merge() combines segments into one without materializing records: rows are k-way merged
+ * from the inputs' mappings straight into a mapped output file.
+ *
+ * Addresses: compact history storage, FileChannel.map
+ */
+public class AttendanceSegment implements SummarySource {
+    private static final int MAGIC = 0x41545347; // "ATSG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 72;
+    private static final int EMPLOYEE_BYTES = 16;
+    private static final int ROW_BYTES = 20;
+    private static final long SECONDS_PER_DAY = 86400;
+    private static final int WINDOW_SHIFT = 30;
+    private static final long WINDOW_BYTES = 1L << WINDOW_SHIFT;
+    private static final int WINDOW_OVERLAP = 8; // longest single read
+
+    private final String path;
+    private final MappedByteBuffer[] windows;
+    private final long minEpochSecond;
+    private final long maxEpochSecond;
+    private final int rowCount;
+    private final int employeeCount;
+    private final long employeeTable;
+    private final long rows;
+    private final long refs;
+    private final long strings;
+    private final String[] methods;
+    private final int walGeneration;
+
+    private AttendanceSegment(String path, MappedByteBuffer[] windows, long size) throws IOException {
+        this.path = path;
+        this.windows = windows;
+        if (size < HEADER_BYTES || getInt(windows, 0) != MAGIC || getInt(windows, 4) != VERSION) {
+            throw new IOException("Not an attendance segment: " + path);
+        }
+        minEpochSecond = getLong(windows, 8);
+        maxEpochSecond = getLong(windows, 16);
+        rowCount = getInt(windows, 24);
+        employeeCount = getInt(windows, 28);
+        int methodCount = getInt(windows, 32);
+        walGeneration = getInt(windows, 36);
+        employeeTable = getLong(windows, 40);
+        rows = getLong(windows, 48);
+        refs = getLong(windows, 56);
+        strings = getLong(windows, 64);
+        methods = new String[methodCount];
+        long off = 0;
+        for (int i = 0; i < methodCount; i++) {
+            methods[i] = readString(off);
+            off += 2 + (getShort(windows, strings + off) & 0xFFFF);
+        }
+    }
+
+    // Map an existing segment file
+    public static AttendanceSegment open(String path) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            return new AttendanceSegment(path, map(channel, FileChannel.MapMode.READ_ONLY, size), size);
+        } finally {
+            channel.close(); // the mapping stays valid after close
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    // Write-ahead log generation already folded into this file (0 if none; see AttendancePartition)
+    public int getWalGeneration() {
+        return walGeneration;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getEmployeeCount() {
+        return employeeCount;
+    }
+
+    public LocalDateTime getMinTimestamp() {
+        return LocalDateTime.ofEpochSecond(minEpochSecond, 0, ZoneOffset.UTC);
+    }
+
+    public LocalDateTime getMaxTimestamp() {
+        return LocalDateTime.ofEpochSecond(maxEpochSecond, 0, ZoneOffset.UTC);
+    }
+
+    // true if any part of the inclusive day range falls inside this segment
+    public boolean overlapsDays(long startDay, long endDay) {
+        return rowCount > 0 && startDay <= Math.floorDiv(maxEpochSecond, SECONDS_PER_DAY)
+                && endDay >= Math.floorDiv(minEpochSecond, SECONDS_PER_DAY);
+    }
+
+    // ---------- row access ----------
+    public long getEpochSecond(int row) {
+        return getLong(windows, rows + (long) row * ROW_BYTES);
+    }
+
+    public int getNano(int row) {
+        return getInt(windows, rows + (long) row * ROW_BYTES + 8);
+    }
+
+    public int getEmployeeId(int row) {
+        return getInt(windows, rows + (long) row * ROW_BYTES + 12);
+    }
+
+    public boolean isCheckIn(int row) {
+        return (getInt(windows, rows + (long) row * ROW_BYTES + 16) & 1) != 0;
+    }
+
+    // Materialize one row (name taken from the employee table)
+    public AttendanceRecord getRecord(int row) {
+        int flags = getInt(windows, rows + (long) row * ROW_BYTES + 16);
+        int emp = findEmployee(getEmployeeId(row));
+        String name = (emp < 0) ? "Emp-" + getEmployeeId(row) : employeeName(emp);
+        return new AttendanceRecord(getEmployeeId(row), name, methods[flags >>> 8], (flags & 1) != 0,
+                getEpochSecond(row), getNano(row));
+    }
+
+    // true if the segment holds this exact scan (same employee, timestamp and direction)
+    public boolean containsEvent(int employeeId, long epochSecond, int nano, boolean isCheckIn) {
+        int e = findEmployee(employeeId);
+        if (e < 0) return false;
+        int end = refEnd(e);
+        for (int ref = firstRefAtOrAfter(e, epochSecond); ref < end; ref++) {
+            int row = refRow(ref);
+            if (getEpochSecond(row) != epochSecond) return false;
+            if (getNano(row) == nano && isCheckIn(row) == isCheckIn) return true;
+        }
+        return false;
+    }
+
+    // First row with timestamp >= epochSecond (rowCount if none)
+    public int firstRowAtOrAfter(long epochSecond) {
+        int lo = 0;
+        int hi = rowCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getEpochSecond(mid) < epochSecond) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Rows of one employee on one day, sorted by timestamp (empty array if none)
+    public int[] rowsForEmployeeDay(int employeeId, long epochDay) {
+        int e = findEmployee(employeeId);
+        if (e < 0) return new int[0];
+        long endSec = (epochDay + 1) * SECONDS_PER_DAY;
+        int from = firstRefAtOrAfter(e, epochDay * SECONDS_PER_DAY);
+        int to = from;
+        while (to < refEnd(e) && getEpochSecond(refRow(to)) < endSec) to++;
+        int[] out = new int[to - from];
+        for (int ref = from; ref < to; ref++) out[ref - from] = refRow(ref);
+        return out;
+    }
+
+    // Records in the inclusive day range, sorted by timestamp
+    public AttendanceRecord[] recordsBetween(long startDay, long endDay) {
+        int from = firstRowAtOrAfter(startDay * SECONDS_PER_DAY);
+        int to = firstRowAtOrAfter((endDay + 1) * SECONDS_PER_DAY);
+        AttendanceRecord[] out = new AttendanceRecord[Math.max(0, to - from)];
+        for (int i = from; i < to; i++) out[i - from] = getRecord(i);
+        return out;
+    }
+
+    // ---------- SummarySource ----------
+    public int[] employeesBetween(long startDay, long endDay) {
+        if (!overlapsDays(startDay, endDay)) return new int[0];
+        long startSec = startDay * SECONDS_PER_DAY;
+        long endSec = (endDay + 1) * SECONDS_PER_DAY;
+        int[] tmp = new int[employeeCount];
+        int c = 0;
+        for (int e = 0; e < employeeCount; e++) {
+            int ref = firstRefAtOrAfter(e, startSec);
+            if (ref < refEnd(e) && getEpochSecond(refRow(ref)) < endSec) tmp[c++] = employeeIdAt(e);
+        }
+        int[] out = new int[c];
+        System.arraycopy(tmp, 0, out, 0, c);
+        return out;
+    }
+
+    public DailySummary summary(int employeeId, long epochDay) {
+        int e = findEmployee(employeeId);
+        if (e < 0) return null;
+        long endSec = (epochDay + 1) * SECONDS_PER_DAY;
+        int ref = firstRefAtOrAfter(e, epochDay * SECONDS_PER_DAY);
+        int end = refEnd(e);
+        if (ref >= end || getEpochSecond(refRow(ref)) >= endSec) return null;
+        DailySummary s = new DailySummary(employeeId, epochDay);
+        String name = employeeName(e);
+        for (; ref < end; ref++) {
+            int row = refRow(ref);
+            long sec = getEpochSecond(row);
+            if (sec >= endSec) break;
+            s.update(name, isCheckIn(row), sec, getNano(row));
+        }
+        return s;
+    }
+
+    // ---------- employee table helpers ----------
+    private int employeeIdAt(int e) {
+        return getInt(windows, employeeTable + (long) e * EMPLOYEE_BYTES);
+    }
+
+    private String employeeName(int e) {
+        return readString(getInt(windows, employeeTable + (long) e * EMPLOYEE_BYTES + 12) & 0xFFFFFFFFL);
+    }
+
+    private int refStart(int e) {
+        return getInt(windows, employeeTable + (long) e * EMPLOYEE_BYTES + 4);
+    }
+
+    private int refCount(int e) {
+        return getInt(windows, employeeTable + (long) e * EMPLOYEE_BYTES + 8);
+    }
+
+    private int refEnd(int e) {
+        return refStart(e) + refCount(e);
+    }
+
+    private int refRow(int ref) {
+        return getInt(windows, refs + (long) ref * 4);
+    }
+
+    // binary search over the sorted employee table
+    private int findEmployee(int employeeId) {
+        int lo = 0;
+        int hi = employeeCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int id = employeeIdAt(mid);
+            if (id < employeeId) lo = mid + 1;
+            else if (id > employeeId) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    // first ref of employee e whose row time >= epochSecond
+    private int firstRefAtOrAfter(int e, long epochSecond) {
+        int lo = refStart(e);
+        int hi = refEnd(e);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getEpochSecond(refRow(mid)) < epochSecond) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private String readString(long offset) {
+        int len = getShort(windows, strings + offset) & 0xFFFF;
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++) bytes[i] = getByte(windows, strings + offset + 2 + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ---------- mapped windows ----------
+    // window w covers [w * WINDOW_BYTES, (w + 1) * WINDOW_BYTES + WINDOW_OVERLAP) of the file
+    private static MappedByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, long size) throws IOException {
+        MappedByteBuffer[] out = new MappedByteBuffer[(int) Math.max(1, (size + WINDOW_BYTES - 1) >>> WINDOW_SHIFT)];
+        for (int w = 0; w < out.length; w++) {
+            long start = (long) w << WINDOW_SHIFT;
+            out[w] = channel.map(mode, start, Math.min(size - start, WINDOW_BYTES + WINDOW_OVERLAP));
+        }
+        return out;
+    }
+
+    private static MappedByteBuffer window(MappedByteBuffer[] windows, long pos) {
+        return windows[(int) (pos >>> WINDOW_SHIFT)];
+    }
+
+    private static int offset(long pos) {
+        return (int) (pos & (WINDOW_BYTES - 1));
+    }
+
+    private static long getLong(MappedByteBuffer[] windows, long pos) {
+        return window(windows, pos).getLong(offset(pos));
+    }
+
+    private static int getInt(MappedByteBuffer[] windows, long pos) {
+        return window(windows, pos).getInt(offset(pos));
+    }
+
+    private static short getShort(MappedByteBuffer[] windows, long pos) {
+        return window(windows, pos).getShort(offset(pos));
+    }
+
+    private static byte getByte(MappedByteBuffer[] windows, long pos) {
+        return window(windows, pos).get(offset(pos));
+    }
+
+    private static void putLong(MappedByteBuffer[] windows, long pos, long v) {
+        window(windows, pos).putLong(offset(pos), v);
+    }
+
+    private static void putInt(MappedByteBuffer[] windows, long pos, int v) {
+        window(windows, pos).putInt(offset(pos), v);
+    }
+
+    private static void putShort(MappedByteBuffer[] windows, long pos, int v) {
+        window(windows, pos).putShort(offset(pos), (short) v);
+    }
+
+    private static void putByte(MappedByteBuffer[] windows, long pos, byte v) {
+        window(windows, pos).put(offset(pos), v);
+    }
+
+    // ========================= WRITER =============================
+    // Write records (any order) as a segment file
+    public static void write(String path, AttendanceRecord[] input) throws IOException {
+        write(path, input, 0);
+    }
+
+    // Overloaded: also record the write-ahead log generation the rows were taken from
+    public static void write(String path, AttendanceRecord[] input, int walGeneration) throws IOException {
+        AttendanceRecord[] recs = input.clone();
+        // stable sort by timestamp
+        Arrays.sort(recs, new Comparator<AttendanceRecord>() {
+            public int compare(AttendanceRecord a, AttendanceRecord b) {
+                return EpochTime.compare(a.getEpochSecond(), a.getNano(), b.getEpochSecond(), b.getNano());
+            }
+        });
+        int n = recs.length;
+
+        // distinct employee ids, sorted
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) ids[i] = recs[i].getEmployeeId();
+        Arrays.sort(ids);
+        int empCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (empCount == 0 || ids[empCount - 1] != ids[i]) ids[empCount++] = ids[i];
+        }
+
+        // group row numbers per employee (counting sort keeps time order)
+        int[] rowEmp = new int[n];
+        int[] firstRef = new int[empCount + 1];
+        for (int i = 0; i < n; i++) {
+            rowEmp[i] = Arrays.binarySearch(ids, 0, empCount, recs[i].getEmployeeId());
+            firstRef[rowEmp[i] + 1]++;
+        }
+        for (int e = 0; e < empCount; e++) firstRef[e + 1] += firstRef[e];
+        int[] fill = new int[empCount];
+        int[] refRows = new int[n];
+        String[] names = new String[empCount];
+        for (int i = 0; i < n; i++) {
+            int e = rowEmp[i];
+            if (names[e] == null) names[e] = recs[i].getEmployeeName();
+            refRows[firstRef[e] + fill[e]++] = i;
+        }
+
+        // strings: methods first, then one name per employee
+        StringDictionary methodDict = new StringDictionary();
+        int[] methodOf = new int[n];
+        for (int i = 0; i < n; i++) methodOf[i] = methodDict.encode(recs[i].getMethod());
+        byte[][] encoded = new byte[methodDict.size() + empCount][];
+        for (int m = 0; m < methodDict.size(); m++) encoded[m] = utf8(methodDict.decode(m));
+        for (int e = 0; e < empCount; e++) encoded[methodDict.size() + e] = utf8(names[e]);
+        int[] nameOffset = new int[empCount];
+        int stringBytes = 0;
+        for (int k = 0; k < encoded.length; k++) {
+            if (k >= methodDict.size()) nameOffset[k - methodDict.size()] = stringBytes;
+            stringBytes += 2 + encoded[k].length;
+        }
+
+        long employeeTableOff = HEADER_BYTES;
+        long rowsOff = employeeTableOff + (long) empCount * EMPLOYEE_BYTES;
+        long refsOff = rowsOff + (long) n * ROW_BYTES;
+        long stringsOff = refsOff + (long) n * 4;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(n == 0 ? 0 : recs[0].getEpochSecond());
+            out.writeLong(n == 0 ? 0 : recs[n - 1].getEpochSecond());
+            out.writeInt(n);
+            out.writeInt(empCount);
+            out.writeInt(methodDict.size());
+            out.writeInt(walGeneration);
+            out.writeLong(employeeTableOff);
+            out.writeLong(rowsOff);
+            out.writeLong(refsOff);
+            out.writeLong(stringsOff);
+
+            for (int e = 0; e < empCount; e++) {
+                out.writeInt(ids[e]);
+                out.writeInt(firstRef[e]);
+                out.writeInt(firstRef[e + 1] - firstRef[e]);
+                out.writeInt(nameOffset[e]);
+            }
+            for (int i = 0; i < n; i++) {
+                out.writeLong(recs[i].getEpochSecond());
+                out.writeInt(recs[i].getNano());
+                out.writeInt(recs[i].getEmployeeId());
+                out.writeInt((methodOf[i] << 8) | (recs[i].isCheckIn() ? 1 : 0));
+            }
+            for (int i = 0; i < n; i++) out.writeInt(refRows[i]);
+            for (int k = 0; k < encoded.length; k++) {
+                out.writeShort(encoded[k].length);
+                out.write(encoded[k]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    // Merge segments (oldest first) into one file; rows with equal timestamps keep the input
+    // order. Memory use is per employee and method, not per row: every row goes from the
+    // inputs' mappings straight into the mapped output.
+    public static void merge(String path, AttendanceSegment[] inputs, int walGeneration) throws IOException {
+        long total = 0;
+        int idSlots = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            total += inputs[i].rowCount;
+            idSlots += inputs[i].employeeCount;
+        }
+        if (total > Integer.MAX_VALUE) throw new IOException("Too many rows for one segment: " + total);
+        int n = (int) total;
+
+        // distinct employee ids, sorted, with their row counts and first name seen
+        int[] ids = new int[idSlots];
+        int c = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            for (int e = 0; e < inputs[i].employeeCount; e++) ids[c++] = inputs[i].employeeIdAt(e);
+        }
+        Arrays.sort(ids);
+        int empCount = 0;
+        for (int i = 0; i < c; i++) {
+            if (empCount == 0 || ids[empCount - 1] != ids[i]) ids[empCount++] = ids[i];
+        }
+        int[] firstRef = new int[empCount + 1];
+        String[] names = new String[empCount];
+        for (int i = 0; i < inputs.length; i++) {
+            for (int e = 0; e < inputs[i].employeeCount; e++) {
+                int k = Arrays.binarySearch(ids, 0, empCount, inputs[i].employeeIdAt(e));
+                firstRef[k + 1] += inputs[i].refCount(e);
+                if (names[k] == null) names[k] = inputs[i].employeeName(e);
+            }
+        }
+        for (int e = 0; e < empCount; e++) firstRef[e + 1] += firstRef[e];
+
+        // methods of every input, renumbered
+        StringDictionary methodDict = new StringDictionary();
+        int[][] methodOf = new int[inputs.length][];
+        for (int i = 0; i < inputs.length; i++) {
+            methodOf[i] = new int[inputs[i].methods.length];
+            for (int m = 0; m < methodOf[i].length; m++) methodOf[i][m] = methodDict.encode(inputs[i].methods[m]);
+        }
+        byte[][] encoded = new byte[methodDict.size() + empCount][];
+        for (int m = 0; m < methodDict.size(); m++) encoded[m] = utf8(methodDict.decode(m));
+        for (int e = 0; e < empCount; e++) encoded[methodDict.size() + e] = utf8(names[e]);
+
+        long employeeTableOff = HEADER_BYTES;
+        long rowsOff = employeeTableOff + (long) empCount * EMPLOYEE_BYTES;
+        long refsOff = rowsOff + (long) n * ROW_BYTES;
+        long stringsOff = refsOff + (long) n * 4;
+        long size = stringsOff;
+        for (int k = 0; k < encoded.length; k++) size += 2 + encoded[k].length;
+
+        long minSecond = Long.MAX_VALUE;
+        long maxSecond = Long.MIN_VALUE;
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputs[i].rowCount == 0) continue;
+            minSecond = Math.min(minSecond, inputs[i].minEpochSecond);
+            maxSecond = Math.max(maxSecond, inputs[i].maxEpochSecond);
+        }
+
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            file.setLength(0);
+            file.setLength(size);
+            MappedByteBuffer[] out = map(file.getChannel(), FileChannel.MapMode.READ_WRITE, size);
+            putInt(out, 0, MAGIC);
+            putInt(out, 4, VERSION);
+            putLong(out, 8, n == 0 ? 0 : minSecond);
+            putLong(out, 16, n == 0 ? 0 : maxSecond);
+            putInt(out, 24, n);
+            putInt(out, 28, empCount);
+            putInt(out, 32, methodDict.size());
+            putInt(out, 36, walGeneration);
+            putLong(out, 40, employeeTableOff);
+            putLong(out, 48, rowsOff);
+            putLong(out, 56, refsOff);
+            putLong(out, 64, stringsOff);
+
+            long stringPos = 0;
+            for (int k = 0; k < encoded.length; k++) {
+                if (k >= methodDict.size()) {
+                    int e = k - methodDict.size();
+                    long entry = employeeTableOff + (long) e * EMPLOYEE_BYTES;
+                    putInt(out, entry, ids[e]);
+                    putInt(out, entry + 4, firstRef[e]);
+                    putInt(out, entry + 8, firstRef[e + 1] - firstRef[e]);
+                    putInt(out, entry + 12, (int) stringPos);
+                }
+                putShort(out, stringsOff + stringPos, encoded[k].length);
+                for (int b = 0; b < encoded[k].length; b++) putByte(out, stringsOff + stringPos + 2 + b, encoded[k][b]);
+                stringPos += 2 + encoded[k].length;
+            }
+
+            // k-way merge by timestamp; refs are filled per employee as its rows come by
+            int[] next = new int[inputs.length];
+            int[] fill = new int[empCount];
+            for (int row = 0; row < n; row++) {
+                int best = -1;
+                for (int i = 0; i < inputs.length; i++) {
+                    if (next[i] == inputs[i].rowCount) continue;
+                    if (best < 0 || EpochTime.compare(inputs[i].getEpochSecond(next[i]), inputs[i].getNano(next[i]),
+                            inputs[best].getEpochSecond(next[best]), inputs[best].getNano(next[best])) < 0) {
+                        best = i;
+                    }
+                }
+                AttendanceSegment in = inputs[best];
+                int r = next[best]++;
+                int flags = getInt(in.windows, in.rows + (long) r * ROW_BYTES + 16);
+                int emp = in.getEmployeeId(r);
+                long pos = rowsOff + (long) row * ROW_BYTES;
+                putLong(out, pos, in.getEpochSecond(r));
+                putInt(out, pos + 8, in.getNano(r));
+                putInt(out, pos + 12, emp);
+                putInt(out, pos + 16, (methodOf[best][flags >>> 8] << 8) | (flags & 1));
+                int e = Arrays.binarySearch(ids, 0, empCount, emp);
+                putInt(out, refsOff + 4L * (firstRef[e] + fill[e]++), row);
+            }
+            for (int w = 0; w < out.length; w++) out[w].force();
+        } finally {
+            file.close();
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (b.length > 0xFFFF) {
+            byte[] cut = new byte[0xFFFF];
+            System.arraycopy(b, 0, cut, 0, cut.length);
+            return cut;
+        }
+        return b;
+    }
+}
@@ -0,0 +1,66 @@
+package smartoffice.v1;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.YearMonth;
+
+/**
+ * AttendanceSegmentTool: converts one closed month of attendance.csv into a binary segment.
+ *
+ * Usage (run while the CLI is stopped):
+ *   java smartoffice.v1.AttendanceSegmentTool attendance.csv 2024-03 attendance-2024-03.seg [--prune]
+ *
+ * --prune rewrites the CSV without the converted month, so the live file only keeps
+ * recent scans. Attach the segment with AttendanceManager.attachSegment(path).
+ */
+public class AttendanceSegmentTool {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: AttendanceSegmentTool <attendance.csv> <yyyy-MM> <segment-file> [--prune]");
+            return;
+        }
+        String csvPath = args[0];
+        YearMonth month = YearMonth.parse(args[1]);
+        String segmentPath = args[2];
+        boolean prune = args.length > 3 && args[3].equals("--prune");
+
+        AttendanceRecord[][] chunks = new AttendanceCsvLoader().load(csvPath);
+        int total = 0;
+        for (int c = 0; c < chunks.length; c++) total += chunks[c].length;
+
+        AttendanceRecord[] inMonth = new AttendanceRecord[total];
+        AttendanceRecord[] rest = new AttendanceRecord[total];
+        int inCount = 0;
+        int restCount = 0;
+        for (int c = 0; c < chunks.length; c++) {
+            for (int i = 0; i < chunks[c].length; i++) {
+                AttendanceRecord r = chunks[c][i];
+                if (YearMonth.from(r.getTimestamp()).equals(month)) inMonth[inCount++] = r;
+                else rest[restCount++] = r;
+            }
+        }
+        AttendanceRecord[] segmentRows = new AttendanceRecord[inCount];
+        System.arraycopy(inMonth, 0, segmentRows, 0, inCount);
+        AttendanceSegment.write(segmentPath, segmentRows);
+        System.out.println("Wrote " + inCount + " rows for " + month + " to " + segmentPath);
+
+        if (prune) {
+            String tmp = csvPath + ".tmp";
+            BufferedWriter writer = new BufferedWriter(new FileWriter(tmp));
+            try {
+                for (int i = 0; i < restCount; i++) {
+                    writer.write(rest[i].toCsvRow());
+                    writer.newLine();
+                }
+            } finally {
+                writer.close();
+            }
+            Files.move(Paths.get(tmp), Paths.get(csvPath), StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Kept " + restCount + " rows in " + csvPath);
+        }
+    }
+}
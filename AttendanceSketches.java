@@ -0,0 +1,358 @@
+package smartoffice.v1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * AttendanceSketches: per-day approximate aggregates kept next to an AttendanceManager
+ * (AttendanceOptions.setSketches(true)).
+ *
+ * For every day:
+ * - HyperLogLog of the employees seen, overall and per department
+ * - HoursSketch of the hours worked per employee (days with a missing check-in or
+ *   check-out count as 0 hours in reports and are left out of the sketch)
+ *
+ * A day's sketches are computed once from the day's rollups (one pass over the employees
+ * of that day) and reused until a new scan for that day arrives (markDirty), so a range
+ * query merges stored sketches and only recomputes days that changed. Days with no scans
+ * are remembered as empty. The sketches are saved to "<csv>.sketch" on close and read back
+ * on start-up; the file is removed while the manager runs, so after a crash every day is
+ * recomputed on first use instead of trusting stale sketches.
+ *
+ * Error bounds: distinct counts 1.6% standard error (HyperLogLog, near exact for small
+ * counts); hours quantiles within 2.5 minutes of the exact nearest-rank quantile. Run main()
+ * to check both against the exact reports, with writers and estimates running side by side.
+ *
+ * Addresses: approximate analytics over long ranges, mergeable sketches
+ */
+public class AttendanceSketches {
+    private static final int MAGIC = 0x41534b31; // "ASK1"
+    private static final DaySketch EMPTY = new DaySketch();
+
+    // Computes one day's sketches (null if the day has no scans)
+    interface DayBuilder {
+        DaySketch build(long epochDay);
+    }
+
+    // sketches of one day
+    static class DaySketch {
+        final HyperLogLog employees = new HyperLogLog();
+        final HoursSketch hours = new HoursSketch();
+        String[] departments = new String[0];
+        HyperLogLog[] departmentEmployees = new HyperLogLog[0];
+
+        void add(int employeeId, String department, DailySummary summary) {
+            employees.add(employeeId);
+            department(department, true).add(employeeId);
+            if (summary != null && !summary.isAnomaly()) hours.add(summary.getHours());
+        }
+
+        // department sketch (created when 'create' is set, else null if absent)
+        HyperLogLog department(String name, boolean create) {
+            for (int i = 0; i < departments.length; i++) {
+                if (departments[i].equals(name)) return departmentEmployees[i];
+            }
+            if (!create) return null;
+            String[] names = new String[departments.length + 1];
+            HyperLogLog[] sketches = new HyperLogLog[departments.length + 1];
+            System.arraycopy(departments, 0, names, 0, departments.length);
+            System.arraycopy(departmentEmployees, 0, sketches, 0, departments.length);
+            names[departments.length] = name;
+            sketches[departments.length] = new HyperLogLog();
+            departments = names;
+            departmentEmployees = sketches;
+            return sketches[sketches.length - 1];
+        }
+    }
+
+    // days sorted ascending, with their sketch (null = not computed yet)
+    private long[] days = new long[64];
+    private DaySketch[] sketches = new DaySketch[64];
+    private boolean[] dirty = new boolean[64];
+    private int[] versions = new int[64]; // bumped by every markDirty
+    private int count;
+
+    // A scan for this day was recorded; its sketches are recomputed on next use
+    public synchronized void markDirty(long epochDay) {
+        int i = findOrInsert(epochDay);
+        dirty[i] = true;
+        versions[i]++;
+    }
+
+    // Overloaded: every day of [startDay, endDay] (e.g. a newly attached segment)
+    public synchronized void markDirty(long startDay, long endDay) {
+        for (long day = startDay; day <= endDay; day++) markDirty(day);
+    }
+
+    // Compute the missing or changed days of the range (builder runs outside this lock)
+    void refresh(long startDay, long endDay, DayBuilder builder) {
+        for (long day = startDay; day <= endDay; day++) {
+            int version;
+            synchronized (this) {
+                int i = find(day);
+                if (i >= 0 && sketches[i] != null && !dirty[i]) continue;
+                version = (i >= 0) ? versions[i] : 0;
+            }
+            DaySketch s = builder.build(day);
+            synchronized (this) {
+                int i = findOrInsert(day);
+                sketches[i] = (s == null) ? EMPTY : s;
+                // a scan that arrived meanwhile keeps the day dirty
+                if (versions[i] == version) dirty[i] = false;
+            }
+        }
+    }
+
+    // Estimated distinct employees over the range (department null = everyone)
+    public synchronized long distinctEmployees(long startDay, long endDay, String department) {
+        return employees(startDay, endDay, department).estimate();
+    }
+
+    // Merged employee sketch of the range (department null = everyone)
+    public synchronized HyperLogLog employees(long startDay, long endDay, String department) {
+        HyperLogLog union = new HyperLogLog();
+        for (int i = lowerBound(startDay); i < count && days[i] <= endDay; i++) {
+            if (sketches[i] == null) continue;
+            HyperLogLog h = (department == null) ? sketches[i].employees : sketches[i].department(department, false);
+            if (h != null) union.merge(h);
+        }
+        return union;
+    }
+
+    // Merged hours sketch of the range
+    public synchronized HoursSketch hours(long startDay, long endDay) {
+        HoursSketch merged = new HoursSketch();
+        for (int i = lowerBound(startDay); i < count && days[i] <= endDay; i++) {
+            if (sketches[i] != null) merged.merge(sketches[i].hours);
+        }
+        return merged;
+    }
+
+    // ---------- day table ----------
+    private int find(long day) {
+        int i = lowerBound(day);
+        return (i < count && days[i] == day) ? i : -1;
+    }
+
+    private int lowerBound(long day) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (days[mid] < day) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int findOrInsert(long day) {
+        int i = lowerBound(day);
+        if (i < count && days[i] == day) return i;
+        if (count == days.length) {
+            int n = days.length * 2;
+            long[] d = new long[n];
+            DaySketch[] s = new DaySketch[n];
+            boolean[] f = new boolean[n];
+            int[] v = new int[n];
+            System.arraycopy(days, 0, d, 0, count);
+            System.arraycopy(sketches, 0, s, 0, count);
+            System.arraycopy(dirty, 0, f, 0, count);
+            System.arraycopy(versions, 0, v, 0, count);
+            days = d;
+            sketches = s;
+            dirty = f;
+            versions = v;
+        }
+        System.arraycopy(days, i, days, i + 1, count - i);
+        System.arraycopy(sketches, i, sketches, i + 1, count - i);
+        System.arraycopy(dirty, i, dirty, i + 1, count - i);
+        System.arraycopy(versions, i, versions, i + 1, count - i);
+        days[i] = day;
+        sketches[i] = null;
+        dirty[i] = false;
+        versions[i] = 0;
+        count++;
+        return i;
+    }
+
+    // ---------- persistence ----------
+    // Write the computed, unchanged days (dirty ones are recomputed after a restart anyway)
+    public synchronized void save(String path) throws IOException {
+        int clean = 0;
+        for (int i = 0; i < count; i++) {
+            if (sketches[i] != null && !dirty[i]) clean++;
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(clean);
+            for (int i = 0; i < count; i++) {
+                if (sketches[i] == null || dirty[i]) continue;
+                DaySketch s = sketches[i];
+                out.writeLong(days[i]);
+                out.writeBoolean(s == EMPTY);
+                if (s == EMPTY) continue;
+                s.employees.write(out);
+                s.hours.write(out);
+                out.writeShort(s.departments.length);
+                for (int k = 0; k < s.departments.length; k++) {
+                    out.writeUTF(s.departments[k]);
+                    s.departmentEmployees[k].write(out);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    // Sketches saved by save(), or an empty set if the file is missing or unreadable
+    public static AttendanceSketches load(String path) {
+        AttendanceSketches out = new AttendanceSketches();
+        if (!new File(path).exists()) return out;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+            try {
+                if (in.readInt() != MAGIC) throw new IOException("not a sketch file");
+                int n = in.readInt();
+                for (int c = 0; c < n; c++) {
+                    long day = in.readLong();
+                    DaySketch s = EMPTY;
+                    if (!in.readBoolean()) {
+                        s = new DaySketch();
+                        s.employees.merge(HyperLogLog.read(in));
+                        s.hours.merge(HoursSketch.read(in));
+                        int depts = in.readUnsignedShort();
+                        for (int k = 0; k < depts; k++) {
+                            String name = in.readUTF();
+                            s.department(name, true).merge(HyperLogLog.read(in));
+                        }
+                    }
+                    int i = out.findOrInsert(day);
+                    out.sketches[i] = s;
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Ignoring attendance sketch file " + path + ": " + e.getMessage());
+            return new AttendanceSketches();
+        }
+        return out;
+    }
+
+    // ---------- accuracy check ----------
+    // java smartoffice.v1.AttendanceSketches [csv] [employees] [writers]
+    // Writer threads record a month of scans while another thread keeps asking for estimates
+    // (so day sketches are built while scans arrive); then the distinct counts and hours
+    // quantiles must be within their error bounds of the exact generateReport* output.
+    // Exits with 1 otherwise.
+    public static void main(String[] args) throws Exception {
+        String csv = (args.length > 0) ? args[0] : "sketch-check.csv";
+        final int employees = (args.length > 1) ? Integer.parseInt(args[1]) : 3000;
+        int writerCount = (args.length > 2) ? Integer.parseInt(args[2]) : 4;
+        new File(csv).delete();
+        new File(csv + ".sketch").delete();
+        final AttendanceManager manager = new AttendanceManager(csv, new AttendanceOptions().setSketches(true)
+                .setDurability(AttendanceCsvWriter.Durability.RELAXED));
+        final LocalDate first = LocalDate.of(2025, 3, 1);
+        final LocalDate last = LocalDate.of(2025, 3, 31);
+
+        final boolean[] stop = new boolean[1];
+        Thread reader = new Thread() {
+            public void run() {
+                while (!stopped(stop)) {
+                    manager.estimateDistinctEmployees(first, last);
+                    manager.estimateHoursQuantile(first, last, 0.5);
+                }
+            }
+        };
+        reader.start();
+        Thread[] writers = new Thread[writerCount];
+        for (int w = 0; w < writerCount; w++) {
+            final int writer = w;
+            final int writersTotal = writerCount;
+            writers[w] = new Thread() {
+                public void run() {
+                    Random random = new Random(31 + writer);
+                    for (int e = 1 + writer; e <= employees; e += writersTotal) {
+                        for (int day = 0; day < 31; day++) {
+                            if (random.nextInt(3) == 0) continue;
+                            LocalDateTime in = first.plusDays(day).atTime(7 + random.nextInt(3), random.nextInt(60));
+                            manager.recordAttendance(new AttendanceRecord(e, "E" + e, "RFID", true, in));
+                            // some days without a check-out (anomalies, left out of the hours)
+                            if (random.nextInt(10) == 0) continue;
+                            LocalDateTime out = in.plusMinutes(240 + random.nextInt(360));
+                            manager.recordAttendance(new AttendanceRecord(e, "E" + e, "RFID", false, out));
+                        }
+                    }
+                }
+            };
+            writers[w].start();
+        }
+        for (int w = 0; w < writerCount; w++) writers[w].join();
+        synchronized (stop) {
+            stop[0] = true;
+        }
+        reader.join();
+
+        boolean ok = true;
+        CollectingReportSink monthly = new CollectingReportSink();
+        manager.generateReportMonthly(2025, 3, monthly);
+        long exactDistinct = monthly.getRows().length;
+        long estimate = manager.estimateDistinctEmployees(first, last);
+        double error = Math.abs(estimate - exactDistinct) / (double) Math.max(1, exactDistinct);
+        System.out.println("distinct employees: exact " + exactDistinct + ", estimate " + estimate);
+        if (error > 0.05) ok = fail("distinct estimate off by " + String.format("%.1f", error * 100) + "%");
+
+        double[] hours = new double[0];
+        int n = 0;
+        for (LocalDate d = first; !d.isAfter(last); d = d.plusDays(1)) {
+            CollectingReportSink daily = new CollectingReportSink();
+            manager.generateReportDaily(d, daily);
+            ReportRow[] rows = daily.getRows();
+            for (int i = 0; i < rows.length; i++) {
+                if (!rows[i].getNotes().isEmpty()) continue;
+                if (n == hours.length) {
+                    double[] bigger = new double[Math.max(64, n * 2)];
+                    System.arraycopy(hours, 0, bigger, 0, n);
+                    hours = bigger;
+                }
+                hours[n++] = rows[i].getHours();
+            }
+        }
+        Arrays.sort(hours, 0, n);
+        double[] qs = { 0.1, 0.5, 0.9, 0.99 };
+        for (int i = 0; i < qs.length; i++) {
+            double exact = hours[(int) Math.max(1, Math.ceil(qs[i] * n)) - 1];
+            double approx = manager.estimateHoursQuantile(first, last, qs[i]);
+            System.out.println("hours q" + qs[i] + ": exact " + String.format("%.3f", exact)
+                    + ", estimate " + String.format("%.3f", approx));
+            // 2.5 minutes, plus rounding of the report's hours to whole minutes
+            if (Math.abs(approx - exact) > 2.5 / 60 + 1e-6) ok = fail("hours quantile " + qs[i] + " out of bounds");
+        }
+        manager.close();
+        if (!ok) System.exit(1);
+        System.out.println("OK");
+    }
+
+    private static boolean stopped(boolean[] stop) {
+        synchronized (stop) {
+            return stop[0];
+        }
+    }
+
+    private static boolean fail(String message) {
+        System.err.println("FAILED: " + message);
+        return false;
+    }
+}
@@ -0,0 +1,33 @@
+package smartoffice.v1;
+
+/**
+ * Storage backend for attendance rows held by AttendanceManager.
+ *
+ * Rows are append-only and addressed by position (0 .. size()-1), which is what
+ * AttendanceIndex stores. Primitive accessors let the index and reports work
+ * without materializing AttendanceRecord objects.
+ *
+ * Addresses: interface, pluggable in-memory layouts
+ */
+public interface AttendanceStore {
+    // Append a record; returns its row position
+    int add(AttendanceRecord rec);
+
+    // Number of rows stored
+    int size();
+
+    // Record at a row (a fresh view for columnar storage)
+    AttendanceRecord get(int row);
+
+    int getEmployeeId(int row);
+
+    boolean isCheckIn(int row);
+
+    // Timestamp as seconds since 1970-01-01T00:00 (local time, no zone) plus nanos
+    long getEpochSecond(int row);
+
+    int getNano(int row);
+
+    // Rough heap footprint of the stored rows in bytes
+    long estimateBytes();
+}
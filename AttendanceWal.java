@@ -0,0 +1,170 @@
+package smartoffice.v1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * AttendanceWal: write-ahead log of new scans for one attendance partition.
+ *
+ * File layout (text, one entry per line, appended through AttendanceCsvWriter):
+ * - first line "#wal <generation>"; a snapshot records the last generation it absorbed,
+ *   so a log left behind by an interrupted checkpoint is recognised as stale
+ * - each entry is "<crc32 as 8 hex digits>;<CSV row>", the CRC taken over the row's UTF-8 bytes
+ *
+ * recover() replays the entries in order and cuts the file at the first entry that is
+ * incomplete (torn final write), fails its checksum, or does not parse.
+ *
+ * Addresses: crash recovery, fast restart (only the log tail is replayed)
+ */
+public class AttendanceWal {
+    private static final String HEADER_PREFIX = "#wal ";
+
+    private final String path;
+
+    // results of the last recover() call
+    private int generation = -1;
+    private int entryCount;
+    private long truncatedBytes;
+
+    public AttendanceWal(String path) {
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    // Generation found in the file header (-1 if there was no usable log)
+    public int getGeneration() {
+        return generation;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    // Bytes cut off the end of the file by the last recover()
+    public long getTruncatedBytes() {
+        return truncatedBytes;
+    }
+
+    // First line of a new log
+    public static String headerLine(int generation) {
+        return HEADER_PREFIX + generation;
+    }
+
+    // One log entry for a record
+    public static String entryLine(AttendanceRecord rec) {
+        String row = rec.toCsvRow();
+        String hex = Long.toHexString(crc(row.getBytes(StandardCharsets.UTF_8), 0, -1));
+        while (hex.length() < 8) hex = "0" + hex;
+        return hex + ";" + row;
+    }
+
+    // Read the log and return its records in log order. A log older than minGeneration
+    // (already inside the snapshot) is deleted; a damaged tail is truncated.
+    public AttendanceRecord[] recover(int minGeneration) throws IOException {
+        generation = -1;
+        entryCount = 0;
+        truncatedBytes = 0;
+        byte[] data;
+        try {
+            data = Files.readAllBytes(Paths.get(path));
+        } catch (NoSuchFileException e) {
+            return new AttendanceRecord[0];
+        }
+
+        // header line
+        int eol = indexOf(data, (byte) '\n', 0);
+        String header = (eol < 0) ? null : decode(data, 0, eol);
+        if (header == null || !header.startsWith(HEADER_PREFIX)) {
+            truncate(data.length, 0);
+            return new AttendanceRecord[0];
+        }
+        int gen;
+        try {
+            gen = Integer.parseInt(header.substring(HEADER_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            truncate(data.length, 0);
+            return new AttendanceRecord[0];
+        }
+        if (gen < minGeneration) {
+            Files.deleteIfExists(Paths.get(path));
+            return new AttendanceRecord[0];
+        }
+        generation = gen;
+
+        AttendanceRecord[] out = new AttendanceRecord[Math.max(16, data.length / 64)];
+        int pos = eol + 1;
+        while (pos < data.length) {
+            int end = indexOf(data, (byte) '\n', pos);
+            if (end < 0) break; // torn final write
+            AttendanceRecord rec = parseEntry(data, pos, end);
+            if (rec == null) break;
+            if (entryCount == out.length) {
+                AttendanceRecord[] bigger = new AttendanceRecord[out.length * 2];
+                System.arraycopy(out, 0, bigger, 0, entryCount);
+                out = bigger;
+            }
+            out[entryCount++] = rec;
+            pos = end + 1;
+        }
+        if (pos < data.length) truncate(data.length, pos);
+
+        AttendanceRecord[] exact = new AttendanceRecord[entryCount];
+        System.arraycopy(out, 0, exact, 0, entryCount);
+        return exact;
+    }
+
+    // "<crc>;<row>" between from and the '\n' at end (a trailing '\r' is ignored); null if damaged
+    private static AttendanceRecord parseEntry(byte[] data, int from, int end) {
+        if (end > from && data[end - 1] == '\r') end--;
+        if (end - from < 10 || data[from + 8] != ';') return null;
+        long expected = 0;
+        for (int i = from; i < from + 8; i++) {
+            int d = Character.digit((char) data[i], 16);
+            if (d < 0) return null;
+            expected = (expected << 4) | d;
+        }
+        if (crc(data, from + 9, end) != expected) return null;
+        return AttendanceRecord.fromCsvRow(decode(data, from + 9, end));
+    }
+
+    private void truncate(long size, long keep) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.WRITE);
+        try {
+            channel.truncate(keep);
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+        truncatedBytes = size - keep;
+        System.err.println("Truncated " + truncatedBytes + " damaged bytes at the end of attendance log " + path);
+    }
+
+    // CRC32 of data[from, end); end -1 means the whole array
+    private static long crc(byte[] data, int from, int end) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.wrap(data, from, ((end < 0) ? data.length : end) - from));
+        return crc.getValue();
+    }
+
+    private static int indexOf(byte[] data, byte b, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private static String decode(byte[] data, int from, int end) {
+        if (end > from && data[end - 1] == '\r') end--;
+        return new String(data, from, end - from, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,579 @@
+package smartoffice.v1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.zip.CRC32;
+
+/**
+ * BookingJournal: append-only, crash-safe log of room bookings with periodic snapshots.
+ *
+ * Files (path = e.g. "bookings.journal"):
+ * - "<path>.<generation>": log entries, one per line, "<crc32 as 8 hex digits>;<entry>" with
+ *   entry "<seq>,B|C|S,<roomId>,<epochDay>,<startMinute>,<endMinute>,<bookedBy>" (B = booked,
+ *   C = cancelled, S = occurrence of a recurring booking skipped) or
+ *   "<seq>,R|Q,<roomId>,<firstDay>,<startMinute>,<endMinute>,<rule>" (recurring booking added
+ *   or removed, see RecurringBooking.toSpec); each append is written and fsync'ed before the
+ *   room changes
+ * - "<path>.snap": binary snapshot of every room's bookings and recurring rules, the
+ *   generation of the first log it does not contain, and per room the sequence number of
+ *   the last entry it absorbed
+ *
+ * - sequence numbers are taken under the room's lock, so a room's entries are in order and
+ *   replay skips exactly the entries its snapshot already holds
+ * - checkpoint(): starts the next log generation, writes the snapshot (temp file, fsync,
+ *   rename), then deletes the older logs; cancelled bookings, bookings and rules that ended
+ *   more than retainDays before today and old skipped dates are left out, so replay time
+ *   and file sizes stay bounded
+ * - recover(): loads the snapshot and replays the newer logs into the registered rooms; a
+ *   torn or damaged tail of the newest log is cut off (like AttendanceWal), damage in an
+ *   older log is corruption and fails recover(). Every file is read and checked before the
+ *   first room changes, so an unreadable snapshot or log fails recover() with the rooms
+ *   still empty; without a successful recover() nothing is journaled, so callers must not
+ *   take bookings (OfficeSystem refuses to start)
+ *
+ * Addresses: durable bookings, fast restart (snapshot + log tail), compaction
+ */
+public class BookingJournal {
+    private static final int SNAPSHOT_MAGIC_V1 = 0x424b5331; // "BKS1": single bookings only
+    private static final int SNAPSHOT_MAGIC = 0x424b5332;    // "BKS2": plus recurring bookings
+    public static final int DEFAULT_CHECKPOINT_ENTRIES = 10_000;
+
+    private final String path;
+    private final int checkpointEntries;
+    private final int retainDays;
+
+    // registered rooms (journaling starts for all of them once recover() has run)
+    private Room[] rooms = new Room[8];
+    private int roomCount;
+    private boolean recovered;
+
+    // current log (guarded by this)
+    private int generation;
+    private FileChannel log;
+    private long nextSeq = 1;
+    private int entriesSinceCheckpoint;
+
+    // serializes checkpoints (never held while a room calls in)
+    private final Object checkpointLock = new Object();
+
+    // results of recover()
+    private int replayedEntries;
+    private int snapshotBookings;
+
+    public BookingJournal(String path) {
+        this(path, DEFAULT_CHECKPOINT_ENTRIES, 0);
+    }
+
+    // Overloaded constructor: log entries between snapshots, and how many days of past
+    // bookings a snapshot keeps (0 = only today and later)
+    public BookingJournal(String path, int checkpointEntries, int retainDays) {
+        this.path = path;
+        this.checkpointEntries = Math.max(1, checkpointEntries);
+        this.retainDays = Math.max(0, retainDays);
+    }
+
+    // Register a room; its bookings are journaled from recover() on
+    public synchronized void addRoom(Room room) {
+        if (roomCount == rooms.length) {
+            Room[] bigger = new Room[rooms.length * 2];
+            System.arraycopy(rooms, 0, bigger, 0, roomCount);
+            rooms = bigger;
+        }
+        rooms[roomCount++] = room;
+        if (recovered) room.attachJournal(this);
+    }
+
+    public int getReplayedEntries() {
+        return replayedEntries;
+    }
+
+    public int getSnapshotBookings() {
+        return snapshotBookings;
+    }
+
+    // ---------- recovery ----------
+    // Rebuild the registered rooms' bookings from the snapshot and the logs after it, then
+    // start journaling (call once, after the rooms are registered)
+    public void recover() throws IOException {
+        Room[] registered;
+        synchronized (this) {
+            if (recovered) throw new IllegalStateException("Booking journal already recovered");
+            registered = new Room[roomCount];
+            System.arraycopy(rooms, 0, registered, 0, roomCount);
+        }
+        // every file is read and checked before the first room changes; once replay starts
+        // only the torn-tail truncation can still fail
+        long[] absorbed = new long[registered.length];
+        int[] generations = logGenerations();
+        byte[][] logs = new byte[generations.length][];
+        for (int g = 0; g < generations.length; g++) logs[g] = Files.readAllBytes(Paths.get(logPath(generations[g])));
+        Snapshot snapshot = readSnapshot();
+        // only the newest log can end in a torn write: an older one was complete before the
+        // next generation started, so damage there is corruption, not a tail to cut off
+        int[] intact = new int[generations.length];
+        for (int g = 0; g < generations.length; g++) {
+            if (generations[g] < snapshot.firstGeneration) continue;
+            intact[g] = intactLength(logs[g]);
+            if (intact[g] < logs[g].length && g < generations.length - 1) {
+                throw new IOException("Damaged booking journal " + logPath(generations[g]) + " at byte " + intact[g]
+                        + " (newer logs follow it)");
+            }
+        }
+        applySnapshot(snapshot, registered, absorbed);
+        int lastGeneration = snapshot.firstGeneration;
+        long maxSeq = nextSeq - 1;
+        for (int g = 0; g < generations.length; g++) {
+            if (generations[g] < snapshot.firstGeneration) {
+                Files.deleteIfExists(Paths.get(logPath(generations[g]))); // already in the snapshot
+                continue;
+            }
+            maxSeq = Math.max(maxSeq, replay(logPath(generations[g]), logs[g], intact[g], registered, absorbed));
+            logs[g] = null;
+            lastGeneration = Math.max(lastGeneration, generations[g]);
+        }
+        synchronized (this) {
+            nextSeq = maxSeq + 1;
+            generation = lastGeneration;
+            log = openLog(generation);
+            recovered = true;
+            for (int i = 0; i < roomCount; i++) rooms[i].attachJournal(this);
+        }
+    }
+
+    // the whole snapshot file, read without touching any room (an empty one if there is none)
+    private Snapshot readSnapshot() throws IOException {
+        Snapshot snapshot = new Snapshot();
+        if (!new File(snapshotPath()).exists()) return snapshot;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotPath())));
+        try {
+            int magic = in.readInt();
+            if (magic != SNAPSHOT_MAGIC && magic != SNAPSHOT_MAGIC_V1) {
+                throw new IOException("Not a booking snapshot: " + snapshotPath());
+            }
+            snapshot.firstGeneration = in.readInt();
+            snapshot.nextSeq = in.readLong();
+            snapshot.rooms = new SnapshotRoom[in.readInt()];
+            for (int r = 0; r < snapshot.rooms.length; r++) snapshot.rooms[r] = SnapshotRoom.read(in, magic == SNAPSHOT_MAGIC);
+        } finally {
+            in.close();
+        }
+        return snapshot;
+    }
+
+    // snapshot bookings into the rooms
+    private void applySnapshot(Snapshot snapshot, Room[] registered, long[] absorbed) {
+        nextSeq = snapshot.nextSeq;
+        for (int r = 0; r < snapshot.rooms.length; r++) {
+            SnapshotRoom sr = snapshot.rooms[r];
+            int k = findRoom(registered, sr.roomId);
+            if (k < 0) {
+                if (sr.days.length > 0) {
+                    System.err.println("Booking snapshot: dropping " + sr.days.length + " bookings of unknown room " + sr.roomId);
+                }
+                continue;
+            }
+            absorbed[k] = sr.seq;
+            for (int i = 0; i < sr.days.length; i++) {
+                try {
+                    registered[k].createBooking(sr.bookedBy[i], LocalDate.ofEpochDay(sr.days[i]), sr.starts[i], sr.ends[i]);
+                    snapshotBookings++;
+                } catch (BookingException e) {
+                    System.err.println("Booking snapshot: " + e.getMessage());
+                }
+            }
+            for (int i = 0; i < sr.ruleSpecs.length; i++) {
+                try {
+                    registered[k].addRecurringBooking(RecurringBooking.fromSpec(sr.ruleFirstDays[i], sr.ruleStarts[i],
+                            sr.ruleEnds[i], sr.ruleSpecs[i]));
+                } catch (BookingException e) {
+                    System.err.println("Booking snapshot: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // a snapshot file, as read: the first log generation to replay and every room's part
+    private static class Snapshot {
+        int firstGeneration;
+        long nextSeq = 1;
+        SnapshotRoom[] rooms = new SnapshotRoom[0];
+    }
+
+    // one room's part of a snapshot file, as read
+    private static class SnapshotRoom {
+        int roomId;
+        long seq;
+        int[] days;
+        int[] starts;
+        int[] ends;
+        String[] bookedBy;
+        long[] ruleFirstDays;
+        int[] ruleStarts;
+        int[] ruleEnds;
+        String[] ruleSpecs;
+
+        static SnapshotRoom read(DataInputStream in, boolean withRules) throws IOException {
+            SnapshotRoom sr = new SnapshotRoom();
+            sr.roomId = in.readInt();
+            sr.seq = in.readLong();
+            int count = in.readInt();
+            if (count < 0) throw new IOException("Damaged booking snapshot");
+            sr.days = new int[count];
+            sr.starts = new int[count];
+            sr.ends = new int[count];
+            sr.bookedBy = new String[count];
+            for (int i = 0; i < count; i++) {
+                sr.days[i] = in.readInt();
+                sr.starts[i] = in.readUnsignedShort();
+                sr.ends[i] = in.readUnsignedShort();
+                sr.bookedBy[i] = in.readUTF();
+            }
+            int rules = withRules ? in.readInt() : 0;
+            if (rules < 0) throw new IOException("Damaged booking snapshot");
+            sr.ruleFirstDays = new long[rules];
+            sr.ruleStarts = new int[rules];
+            sr.ruleEnds = new int[rules];
+            sr.ruleSpecs = new String[rules];
+            for (int i = 0; i < rules; i++) {
+                sr.ruleFirstDays[i] = in.readInt();
+                sr.ruleStarts[i] = in.readUnsignedShort();
+                sr.ruleEnds[i] = in.readUnsignedShort();
+                sr.ruleSpecs[i] = in.readUTF();
+            }
+            return sr;
+        }
+    }
+
+    // bytes of a log up to its first torn or damaged entry
+    private static int intactLength(byte[] data) {
+        int pos = 0;
+        while (pos < data.length) {
+            int end = indexOf(data, (byte) '\n', pos);
+            if (end < 0 || parseEntry(data, pos, end) == null) break;
+            pos = end + 1;
+        }
+        return pos;
+    }
+
+    // fields of the entry in data[from, end), null if damaged
+    private static String[] parseEntry(byte[] data, int from, int end) {
+        String entry = checkedEntry(data, from, end);
+        if (entry == null) return null;
+        String[] f = entry.split(",", 7);
+        if (f.length != 7) return null;
+        try {
+            Long.parseLong(f[0]);
+            Integer.parseInt(f[2]);
+            LocalDate.ofEpochDay(Long.parseLong(f[3]));
+            Integer.parseInt(f[4]);
+            Integer.parseInt(f[5]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return f;
+    }
+
+    // apply the entries in data[0, length) newer than each room's snapshot and cut the log
+    // back to length (see intactLength); returns the highest sequence seen
+    private long replay(String file, byte[] data, int length, Room[] registered, long[] absorbed) throws IOException {
+        long maxSeq = 0;
+        int pos = 0;
+        while (pos < length) {
+            int end = indexOf(data, (byte) '\n', pos);
+            String[] f = parseEntry(data, pos, end);
+            long seq = Long.parseLong(f[0]);
+            int roomId = Integer.parseInt(f[2]);
+            LocalDate date = LocalDate.ofEpochDay(Long.parseLong(f[3]));
+            int start = Integer.parseInt(f[4]);
+            int stop = Integer.parseInt(f[5]);
+            maxSeq = Math.max(maxSeq, seq);
+            pos = end + 1;
+            int k = findRoom(registered, roomId);
+            if (k < 0 || seq <= absorbed[k]) continue;
+            replayedEntries++;
+            try {
+                if (f[1].equals("B")) {
+                    registered[k].createBooking(f[6], date, start, stop);
+                } else if (f[1].equals("R")) {
+                    registered[k].addRecurringBooking(RecurringBooking.fromSpec(date.toEpochDay(), start, stop, f[6]));
+                } else if (f[1].equals("Q")) {
+                    registered[k].cancelRecurringBooking(RecurringBooking.fromSpec(date.toEpochDay(), start, stop, f[6]));
+                } else {
+                    // C = cancelled booking, S = skipped occurrence: cancelBooking handles both
+                    registered[k].cancelBooking(f[6], date, Room.formatSlot(start, stop));
+                }
+            } catch (BookingException e) {
+                System.err.println("Booking journal: " + e.getMessage());
+            }
+        }
+        if (length < data.length) {
+            FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.WRITE);
+            try {
+                channel.truncate(length);
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+            System.err.println("Truncated " + (data.length - length) + " damaged bytes at the end of booking journal " + file);
+        }
+        return maxSeq;
+    }
+
+    // ---------- appends (called by Room under its own lock) ----------
+    // Journal a new booking before the room adds it; returns the entry's sequence number
+    long logCreate(Room room, String bookedBy, LocalDate date, int startMinute, int endMinute) throws IOException {
+        return append(new String[] { body('B', room, date.toEpochDay(), startMinute, endMinute, oneLine(bookedBy)) }, 1);
+    }
+
+    // Journal n new bookings (entry i for rooms[i]) with one write and one fsync; returns the
+    // sequence number of the last one (entry i gets last - n + 1 + i)
+    long logCreates(Room[] rooms, String bookedBy, LocalDate[] dates, int[] startMinutes, int[] endMinutes, int n)
+            throws IOException {
+        String[] bodies = new String[n];
+        for (int i = 0; i < n; i++) {
+            bodies[i] = body('B', rooms[i], dates[i].toEpochDay(), startMinutes[i], endMinutes[i], oneLine(bookedBy));
+        }
+        return append(bodies, n);
+    }
+
+    // Journal a cancellation before the room removes the booking
+    long logCancel(Room room, String bookedBy, LocalDate date, int startMinute, int endMinute) throws IOException {
+        return append(new String[] { body('C', room, date.toEpochDay(), startMinute, endMinute, oneLine(bookedBy)) }, 1);
+    }
+
+    // Journal a skipped occurrence of a recurring booking
+    long logSkip(Room room, String bookedBy, LocalDate date, int startMinute, int endMinute) throws IOException {
+        return append(new String[] { body('S', room, date.toEpochDay(), startMinute, endMinute, oneLine(bookedBy)) }, 1);
+    }
+
+    // Journal a recurring booking being added (R) or removed (Q)
+    long logRule(Room room, boolean added, RecurringBooking rule) throws IOException {
+        return append(new String[] { body(added ? 'R' : 'Q', room, rule.firstDay(), rule.getStartMinute(),
+                rule.getEndMinute(), rule.toSpec(Long.MIN_VALUE)) }, 1);
+    }
+
+    // entry without its sequence number: "<kind>,<roomId>,<epochDay>,<start>,<end>,<rest>"
+    private static String body(char kind, Room room, long epochDay, int startMinute, int endMinute, String rest) {
+        return kind + "," + room.getRoomId() + "," + epochDay + "," + startMinute + "," + endMinute + "," + rest;
+    }
+
+    // n entries with one write and one fsync; returns the last sequence number
+    private synchronized long append(String[] bodies, int n) throws IOException {
+        if (log == null) throw new IOException("Booking journal is not open");
+        String text = "";
+        long seq = nextSeq;
+        for (int i = 0; i < n; i++) {
+            String entry = (seq + i) + "," + bodies[i];
+            text += crcHex(entry) + ";" + entry + "\n";
+        }
+        ByteBuffer buf = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buf.hasRemaining()) log.write(buf);
+        log.force(false);
+        nextSeq += n;
+        entriesSinceCheckpoint += n;
+        return seq + n - 1;
+    }
+
+    // ---------- checkpoints ----------
+    // Checkpoint once checkpointEntries entries were logged since the last one
+    // (call outside any room lock, e.g. after a booking returned)
+    public void checkpointIfDue() throws IOException {
+        synchronized (this) {
+            if (entriesSinceCheckpoint < checkpointEntries) return;
+        }
+        checkpoint();
+    }
+
+    // Snapshot every room and drop the logs it covers
+    public void checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            int snapshotGeneration;
+            Room[] snapshotRooms;
+            long seqAtRotation;
+            synchronized (this) {
+                if (!recovered) return; // nothing replayed yet: a snapshot now would lose the logs
+                // later entries go to the next log; the snapshot may absorb some of them too,
+                // the per-room sequence numbers tell replay which ones
+                log.close();
+                generation++;
+                log = openLog(generation);
+                snapshotGeneration = generation;
+                entriesSinceCheckpoint = 0;
+                seqAtRotation = nextSeq;
+                snapshotRooms = new Room[roomCount];
+                System.arraycopy(rooms, 0, snapshotRooms, 0, roomCount);
+            }
+            long keepFrom = LocalDate.now().toEpochDay() - retainDays;
+            String tmp = snapshotPath() + ".tmp";
+            FileOutputStream file = new FileOutputStream(tmp);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            try {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(snapshotGeneration);
+                out.writeLong(seqAtRotation);
+                out.writeInt(snapshotRooms.length);
+                for (int r = 0; r < snapshotRooms.length; r++) {
+                    Room room = snapshotRooms[r];
+                    long seq;
+                    Room.Booking[] bookings;
+                    RecurringBooking[] rules;
+                    String[] specs;
+                    synchronized (room) {
+                        seq = room.getJournalSeq();
+                        bookings = room.getBookings();
+                        rules = room.getRecurringBookings();
+                        specs = new String[rules.length];
+                        for (int i = 0; i < rules.length; i++) specs[i] = rules[i].toSpec(keepFrom);
+                    }
+                    int keep = 0;
+                    for (int i = 0; i < bookings.length; i++) {
+                        if (bookings[i].getDate().toEpochDay() >= keepFrom) keep++;
+                    }
+                    out.writeInt(room.getRoomId());
+                    out.writeLong(seq);
+                    out.writeInt(keep);
+                    for (int i = 0; i < bookings.length; i++) {
+                        if (bookings[i].getDate().toEpochDay() < keepFrom) continue;
+                        out.writeInt((int) bookings[i].getDate().toEpochDay());
+                        out.writeShort(bookings[i].getStartMinute());
+                        out.writeShort(bookings[i].getEndMinute());
+                        out.writeUTF(bookings[i].getBookedBy());
+                    }
+                    int keepRules = 0;
+                    for (int i = 0; i < rules.length; i++) {
+                        if (rules[i].lastDay() >= keepFrom) keepRules++;
+                    }
+                    out.writeInt(keepRules);
+                    for (int i = 0; i < rules.length; i++) {
+                        if (rules[i].lastDay() < keepFrom) continue;
+                        out.writeInt((int) rules[i].firstDay());
+                        out.writeShort(rules[i].getStartMinute());
+                        out.writeShort(rules[i].getEndMinute());
+                        out.writeUTF(specs[i]);
+                    }
+                }
+                out.flush();
+                file.getFD().sync();
+            } finally {
+                out.close();
+            }
+            Files.move(Paths.get(tmp), Paths.get(snapshotPath()),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            int[] generations = logGenerations();
+            for (int g = 0; g < generations.length; g++) {
+                if (generations[g] < snapshotGeneration) Files.deleteIfExists(Paths.get(logPath(generations[g])));
+            }
+        }
+    }
+
+    public synchronized void close() {
+        if (log == null) return;
+        try {
+            log.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close booking journal: " + e.getMessage());
+        }
+        log = null;
+    }
+
+    // ---------- files ----------
+    private String snapshotPath() {
+        return path + ".snap";
+    }
+
+    private String logPath(int gen) {
+        return path + "." + gen;
+    }
+
+    private FileChannel openLog(int gen) throws IOException {
+        return FileChannel.open(Paths.get(logPath(gen)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // generations of the log files on disk, ascending
+    private int[] logGenerations() {
+        File f = new File(path).getAbsoluteFile();
+        String prefix = f.getName() + ".";
+        String[] names = f.getParentFile().list();
+        if (names == null) return new int[0];
+        int[] out = new int[names.length];
+        int n = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (!names[i].startsWith(prefix)) continue;
+            String suffix = names[i].substring(prefix.length());
+            if (suffix.isEmpty() || suffix.length() > 9) continue;
+            boolean digits = true;
+            for (int k = 0; k < suffix.length(); k++) {
+                if (suffix.charAt(k) < '0' || suffix.charAt(k) > '9') digits = false;
+            }
+            if (!digits) continue;
+            // insertion sort, there are only a few
+            int gen = Integer.parseInt(suffix);
+            int k = n++;
+            while (k > 0 && out[k - 1] > gen) {
+                out[k] = out[k - 1];
+                k--;
+            }
+            out[k] = gen;
+        }
+        int[] exact = new int[n];
+        System.arraycopy(out, 0, exact, 0, n);
+        return exact;
+    }
+
+    private static int findRoom(Room[] registered, int roomId) {
+        for (int i = 0; i < registered.length; i++) {
+            if (registered[i].getRoomId() == roomId) return i;
+        }
+        return -1;
+    }
+
+    // entry text of "<crc>;<entry>" in data[from, end), null if damaged
+    private static String checkedEntry(byte[] data, int from, int end) {
+        if (end - from < 10 || data[from + 8] != ';') return null;
+        long expected = 0;
+        for (int i = from; i < from + 8; i++) {
+            int d = Character.digit((char) data[i], 16);
+            if (d < 0) return null;
+            expected = (expected << 4) | d;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, from + 9, end - from - 9);
+        if (crc.getValue() != expected) return null;
+        return new String(data, from + 9, end - from - 9, StandardCharsets.UTF_8);
+    }
+
+    private static String crcHex(String entry) {
+        CRC32 crc = new CRC32();
+        crc.update(entry.getBytes(StandardCharsets.UTF_8));
+        String hex = Long.toHexString(crc.getValue());
+        while (hex.length() < 8) hex = "0" + hex;
+        return hex;
+    }
+
+    // names end the entry line, so they must not contain line breaks
+    private static String oneLine(String s) {
+        return s.replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static int indexOf(byte[] data, byte b, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == b) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,46 @@
+package smartoffice.v1;
+
+/**
+ * CollectingReportSink: keeps report rows in memory (manually grown array),
+ * for callers that want the rows as objects.
+ */
+public class CollectingReportSink implements ReportSink {
+    private String title;
+    private ReportRow.Kind kind;
+    private ReportRow[] rows = new ReportRow[16];
+    private int count;
+
+    public void begin(ReportRow.Kind kind, String title) {
+        this.kind = kind;
+        this.title = title;
+        this.count = 0;
+    }
+
+    public void row(ReportRow row) {
+        if (count == rows.length) {
+            ReportRow[] bigger = new ReportRow[rows.length * 2];
+            System.arraycopy(rows, 0, bigger, 0, count);
+            rows = bigger;
+        }
+        rows[count++] = row;
+    }
+
+    public void end() {
+        // rows stay available through getRows
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public ReportRow.Kind getKind() {
+        return kind;
+    }
+
+    // Rows in report order (array sized exactly to count)
+    public ReportRow[] getRows() {
+        ReportRow[] out = new ReportRow[count];
+        System.arraycopy(rows, 0, out, 0, count);
+        return out;
+    }
+}
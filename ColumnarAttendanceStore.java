@@ -0,0 +1,93 @@
+package smartoffice.v1;
+
+/**
+ * ColumnarAttendanceStore: attendance rows kept in parallel primitive arrays.
+ *
+ * - int employeeId, long epochSecond + int nano (lossless timestamp)
+ * - isCheckIn packed into a long[] bitset
+ * - method and employee name dictionary-coded to int ids (StringDictionary)
+ * - get(row) materializes an AttendanceRecord view on demand
+ *
+ * Footprint per row: 4 + 8 + 4 + 4 + 4 bytes + 1 bit = ~24 bytes, against ~52 bytes
+ * for ObjectAttendanceStore (more when names are not shared or timestamps have been
+ * materialized). One million scans: ~24 MB columnar vs ~52 MB as objects, plus a few KB
+ * of dictionaries.
+ */
+public class ColumnarAttendanceStore implements AttendanceStore {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] employeeIds = new int[INITIAL_CAPACITY];
+    private long[] epochSeconds = new long[INITIAL_CAPACITY];
+    private int[] nanos = new int[INITIAL_CAPACITY];
+    private int[] methodIds = new int[INITIAL_CAPACITY];
+    private int[] nameIds = new int[INITIAL_CAPACITY];
+    private long[] checkInBits = new long[1];
+    private int size;
+
+    private final StringDictionary methods = new StringDictionary();
+    private final StringDictionary names = new StringDictionary();
+
+    public int add(AttendanceRecord rec) {
+        if (size == employeeIds.length) grow();
+        employeeIds[size] = rec.getEmployeeId();
+        epochSeconds[size] = rec.getEpochSecond();
+        nanos[size] = rec.getNano();
+        methodIds[size] = methods.encode(rec.getMethod());
+        nameIds[size] = names.encode(rec.getEmployeeName());
+        if (rec.isCheckIn()) checkInBits[size >>> 6] |= 1L << (size & 63);
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public AttendanceRecord get(int row) {
+        return new AttendanceRecord(employeeIds[row], names.decode(nameIds[row]), methods.decode(methodIds[row]),
+                isCheckIn(row), epochSeconds[row], nanos[row]);
+    }
+
+    public int getEmployeeId(int row) {
+        return employeeIds[row];
+    }
+
+    public boolean isCheckIn(int row) {
+        return (checkInBits[row >>> 6] & (1L << (row & 63))) != 0;
+    }
+
+    public long getEpochSecond(int row) {
+        return epochSeconds[row];
+    }
+
+    public int getNano(int row) {
+        return nanos[row];
+    }
+
+    public long estimateBytes() {
+        long perSlot = 4 + 8 + 4 + 4 + 4;
+        return employeeIds.length * perSlot + (long) checkInBits.length * 8
+                + methods.estimateBytes() + names.estimateBytes();
+    }
+
+    private void grow() {
+        int cap = employeeIds.length * 2;
+        int[] ids = new int[cap];
+        long[] secs = new long[cap];
+        int[] ns = new int[cap];
+        int[] ms = new int[cap];
+        int[] nm = new int[cap];
+        System.arraycopy(employeeIds, 0, ids, 0, size);
+        System.arraycopy(epochSeconds, 0, secs, 0, size);
+        System.arraycopy(nanos, 0, ns, 0, size);
+        System.arraycopy(methodIds, 0, ms, 0, size);
+        System.arraycopy(nameIds, 0, nm, 0, size);
+        employeeIds = ids;
+        epochSeconds = secs;
+        nanos = ns;
+        methodIds = ms;
+        nameIds = nm;
+        long[] bits = new long[(cap + 63) >>> 6];
+        System.arraycopy(checkInBits, 0, bits, 0, checkInBits.length);
+        checkInBits = bits;
+    }
+}
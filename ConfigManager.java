@@ -21,8 +21,8 @@ public class ConfigManager {
         this.logFilePath = logFilePath;
     }
 
-    // Append a log message to the file
-    public void log(String message) {
+    // Append a log message to the file (synchronized: concurrent bookers must not interleave lines)
+    public synchronized void log(String message) {
         BufferedWriter writer = null;
         try {
             writer = new BufferedWriter(new FileWriter(logFilePath, true)); // append mode
@@ -39,6 +39,26 @@ public class ConfigManager {
         }
     }
 
+    // Overloaded: append several messages with one open/write/close
+    public synchronized void log(String[] messages, int from, int to) {
+        if (to <= from) return;
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(logFilePath, true)); // append mode
+            for (int i = from; i < to; i++) {
+                writer.write(messages[i]);
+                writer.newLine();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Failed to write log: " + e.getMessage());
+        } finally {
+            if (writer != null) {
+                try { writer.close(); } catch (IOException e) { /* ignore close error */ }
+            }
+        }
+    }
+
     // Read entire log file and return it as a single String
     public String readLog() {
         String log="";
@@ -0,0 +1,74 @@
+package smartoffice.v1;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * CsvReportSink: writes report rows to a CSV file (header + rows, names CSV-escaped).
+ *
+ * The file is opened in begin and closed in end; rows are streamed through a
+ * BufferedWriter, never held in memory.
+ */
+public class CsvReportSink implements ReportSink {
+    private String path;
+    private BufferedWriter writer;
+    private IOException error;
+
+    public CsvReportSink(String path) {
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void begin(ReportRow.Kind kind, String title) {
+        try {
+            writer = new BufferedWriter(new FileWriter(path));
+            if (kind == ReportRow.Kind.DAILY) writer.write("empId,empName,firstCheckIn,lastCheckOut,totalHours,notes");
+            else writer.write("empId,empName,daysPresent,totalHours,notes");
+            writer.newLine();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public void row(ReportRow row) {
+        if (writer == null) return;
+        try {
+            writer.write(row.format(true));
+            writer.newLine();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public void end() {
+        if (writer == null) return;
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            close();
+        }
+    }
+
+    // First I/O error, or null
+    public IOException getError() {
+        return error;
+    }
+
+    private void fail(IOException e) {
+        if (error == null) error = e;
+        close();
+    }
+
+    private void close() {
+        if (writer != null) {
+            try { writer.close(); } catch (IOException ex) { /* ignore */ }
+            writer = null;
+        }
+    }
+}
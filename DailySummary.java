@@ -0,0 +1,153 @@
+package smartoffice.v1;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * DailySummary: materialized per-employee-per-day attendance rollup.
+ *
+ * Updated incrementally as each scan arrives (order does not matter):
+ * - firstIn  = earliest check-in of the day
+ * - lastOut  = latest check-out of the day
+ * - eventCount = number of scans that day
+ * - anomaly  = missing check-in/check-out, or check-out not after check-in
+ *
+ * Times are kept as epoch second + nano (EpochTime); the LocalDateTime getters build
+ * their value on request.
+ *
+ * Addresses: report generation from pre-aggregated rows
+ */
+public class DailySummary {
+    private int employeeId;
+    private String employeeName;
+    private long epochDay;
+    private boolean hasFirstIn;
+    private long firstInSecond;
+    private int firstInNano;
+    private boolean hasLastOut;
+    private long lastOutSecond;
+    private int lastOutNano;
+    // earliest event (any direction) is used to pick the name, like the sorted scan did
+    private long earliestSecond;
+    private int earliestNano;
+    private int eventCount;
+
+    public DailySummary(int employeeId, long epochDay) {
+        this.employeeId = employeeId;
+        this.epochDay = epochDay;
+    }
+
+    // Fold one attendance event into the rollup
+    public void update(AttendanceRecord rec) {
+        update(rec.getEmployeeName(), rec.isCheckIn(), rec.getEpochSecond(), rec.getNano());
+    }
+
+    // Overloaded: fold an event given as plain fields
+    public void update(String name, boolean isCheckIn, LocalDateTime ts) {
+        update(name, isCheckIn, EpochTime.toEpochSecond(ts), ts.getNano());
+    }
+
+    // Overloaded: fold an event with its time as epoch second + nano (used by binary segments)
+    public void update(String name, boolean isCheckIn, long epochSecond, int nano) {
+        if (eventCount == 0 || EpochTime.compare(epochSecond, nano, earliestSecond, earliestNano) < 0) {
+            earliestSecond = epochSecond;
+            earliestNano = nano;
+            employeeName = name;
+        }
+        if (isCheckIn) {
+            if (!hasFirstIn || EpochTime.compare(epochSecond, nano, firstInSecond, firstInNano) < 0) {
+                hasFirstIn = true;
+                firstInSecond = epochSecond;
+                firstInNano = nano;
+            }
+        } else {
+            if (!hasLastOut || EpochTime.compare(epochSecond, nano, lastOutSecond, lastOutNano) >= 0) {
+                hasLastOut = true;
+                lastOutSecond = epochSecond;
+                lastOutNano = nano;
+            }
+        }
+        eventCount++;
+    }
+
+    // New rollup combining two rollups of the same employee and day
+    public DailySummary merge(DailySummary other) {
+        DailySummary out = new DailySummary(employeeId, epochDay);
+        out.copyFrom(this);
+        if (other.eventCount > 0 && (out.eventCount == 0
+                || EpochTime.compare(other.earliestSecond, other.earliestNano, out.earliestSecond, out.earliestNano) < 0)) {
+            out.earliestSecond = other.earliestSecond;
+            out.earliestNano = other.earliestNano;
+            out.employeeName = other.employeeName;
+        }
+        if (other.hasFirstIn && (!out.hasFirstIn
+                || EpochTime.compare(other.firstInSecond, other.firstInNano, out.firstInSecond, out.firstInNano) < 0)) {
+            out.hasFirstIn = true;
+            out.firstInSecond = other.firstInSecond;
+            out.firstInNano = other.firstInNano;
+        }
+        if (other.hasLastOut && (!out.hasLastOut
+                || EpochTime.compare(other.lastOutSecond, other.lastOutNano, out.lastOutSecond, out.lastOutNano) > 0)) {
+            out.hasLastOut = true;
+            out.lastOutSecond = other.lastOutSecond;
+            out.lastOutNano = other.lastOutNano;
+        }
+        out.eventCount += other.eventCount;
+        return out;
+    }
+
+    private void copyFrom(DailySummary s) {
+        employeeName = s.employeeName;
+        hasFirstIn = s.hasFirstIn;
+        firstInSecond = s.firstInSecond;
+        firstInNano = s.firstInNano;
+        hasLastOut = s.hasLastOut;
+        lastOutSecond = s.lastOutSecond;
+        lastOutNano = s.lastOutNano;
+        earliestSecond = s.earliestSecond;
+        earliestNano = s.earliestNano;
+        eventCount = s.eventCount;
+    }
+
+    public int getEmployeeId() {
+        return employeeId;
+    }
+
+    public String getEmployeeName() {
+        return employeeName;
+    }
+
+    public LocalDate getDate() {
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
+    public long getEpochDay() {
+        return epochDay;
+    }
+
+    public LocalDateTime getFirstIn() {
+        return hasFirstIn ? EpochTime.toLocalDateTime(firstInSecond, firstInNano) : null;
+    }
+
+    public LocalDateTime getLastOut() {
+        return hasLastOut ? EpochTime.toLocalDateTime(lastOutSecond, lastOutNano) : null;
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    // true when the day cannot be turned into worked hours
+    public boolean isAnomaly() {
+        return !hasFirstIn || !hasLastOut
+                || EpochTime.compare(lastOutSecond, lastOutNano, firstInSecond, firstInNano) <= 0;
+    }
+
+    // Approximate hours between first check-in and last check-out (0 if anomaly)
+    public double getHours() {
+        if (isAnomaly()) return 0.0;
+        // whole minutes, truncated like Duration.between(firstIn, lastOut).toMinutes()
+        long seconds = lastOutSecond - firstInSecond - ((lastOutNano < firstInNano) ? 1 : 0);
+        return (seconds / 60) / 60.0;
+    }
+}
@@ -0,0 +1,208 @@
+package smartoffice.v1;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+/**
+ * EpochTime: timestamps as plain numbers (seconds since 1970-01-01T00:00 local time,
+ * no zone, plus nanos) and a hand-written ISO-8601 codec for them.
+ *
+ * - day bucketing is integer division (epochDay), no LocalDate objects
+ * - toEpochSecond(y, M, d, H, m, s) and the writer use the days-from-civil /
+ *   civil-from-days arithmetic of the proleptic Gregorian calendar
+ * - writeIso() prints exactly what AttendanceRecord.FORMATTER (ISO_LOCAL_DATE_TIME)
+ *   prints: yyyy-MM-ddTHH:mm:ss plus the fraction without trailing zeros, straight into
+ *   a char[] (years outside 0000-9999 fall back to the formatter)
+ * - run main(rows) to check both directions against FORMATTER on random timestamps and
+ *   compare rows/second of the CSV row codec with a FORMATTER-based one
+ *
+ * Addresses: primitive timestamp path for CSV writing, parsing and reports
+ */
+public final class EpochTime {
+    public static final long SECONDS_PER_DAY = 86400;
+
+    // Longest text writeIso() produces for years 0000-9999 ("yyyy-MM-ddTHH:mm:ss.nnnnnnnnn")
+    public static final int MAX_ISO_LENGTH = 29;
+
+    private EpochTime() {
+    }
+
+    public static long toEpochSecond(LocalDateTime ts) {
+        return ts.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    public static LocalDateTime toLocalDateTime(long epochSecond, int nano) {
+        return LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+    }
+
+    // Day number (LocalDate.toEpochDay) of a timestamp
+    public static long epochDay(long epochSecond) {
+        return Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+    }
+
+    // -1, 0 or 1 like LocalDateTime.compareTo
+    public static int compare(long epochSecond1, int nano1, long epochSecond2, int nano2) {
+        if (epochSecond1 != epochSecond2) return (epochSecond1 < epochSecond2) ? -1 : 1;
+        if (nano1 != nano2) return (nano1 < nano2) ? -1 : 1;
+        return 0;
+    }
+
+    // Epoch second of a calendar date and time (fields must already be valid)
+    public static long toEpochSecond(int year, int month, int day, int hour, int minute, int second) {
+        return daysFromCivil(year, month, day) * SECONDS_PER_DAY + hour * 3600L + minute * 60L + second;
+    }
+
+    // ---------- writer ----------
+    // ISO text of a timestamp as a new String
+    public static String formatIso(long epochSecond, int nano) {
+        char[] buf = new char[MAX_ISO_LENGTH];
+        int len = writeIso(epochSecond, nano, buf, 0);
+        if (len < 0) return toLocalDateTime(epochSecond, nano).format(AttendanceRecord.FORMATTER);
+        return new String(buf, 0, len);
+    }
+
+    public static String formatIso(LocalDateTime ts) {
+        return formatIso(toEpochSecond(ts), ts.getNano());
+    }
+
+    // Write the ISO text into out[pos..] (room for MAX_ISO_LENGTH chars needed);
+    // returns the position after it, or -1 for a year outside 0000-9999 (nothing written)
+    public static int writeIso(long epochSecond, int nano, char[] out, int pos) {
+        long days = epochDay(epochSecond);
+        int secondOfDay = (int) (epochSecond - days * SECONDS_PER_DAY);
+
+        // civil from days (Gregorian, era = 400 years)
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long year = yoe + era * 400;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = (mp < 10) ? mp + 3 : mp - 9;
+        if (month <= 2) year++;
+        if (year < 0 || year > 9999) return -1;
+
+        int y = (int) year;
+        out[pos++] = (char) ('0' + y / 1000);
+        out[pos++] = (char) ('0' + y / 100 % 10);
+        out[pos++] = (char) ('0' + y / 10 % 10);
+        out[pos++] = (char) ('0' + y % 10);
+        out[pos++] = '-';
+        pos = write2(month, out, pos);
+        out[pos++] = '-';
+        pos = write2(day, out, pos);
+        out[pos++] = 'T';
+        pos = write2(secondOfDay / 3600, out, pos);
+        out[pos++] = ':';
+        pos = write2(secondOfDay / 60 % 60, out, pos);
+        out[pos++] = ':';
+        pos = write2(secondOfDay % 60, out, pos);
+        if (nano != 0) {
+            out[pos++] = '.';
+            int digits = 9;
+            int n = nano;
+            while (n % 10 == 0) {
+                n /= 10;
+                digits--;
+            }
+            for (int i = digits - 1; i >= 0; i--) {
+                out[pos + i] = (char) ('0' + n % 10);
+                n /= 10;
+            }
+            pos += digits;
+        }
+        return pos;
+    }
+
+    private static int write2(int value, char[] out, int pos) {
+        out[pos] = (char) ('0' + value / 10);
+        out[pos + 1] = (char) ('0' + value % 10);
+        return pos + 2;
+    }
+
+    // days since 1970-01-01 of a proleptic Gregorian date
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = (month <= 2) ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        int yoe = (int) (y - era * 400);
+        int doy = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    // ---------- benchmark ----------
+    // Benchmark: java smartoffice.v1.EpochTime [rows]; exits with 1 if any timestamp is
+    // written or parsed differently from AttendanceRecord.FORMATTER
+    public static void main(String[] args) {
+        int rows = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        Random random = new Random(17);
+        long from = toEpochSecond(1990, 1, 1, 0, 0, 0);
+        long to = toEpochSecond(2060, 1, 1, 0, 0, 0);
+        AttendanceRecord[] records = new AttendanceRecord[rows];
+        String[] lines = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            long sec = from + (long) (random.nextDouble() * (to - from));
+            int nano;
+            int kind = random.nextInt(4);
+            if (kind == 0) nano = 0;
+            else if (kind == 1) nano = random.nextInt(1000) * 1000000;
+            else if (kind == 2) nano = random.nextInt(1000000) * 1000;
+            else nano = random.nextInt(1000000000);
+            records[i] = new AttendanceRecord(1 + random.nextInt(5000), "Employee " + random.nextInt(300), "RFID",
+                    random.nextBoolean(), sec, nano);
+            LocalDateTime ts = toLocalDateTime(sec, nano);
+            String expected = ts.format(AttendanceRecord.FORMATTER);
+            String written = formatIso(sec, nano);
+            if (!written.equals(expected)) fail("writeIso " + written + " != FORMATTER " + expected);
+            lines[i] = records[i].toCsvRow();
+            AttendanceRecord parsed = AttendanceRecord.fromCsvRow(lines[i]);
+            LocalDateTime back = LocalDateTime.parse(expected, AttendanceRecord.FORMATTER);
+            if (parsed == null || parsed.getEpochSecond() != toEpochSecond(back) || parsed.getNano() != back.getNano()) {
+                fail("parser read " + lines[i] + " differently from FORMATTER");
+            }
+        }
+        System.out.println(rows + " timestamps match FORMATTER in both directions");
+
+        long sink = 0;
+        for (int round = 1; round <= 3; round++) {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < rows; i++) sink += records[i].toCsvRow().length();
+            long t1 = System.nanoTime();
+            for (int i = 0; i < rows; i++) sink += formatterRow(records[i]).length();
+            long t2 = System.nanoTime();
+            for (int i = 0; i < rows; i++) sink += AttendanceRecord.fromCsvRow(lines[i]).getNano();
+            long t3 = System.nanoTime();
+            for (int i = 0; i < rows; i++) sink += formatterParse(lines[i]).getNano();
+            long t4 = System.nanoTime();
+            System.out.println("round " + round
+                    + ": write " + rate(rows, t1 - t0) + " rows/s (FORMATTER " + rate(rows, t2 - t1) + ")"
+                    + " | parse " + rate(rows, t3 - t2) + " rows/s (FORMATTER " + rate(rows, t4 - t3) + ")");
+        }
+        if (sink == 42) System.out.println(); // keeps the loops from being optimized away
+    }
+
+    // the row as it was written before the hand-written codec
+    private static String formatterRow(AttendanceRecord rec) {
+        return rec.getEmployeeId() + "," + rec.getEmployeeName() + "," + rec.getMethod() + ","
+                + (rec.isCheckIn() ? "1" : "0") + "," + rec.getTimestamp().format(AttendanceRecord.FORMATTER);
+    }
+
+    // the row as it was parsed before the hand-written parser (names without commas only)
+    private static AttendanceRecord formatterParse(String line) {
+        String[] f = line.split(",");
+        return new AttendanceRecord(Integer.parseInt(f[0].trim()), f[1], f[2], f[3].trim().equals("1"),
+                LocalDateTime.parse(f[4].trim(), AttendanceRecord.FORMATTER));
+    }
+
+    private static String rate(int rows, long nanos) {
+        return String.format("%.0f", rows * 1e9 / Math.max(1, nanos));
+    }
+
+    private static void fail(String message) {
+        System.err.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
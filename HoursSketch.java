@@ -0,0 +1,80 @@
+package smartoffice.v1;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * HoursSketch: mergeable quantile sketch of daily hours worked.
+ *
+ * - one counter per 5-minute bucket of a day (288 buckets); h hours, rounded to whole
+ *   minutes, go to bucket minutes / 5
+ * - quantile(q) returns the middle of the bucket holding the nearest-rank q-quantile, so it
+ *   is within 2.5 minutes (0.042 h) of the exact value; counts and ranks are exact
+ * - merge(other) adds the counters, so a range of days merges in 288 additions per day
+ *
+ * Addresses: approximate quantiles (fixed-bucket histogram sketch)
+ */
+public class HoursSketch {
+    public static final int BUCKET_MINUTES = 5;
+    private static final int BUCKETS = 24 * 60 / BUCKET_MINUTES;
+
+    private final int[] counts = new int[BUCKETS];
+    private long total;
+
+    public void add(double hours) {
+        // whole minutes first: report hours are minutes / 60, which is not exact in binary
+        int b = (int) (Math.round(hours * 60) / BUCKET_MINUTES);
+        counts[Math.max(0, Math.min(BUCKETS - 1, b))]++;
+        total++;
+    }
+
+    public void merge(HoursSketch other) {
+        for (int b = 0; b < BUCKETS; b++) counts[b] += other.counts[b];
+        total += other.total;
+    }
+
+    // Number of values added
+    public long getCount() {
+        return total;
+    }
+
+    // Nearest-rank q-quantile (0 <= q <= 1) in hours; NaN if the sketch is empty
+    public double quantile(double q) {
+        if (total == 0) return Double.NaN;
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank) return (b + 0.5) * BUCKET_MINUTES / 60.0;
+        }
+        return (BUCKETS - 0.5) * BUCKET_MINUTES / 60.0;
+    }
+
+    // ---------- persistence (non-empty buckets only) ----------
+    void write(DataOutputStream out) throws IOException {
+        int used = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            if (counts[b] != 0) used++;
+        }
+        out.writeShort(used);
+        for (int b = 0; b < BUCKETS; b++) {
+            if (counts[b] == 0) continue;
+            out.writeShort(b);
+            out.writeInt(counts[b]);
+        }
+    }
+
+    static HoursSketch read(DataInputStream in) throws IOException {
+        HoursSketch s = new HoursSketch();
+        int used = in.readUnsignedShort();
+        for (int i = 0; i < used; i++) {
+            int b = in.readUnsignedShort();
+            int c = in.readInt();
+            if (b >= BUCKETS) throw new IOException("Bad hours bucket " + b);
+            s.counts[b] = c;
+            s.total += c;
+        }
+        return s;
+    }
+}
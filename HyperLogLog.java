@@ -0,0 +1,145 @@
+package smartoffice.v1;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * HyperLogLog: approximate count of distinct employee ids, mergeable across days.
+ *
+ * - 2^12 = 4096 registers; each id is hashed to 64 bits, the top 12 bits pick a register,
+ *   the register keeps the longest run of leading zeros seen in the remaining bits
+ * - standard error 1.04 / sqrt(4096) = 1.6% (about 95% of estimates within 3.3%);
+ *   below ~10,000 distinct ids linear counting is used, which is close to exact
+ * - sparse mode: while few registers are set they are kept as a sorted int[] of
+ *   (register << 8 | value), a few hundred bytes for one day, dense byte[4096] after that
+ * - merge(other) = register-wise max, the sketch of the union
+ *
+ * Addresses: approximate distinct counts (cardinality estimation)
+ */
+public class HyperLogLog {
+    private static final int P = 12;
+    private static final int M = 1 << P;
+    private static final int SPARSE_LIMIT = M / 8;
+
+    private int[] sparse = new int[8]; // sorted by register; null once dense
+    private int sparseCount;
+    private byte[] dense;
+
+    public void add(int employeeId) {
+        long h = hash(employeeId);
+        int register = (int) (h >>> (64 - P));
+        int value = Long.numberOfLeadingZeros((h << P) | (1L << (P - 1))) + 1;
+        set(register, value);
+    }
+
+    // Add every register of other (union of the two id sets)
+    public void merge(HyperLogLog other) {
+        if (other.dense != null) {
+            for (int r = 0; r < M; r++) {
+                if (other.dense[r] != 0) set(r, other.dense[r]);
+            }
+        } else {
+            for (int i = 0; i < other.sparseCount; i++) set(other.sparse[i] >>> 8, other.sparse[i] & 0xFF);
+        }
+    }
+
+    // Estimated number of distinct ids added
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        if (dense != null) {
+            for (int r = 0; r < M; r++) {
+                sum += 1.0 / (1L << dense[r]);
+                if (dense[r] == 0) zeros++;
+            }
+        } else {
+            zeros = M - sparseCount;
+            sum = zeros;
+            for (int i = 0; i < sparseCount; i++) sum += 1.0 / (1L << (sparse[i] & 0xFF));
+        }
+        double alpha = 0.7213 / (1 + 1.079 / M);
+        double e = alpha * M * M / sum;
+        if (e <= 2.5 * M && zeros > 0) e = M * Math.log((double) M / zeros); // linear counting
+        return Math.round(e);
+    }
+
+    public boolean isEmpty() {
+        return dense == null && sparseCount == 0;
+    }
+
+    // ---------- registers ----------
+    private void set(int register, int value) {
+        if (dense != null) {
+            if (value > dense[register]) dense[register] = (byte) value;
+            return;
+        }
+        int lo = 0;
+        int hi = sparseCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int r = sparse[mid] >>> 8;
+            if (r < register) lo = mid + 1;
+            else if (r > register) hi = mid - 1;
+            else {
+                if (value > (sparse[mid] & 0xFF)) sparse[mid] = (register << 8) | value;
+                return;
+            }
+        }
+        if (sparseCount == SPARSE_LIMIT) {
+            toDense();
+            set(register, value);
+            return;
+        }
+        if (sparseCount == sparse.length) {
+            int[] bigger = new int[sparse.length * 2];
+            System.arraycopy(sparse, 0, bigger, 0, sparseCount);
+            sparse = bigger;
+        }
+        System.arraycopy(sparse, lo, sparse, lo + 1, sparseCount - lo);
+        sparse[lo] = (register << 8) | value;
+        sparseCount++;
+    }
+
+    private void toDense() {
+        dense = new byte[M];
+        for (int i = 0; i < sparseCount; i++) dense[sparse[i] >>> 8] = (byte) (sparse[i] & 0xFF);
+        sparse = null;
+        sparseCount = 0;
+    }
+
+    // 64-bit mix of the id (SplitMix64 finalizer)
+    private static long hash(int id) {
+        long z = id + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // ---------- persistence ----------
+    void write(DataOutputStream out) throws IOException {
+        if (dense != null) {
+            out.writeByte(1);
+            out.write(dense);
+        } else {
+            out.writeByte(0);
+            out.writeShort(sparseCount);
+            for (int i = 0; i < sparseCount; i++) out.writeInt(sparse[i]);
+        }
+    }
+
+    static HyperLogLog read(DataInputStream in) throws IOException {
+        HyperLogLog h = new HyperLogLog();
+        if (in.readByte() == 1) {
+            h.dense = new byte[M];
+            in.readFully(h.dense);
+            h.sparse = null;
+        } else {
+            int n = in.readUnsignedShort();
+            h.sparse = new int[Math.max(8, n)];
+            for (int i = 0; i < n; i++) h.sparse[i] = in.readInt();
+            h.sparseCount = n;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,56 @@
+package smartoffice.v1;
+
+/**
+ * ObjectAttendanceStore: the original layout, one AttendanceRecord object per row
+ * in a manually resized array.
+ *
+ * Footprint per row (64-bit JVM, compressed oops): array slot 4 + AttendanceRecord 48
+ * (epoch second + nano) = ~52 bytes, plus the name and method Strings whenever they are
+ * not shared between rows, plus LocalDateTime 24 + LocalDate 24 + LocalTime 24 once
+ * getTimestamp() has been called on the record.
+ */
+public class ObjectAttendanceStore implements AttendanceStore {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long BYTES_PER_ROW = 52;
+
+    private AttendanceRecord[] records = new AttendanceRecord[INITIAL_CAPACITY];
+    private int recordCount;
+
+    public int add(AttendanceRecord rec) {
+        if (recordCount == records.length) {
+            AttendanceRecord[] bigger = new AttendanceRecord[records.length * 2];
+            System.arraycopy(records, 0, bigger, 0, records.length);
+            records = bigger;
+        }
+        records[recordCount] = rec;
+        return recordCount++;
+    }
+
+    public int size() {
+        return recordCount;
+    }
+
+    public AttendanceRecord get(int row) {
+        return records[row];
+    }
+
+    public int getEmployeeId(int row) {
+        return records[row].getEmployeeId();
+    }
+
+    public boolean isCheckIn(int row) {
+        return records[row].isCheckIn();
+    }
+
+    public long getEpochSecond(int row) {
+        return records[row].getEpochSecond();
+    }
+
+    public int getNano(int row) {
+        return records[row].getNano();
+    }
+
+    public long estimateBytes() {
+        return (long) records.length * 4 + (long) recordCount * (BYTES_PER_ROW - 4);
+    }
+}
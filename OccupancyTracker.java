@@ -0,0 +1,241 @@
+package smartoffice.v1;
+
+/**
+ * OccupancyTracker: who is in the building right now, updated on every scan.
+ *
+ * - per employee: current state (in/out), time of the scan that set it, department
+ * - present set: array of employee slots, removal by swapping in the last entry (O(1))
+ * - one such present list per department, so listing a department is output-proportional
+ * - employee id -> slot is an open-addressing hash table on plain arrays (no Maps)
+ * - a scan older than the employee's last applied scan does not change the state, so
+ *   late or replayed scans (imports, spill files) cannot undo a newer one
+ * - departments come from the employee directory; an employee not in it yet is filed under
+ *   "Unknown" and looked up again on each later scan, and refreshDepartments() (called by
+ *   OfficeSystem when the directory changes) re-files everyone
+ *
+ * AttendanceManager rebuilds it at start-up from the most recent day's records only, which
+ * can happen before the directory is filled in.
+ *
+ * Addresses: constant-time presence queries
+ */
+public class OccupancyTracker {
+    // employee slots (parallel arrays)
+    private int[] slotEmployee = new int[16];
+    private boolean[] slotIn = new boolean[16];
+    private long[] slotSecond = new long[16];
+    private int[] slotNano = new int[16];
+    private int[] slotDepartment = new int[16];
+    private int[] slotPresentPos = new int[16]; // position in 'present' (-1 when out)
+    private int[] slotDeptPos = new int[16];    // position in its department list
+    private int slotCount;
+
+    // employee id -> slot + 1 (0 = empty), open addressing
+    private int[] tableKeys = new int[32];
+    private int[] tableSlots = new int[32];
+
+    // present employees (slot numbers), overall and per department
+    private int[] present = new int[16];
+    private int presentCount;
+    private static final String UNKNOWN = "Unknown";
+    private final StringDictionary departments = new StringDictionary();
+    private int[][] deptPresent = new int[4][];
+    private int[] deptPresentCount = new int[4];
+
+    // Apply one scan (timestamps as UTC epoch second + nano, like the stores)
+    public synchronized void onScan(int employeeId, boolean isCheckIn, long epochSecond, int nano) {
+        int slot = slotOf(employeeId);
+        if (slot < 0) {
+            slot = newSlot(employeeId, departmentOf(employeeId));
+        } else if (epochSecond < slotSecond[slot] || (epochSecond == slotSecond[slot] && nano < slotNano[slot])) {
+            return; // older than the state we already have
+        } else if (departments.decode(slotDepartment[slot]).equals(UNKNOWN)) {
+            setDepartment(slot, departmentOf(employeeId)); // may have joined the directory since
+        }
+        slotSecond[slot] = epochSecond;
+        slotNano[slot] = nano;
+        if (isCheckIn && !slotIn[slot]) markIn(slot);
+        else if (!isCheckIn && slotIn[slot]) markOut(slot);
+    }
+
+    // Look up every tracked employee's department again (the directory changed)
+    public synchronized void refreshDepartments() {
+        for (int slot = 0; slot < slotCount; slot++) setDepartment(slot, departmentOf(slotEmployee[slot]));
+    }
+
+    public synchronized boolean isPresent(int employeeId) {
+        int slot = slotOf(employeeId);
+        return slot >= 0 && slotIn[slot];
+    }
+
+    public synchronized int getPresentCount() {
+        return presentCount;
+    }
+
+    public synchronized int getPresentCount(String department) {
+        int d = departmentIndex(department);
+        return (d < 0) ? 0 : deptPresentCount[d];
+    }
+
+    // Ids of everyone present (unordered)
+    public synchronized int[] getPresentEmployees() {
+        int[] out = new int[presentCount];
+        for (int i = 0; i < presentCount; i++) out[i] = slotEmployee[present[i]];
+        return out;
+    }
+
+    // Ids of everyone present from one department (unordered)
+    public synchronized int[] getPresentEmployees(String department) {
+        int d = departmentIndex(department);
+        if (d < 0) return new int[0];
+        int[] out = new int[deptPresentCount[d]];
+        for (int i = 0; i < out.length; i++) out[i] = slotEmployee[deptPresent[d][i]];
+        return out;
+    }
+
+    // Departments seen so far (index order of the dictionary)
+    public synchronized String[] getDepartments() {
+        String[] out = new String[departments.size()];
+        for (int d = 0; d < out.length; d++) out[d] = departments.decode(d);
+        return out;
+    }
+
+    // ---------- present lists ----------
+    private void markIn(int slot) {
+        slotIn[slot] = true;
+        if (presentCount == present.length) present = grow(present);
+        slotPresentPos[slot] = presentCount;
+        present[presentCount++] = slot;
+
+        int d = slotDepartment[slot];
+        if (deptPresentCount[d] == deptPresent[d].length) deptPresent[d] = grow(deptPresent[d]);
+        slotDeptPos[slot] = deptPresentCount[d];
+        deptPresent[d][deptPresentCount[d]++] = slot;
+    }
+
+    private void markOut(int slot) {
+        slotIn[slot] = false;
+        // swap the last present entry into the hole
+        int pos = slotPresentPos[slot];
+        int last = present[--presentCount];
+        present[pos] = last;
+        slotPresentPos[last] = pos;
+        slotPresentPos[slot] = -1;
+
+        int d = slotDepartment[slot];
+        int dpos = slotDeptPos[slot];
+        int dlast = deptPresent[d][--deptPresentCount[d]];
+        deptPresent[d][dpos] = dlast;
+        slotDeptPos[dlast] = dpos;
+    }
+
+    // move a slot to another department (and its present list, if in)
+    private void setDepartment(int slot, String department) {
+        int d = departmentCode(department);
+        if (d == slotDepartment[slot]) return;
+        boolean in = slotIn[slot];
+        if (in) markOut(slot);
+        slotDepartment[slot] = d;
+        if (in) markIn(slot);
+    }
+
+    // ---------- employee slots ----------
+    private int newSlot(int employeeId, String department) {
+        if (slotCount == slotEmployee.length) {
+            int size = slotEmployee.length * 2;
+            slotEmployee = copyOf(slotEmployee, size);
+            slotIn = copyOf(slotIn, size);
+            slotSecond = copyOf(slotSecond, size);
+            slotNano = copyOf(slotNano, size);
+            slotDepartment = copyOf(slotDepartment, size);
+            slotPresentPos = copyOf(slotPresentPos, size);
+            slotDeptPos = copyOf(slotDeptPos, size);
+        }
+        int slot = slotCount++;
+        slotEmployee[slot] = employeeId;
+        slotIn[slot] = false;
+        slotSecond[slot] = Long.MIN_VALUE;
+        slotNano[slot] = 0;
+        slotPresentPos[slot] = -1;
+        slotDepartment[slot] = departmentCode(department);
+
+        if ((slotCount) * 2 > tableKeys.length) rehash(tableKeys.length * 2);
+        insert(employeeId, slot);
+        return slot;
+    }
+
+    private int slotOf(int employeeId) {
+        int mask = tableKeys.length - 1;
+        for (int i = mix(employeeId) & mask; ; i = (i + 1) & mask) {
+            if (tableSlots[i] == 0) return -1;
+            if (tableKeys[i] == employeeId) return tableSlots[i] - 1;
+        }
+    }
+
+    private void insert(int employeeId, int slot) {
+        int mask = tableKeys.length - 1;
+        int i = mix(employeeId) & mask;
+        while (tableSlots[i] != 0) i = (i + 1) & mask;
+        tableKeys[i] = employeeId;
+        tableSlots[i] = slot + 1;
+    }
+
+    private void rehash(int size) {
+        tableKeys = new int[size];
+        tableSlots = new int[size];
+        for (int s = 0; s < slotCount - 1; s++) insert(slotEmployee[s], s);
+    }
+
+    // dictionary code of a department, with its present list created
+    private int departmentCode(String department) {
+        int d = departments.encode(department);
+        if (d >= deptPresent.length) {
+            int[][] bigger = new int[Math.max(d + 1, deptPresent.length * 2)][];
+            System.arraycopy(deptPresent, 0, bigger, 0, deptPresent.length);
+            deptPresent = bigger;
+            deptPresentCount = copyOf(deptPresentCount, bigger.length);
+        }
+        if (deptPresent[d] == null) deptPresent[d] = new int[4];
+        return d;
+    }
+
+    private int departmentIndex(String department) {
+        for (int d = 0; d < departments.size(); d++) {
+            if (departments.decode(d).equals(department)) return d;
+        }
+        return -1;
+    }
+
+    // department from the employee directory ("Unknown" for ids that are not employees)
+    static String departmentOf(int employeeId) {
+        Person p = OfficeSystem.findEmployeeByIdStatic(employeeId);
+        if (p instanceof Employee && ((Employee) p).getDepartment() != null) return ((Employee) p).getDepartment();
+        return UNKNOWN;
+    }
+
+    private static int mix(int x) {
+        x *= 0x9E3779B9;
+        return x ^ (x >>> 16);
+    }
+
+    private static int[] grow(int[] a) {
+        return copyOf(a, a.length * 2);
+    }
+
+    private static int[] copyOf(int[] a, int size) {
+        int[] out = new int[size];
+        System.arraycopy(a, 0, out, 0, a.length);
+        return out;
+    }
+
+    private static long[] copyOf(long[] a, int size) {
+        long[] out = new long[size];
+        System.arraycopy(a, 0, out, 0, a.length);
+        return out;
+    }
+
+    private static boolean[] copyOf(boolean[] a, int size) {
+        boolean[] out = new boolean[size];
+        System.arraycopy(a, 0, out, 0, a.length);
+        return out;
+    }
+}
@@ -1,19 +1,27 @@
 package smartoffice.v1;
 
+import java.io.IOException;
 import java.util.Scanner;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
 
 /**
  * OfficeSystem (array-based) - CLI coordinator rewritten to use arrays.
  *
  * - rooms, devices, employees use manually-resizing arrays
+ * - free-room search goes through a RoomAvailabilityIndex over all rooms
+ * - bookings survive restarts through a BookingJournal (bookings.journal + snapshot)
  * - no List, ArrayList, Collections, Map, or StringBuilder
  * - uses AttendanceManager and ConfigManager (both assumed present)
  */
 public class OfficeSystem {
     private static Room[] rooms = new Room[8];
     private static int roomCount = 0;
+    // free-room lookups across all rooms (kept current by the rooms themselves)
+    private static RoomAvailabilityIndex roomAvailability = new RoomAvailabilityIndex();
+    // durable bookings: every room's changes are journaled, and replayed at start-up
+    private static BookingJournal bookingJournal = new BookingJournal("bookings.journal");
 
     private static Device[] devices = new Device[8];
     private static int deviceCount = 0;
@@ -33,9 +41,11 @@ public class OfficeSystem {
         }
     }
 
-    private static void addRoom(Room r) {
+    private static synchronized void addRoom(Room r) {
         ensureRoomCapacity();
         rooms[roomCount++] = r;
+        roomAvailability.addRoom(r);
+        bookingJournal.addRoom(r);
     }
 
     private static void ensureDeviceCapacity() {
@@ -62,9 +72,13 @@ public class OfficeSystem {
     private static void addEmployee(Employee e) {
         ensureEmployeeCapacity();
         employees[employeeCount++] = e;
+        // scans replayed at start-up may predate the directory entry
+        attendanceManager.getOccupancy().refreshDepartments();
     }
 
     // ---------- Booking methods (overloaded / vararg) ----------
+    // Safe to call from several threads: each Room serializes its own bookings, so requests
+    // for different rooms run in parallel and an overlapping request fails with BookingException
     public static void bookRoom(int roomId, String user, String timeSlot) throws BookingException {
         Room room = findRoomById(roomId);
         if (room == null) {
@@ -74,18 +88,62 @@ public class OfficeSystem {
         String log = "BOOKED: " + booking.describe();
         configManager.log(log);
         System.out.println("Success: " + booking.describe());
+        checkpointBookingsIfDue();
+    }
+
+    // compact the booking journal every so often (outside any room lock)
+    private static void checkpointBookingsIfDue() {
+        try {
+            bookingJournal.checkpointIfDue();
+        } catch (IOException e) {
+            System.err.println("Booking journal checkpoint failed: " + e.getMessage());
+        }
     }
 
     public static void bookRoom(int roomId, String user) throws BookingException {
         bookRoom(roomId, user, "09:00-10:00"); // default slot
     }
 
-    // vararg: book multiple rooms for same user
+    // Rooms free for a whole time slot ("09:00-10:30") on a date
+    public static Room[] findFreeRooms(LocalDate date, String timeSlot) throws BookingException {
+        return roomAvailability.findFreeRooms(date, timeSlot);
+    }
+
+    // Earliest start at or after 'after' at which some room is free for 'minutes'
+    public static RoomAvailabilityIndex.Availability findEarliestFreeRoom(LocalDateTime after, int minutes) {
+        return roomAvailability.findEarliestFree(after, minutes);
+    }
+
+    // vararg: book multiple rooms for same user (default slot today), all or none
     public static void bookRoom(String user, int... roomIds) {
-        for (int id : roomIds) {
-            try { bookRoom(id, user); }
-            catch (BookingException e) { System.err.println("Could not book room " + id + ": " + e.getMessage()); }
+        try { bookRooms(user, LocalDate.now(), "09:00-10:00", roomIds); }
+        catch (BookingException e) { System.err.println("Could not book rooms: " + e.getMessage()); }
+    }
+
+    // Book the same slot in every room at once: all rooms are checked first, then booked
+    // together with one journal write and one activity-log write; any conflict books nothing
+    public static Room.Booking[] bookRooms(String user, LocalDate date, String timeSlot, int... roomIds)
+            throws BookingException {
+        if (roomIds.length == 0) throw new BookingException("No rooms given");
+        int[] slot = Room.parseSlot(timeSlot);
+        Room[] batch = new Room[roomIds.length];
+        LocalDate[] dates = new LocalDate[roomIds.length];
+        int[] starts = new int[roomIds.length];
+        int[] ends = new int[roomIds.length];
+        for (int i = 0; i < roomIds.length; i++) {
+            batch[i] = findRoomById(roomIds[i]);
+            if (batch[i] == null) throw new BookingException("Room not found: " + roomIds[i]);
+            dates[i] = date;
+            starts[i] = slot[0];
+            ends[i] = slot[1];
         }
+        Room.Booking[] made = Room.createBookings(batch, user, dates, starts, ends);
+        String[] lines = new String[made.length];
+        for (int i = 0; i < made.length; i++) lines[i] = "BOOKED: " + made[i].describe();
+        configManager.log(lines, 0, lines.length);
+        System.out.println("Success: " + made.length + " rooms booked for " + user + " on " + date + " at " + timeSlot);
+        checkpointBookingsIfDue();
+        return made;
     }
 
     // ---------- Device toggle helpers (varargs) ----------
@@ -145,7 +203,7 @@ public class OfficeSystem {
         return null;
     }
 
-    private static Room findRoomById(int id) {
+    private static synchronized Room findRoomById(int id) {
         for (int i = 0; i < roomCount; i++) {
             Room r = rooms[i];
             if (r != null && r.getRoomId() == id) return r;
@@ -193,6 +251,15 @@ public class OfficeSystem {
     // ---------- Main CLI loop ----------
     public static void main(String[] args) {
         seedData();
+        try {
+            bookingJournal.recover();
+        } catch (IOException e) {
+            // bookings taken now would not be journaled, and the exit checkpoint would skip them
+            System.err.println("Could not restore bookings: " + e.getMessage());
+            System.err.println("Not starting; repair or move aside the bookings.journal files and try again.");
+            attendanceManager.close();
+            System.exit(1);
+        }
         Scanner scanner = new Scanner(System.in);
         System.out.println("Welcome to Smart Office CLI (with Attendance via RFID)");
 
@@ -340,6 +407,13 @@ public class OfficeSystem {
         }
 
         scanner.close();
+        attendanceManager.close();
+        try {
+            bookingJournal.checkpoint();
+        } catch (IOException e) {
+            System.err.println("Booking journal checkpoint failed: " + e.getMessage());
+        }
+        bookingJournal.close();
         System.out.println("Exiting Smart Office CLI. Goodbye!");
     }
 
@@ -0,0 +1,292 @@
+package smartoffice.v1;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+/**
+ * RecurringBooking: a booking rule stored on a Room instead of one Booking per occurrence.
+ *
+ * - DAILY, WEEKLY (on chosen weekdays, every n weeks) or EVERY_N_DAYS, from a first date
+ *   until an optional last date, same minute range each time, with skipped dates (exceptions)
+ * - occursOn(date) is arithmetic on the epoch day plus a binary search of the exceptions,
+ *   so checking a booking against a year of recurrences never builds the occurrences;
+ *   Room expands a rule into Booking objects only for the dates a caller asks for
+ * - two rules can only clash when their minute ranges overlap; then their occurrences are
+ *   compared over one common period (days), not over the whole date range
+ *
+ * Addresses: recurring bookings, lazy expansion
+ */
+public class RecurringBooking {
+    public enum Frequency { DAILY, WEEKLY, EVERY_N_DAYS }
+
+    // open-ended rules run until this day (9999-12-31)
+    static final long LAST_DAY = LocalDate.of(9999, 12, 31).toEpochDay();
+
+    // "no such day" (epoch days before 1970 are negative, so -1 is a real date)
+    static final long NO_DAY = Long.MIN_VALUE;
+
+    private final String bookedBy;
+    private final Frequency frequency;
+    private final int interval;  // days (EVERY_N_DAYS) or weeks (WEEKLY), 1 for DAILY
+    private final int weekdays;  // WEEKLY: bit 0 = Monday ... bit 6 = Sunday
+    private final long firstDay;
+    private final long lastDay;
+    private final int startMinute;
+    private final int endMinute;
+
+    // skipped dates, sorted epoch days (changed only under the owning room's lock)
+    private long[] exceptions = new long[0];
+    private int exceptionCount;
+
+    // Repeats every 'interval' days (DAILY: every day) or weeks (WEEKLY: on the weekday of
+    // 'from'), from 'from' until 'until' (null = no end), for a slot such as "09:00-10:00"
+    public RecurringBooking(String bookedBy, Frequency frequency, int interval, LocalDate from, LocalDate until,
+                            String timeSlot) throws BookingException {
+        this(bookedBy, frequency, interval, weekdayBit(from.toEpochDay()), from.toEpochDay(),
+                (until == null) ? LAST_DAY : until.toEpochDay(), Room.parseSlot(timeSlot));
+    }
+
+    // Overloaded: every week on the given weekdays (e.g. MONDAY..FRIDAY for every weekday)
+    public RecurringBooking(String bookedBy, LocalDate from, LocalDate until, String timeSlot, DayOfWeek... days)
+            throws BookingException {
+        this(bookedBy, Frequency.WEEKLY, 1, weekdayMask(days), from.toEpochDay(),
+                (until == null) ? LAST_DAY : until.toEpochDay(), Room.parseSlot(timeSlot));
+    }
+
+    private RecurringBooking(String bookedBy, Frequency frequency, int interval, int weekdays, long firstDay,
+                             long lastDay, int[] slot) throws BookingException {
+        if (frequency == Frequency.DAILY) interval = 1;
+        if (interval < 1) throw new BookingException("Repeat interval must be at least 1");
+        if (frequency == Frequency.WEEKLY && weekdays == 0) throw new BookingException("No weekdays chosen");
+        if (lastDay < firstDay) throw new BookingException("Recurring booking ends before it starts");
+        this.bookedBy = bookedBy;
+        this.frequency = frequency;
+        this.interval = interval;
+        this.weekdays = (frequency == Frequency.WEEKLY) ? weekdays : 0;
+        this.firstDay = firstDay;
+        this.lastDay = Math.min(lastDay, LAST_DAY);
+        this.startMinute = slot[0];
+        this.endMinute = slot[1];
+    }
+
+    // copy with its own skipped dates (what Room hands out, so callers never share its rules)
+    private RecurringBooking(RecurringBooking other) {
+        this.bookedBy = other.bookedBy;
+        this.frequency = other.frequency;
+        this.interval = other.interval;
+        this.weekdays = other.weekdays;
+        this.firstDay = other.firstDay;
+        this.lastDay = other.lastDay;
+        this.startMinute = other.startMinute;
+        this.endMinute = other.endMinute;
+        this.exceptions = new long[other.exceptionCount];
+        System.arraycopy(other.exceptions, 0, this.exceptions, 0, other.exceptionCount);
+        this.exceptionCount = other.exceptionCount;
+    }
+
+    RecurringBooking copy() {
+        return new RecurringBooking(this);
+    }
+
+    public String getBookedBy() {
+        return bookedBy;
+    }
+
+    public Frequency getFrequency() {
+        return frequency;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public LocalDate getFirstDate() {
+        return LocalDate.ofEpochDay(firstDay);
+    }
+
+    // null if the rule has no end
+    public LocalDate getLastDate() {
+        return (lastDay == LAST_DAY) ? null : LocalDate.ofEpochDay(lastDay);
+    }
+
+    public int getStartMinute() {
+        return startMinute;
+    }
+
+    public int getEndMinute() {
+        return endMinute;
+    }
+
+    public String getTimeSlot() {
+        return Room.formatSlot(startMinute, endMinute);
+    }
+
+    public boolean occursOn(LocalDate date) {
+        return occursOn(date.toEpochDay());
+    }
+
+    public String describe() {
+        String days = "";
+        if (frequency == Frequency.WEEKLY) {
+            for (int d = 0; d < 7; d++) {
+                if ((weekdays & (1 << d)) != 0) days += (days.isEmpty() ? " on " : ",") + DayOfWeek.of(d + 1);
+            }
+        }
+        return "Recurring booking: " + bookedBy + " " + frequency + (interval > 1 ? " every " + interval : "") + days
+                + " at " + getTimeSlot() + " from " + getFirstDate()
+                + ((lastDay == LAST_DAY) ? "" : " until " + getLastDate())
+                + ((exceptionCount > 0) ? " (" + exceptionCount + " skipped)" : "");
+    }
+
+    // ---------- occurrences ----------
+    boolean occursOn(long day) {
+        return occursIgnoringExceptions(day) && !isException(day);
+    }
+
+    private boolean occursIgnoringExceptions(long day) {
+        if (day < firstDay || day > lastDay) return false;
+        if (frequency == Frequency.WEEKLY) {
+            if ((weekdays & weekdayBit(day)) == 0) return false;
+            return Math.floorMod(weekIndex(day) - weekIndex(firstDay), interval) == 0;
+        }
+        return (day - firstDay) % interval == 0;
+    }
+
+    // the occurrences repeat with this many days
+    long periodDays() {
+        return (frequency == Frequency.WEEKLY) ? 7L * interval : interval;
+    }
+
+    long firstDay() {
+        return firstDay;
+    }
+
+    long lastDay() {
+        return lastDay;
+    }
+
+    // does [startMinute, endMinute) meet this rule's minute range?
+    boolean overlapsMinutes(int start, int end) {
+        return start < endMinute && startMinute < end;
+    }
+
+    // first day in [from, to] on which both rules occur (exceptions included), or NO_DAY
+    long firstCommonDay(RecurringBooking other, long from, long to) {
+        from = Math.max(from, Math.max(firstDay, other.firstDay));
+        to = Math.min(to, Math.min(lastDay, other.lastDay));
+        // the pattern of common days repeats every lcm of the periods; skipped dates can push
+        // the first real match past one period, so keep going while matches are all skipped
+        long lcm = lcm(periodDays(), other.periodDays());
+        long patternEnd = from + lcm;
+        for (long day = from; day <= to; day++) {
+            if (occursIgnoringExceptions(day) && other.occursIgnoringExceptions(day)) {
+                if (!isException(day) && !other.isException(day)) return day;
+                patternEnd = day + lcm + 1;
+            }
+            if (day >= patternEnd) return NO_DAY;
+        }
+        return NO_DAY;
+    }
+
+    // same rule apart from its skipped dates (used to find it again from the journal)
+    boolean sameRule(RecurringBooking other) {
+        return frequency == other.frequency && interval == other.interval && weekdays == other.weekdays
+                && firstDay == other.firstDay && lastDay == other.lastDay && startMinute == other.startMinute
+                && endMinute == other.endMinute && bookedBy.equals(other.bookedBy);
+    }
+
+    // ---------- exceptions ----------
+    boolean isException(long day) {
+        return indexOfException(day) >= 0;
+    }
+
+    // skip one occurrence; false if it was already skipped
+    boolean addException(long day) {
+        int i = indexOfException(day);
+        if (i >= 0) return false;
+        i = -i - 1;
+        if (exceptionCount == exceptions.length) {
+            long[] bigger = new long[Math.max(4, exceptions.length * 2)];
+            System.arraycopy(exceptions, 0, bigger, 0, exceptionCount);
+            exceptions = bigger;
+        }
+        System.arraycopy(exceptions, i, exceptions, i + 1, exceptionCount - i);
+        exceptions[i] = day;
+        exceptionCount++;
+        return true;
+    }
+
+    // index of day in the exceptions, or -(insertion point) - 1
+    private int indexOfException(long day) {
+        int lo = 0;
+        int hi = exceptionCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (exceptions[mid] < day) lo = mid + 1;
+            else if (exceptions[mid] > day) hi = mid - 1;
+            else return mid;
+        }
+        return -lo - 1;
+    }
+
+    // ---------- journal format ----------
+    // "<frequency>|<interval>|<weekdays>|<lastDay>|<skipped days joined by '/'>|<bookedBy>",
+    // skipped days before keepFrom left out
+    String toSpec(long keepFrom) {
+        String skipped = "";
+        for (int i = 0; i < exceptionCount; i++) {
+            if (exceptions[i] < keepFrom) continue;
+            skipped += (skipped.isEmpty() ? "" : "/") + exceptions[i];
+        }
+        return frequency.name().charAt(0) + "|" + interval + "|" + weekdays + "|" + lastDay + "|" + skipped + "|"
+                + bookedBy.replace('\n', ' ').replace('\r', ' ');
+    }
+
+    static RecurringBooking fromSpec(long firstDay, int startMinute, int endMinute, String spec) throws BookingException {
+        String[] f = spec.split("\\|", 6);
+        if (f.length != 6) throw new BookingException("Bad recurring booking: " + spec);
+        Frequency frequency;
+        if (f[0].equals("D")) frequency = Frequency.DAILY;
+        else if (f[0].equals("W")) frequency = Frequency.WEEKLY;
+        else if (f[0].equals("E")) frequency = Frequency.EVERY_N_DAYS;
+        else throw new BookingException("Bad recurring booking: " + spec);
+        try {
+            RecurringBooking rule = new RecurringBooking(f[5], frequency, Integer.parseInt(f[1]), Integer.parseInt(f[2]),
+                    firstDay, Long.parseLong(f[3]), new int[] { startMinute, endMinute });
+            if (!f[4].isEmpty()) {
+                String[] days = f[4].split("/");
+                for (int i = 0; i < days.length; i++) rule.addException(Long.parseLong(days[i]));
+            }
+            return rule;
+        } catch (NumberFormatException e) {
+            throw new BookingException("Bad recurring booking: " + spec);
+        }
+    }
+
+    // ---------- calendar arithmetic ----------
+    // epoch day 0 (1970-01-01) was a Thursday; weeks start on Monday
+    private static int weekdayBit(long day) {
+        return 1 << (int) Math.floorMod(day + 3, 7L);
+    }
+
+    private static long weekIndex(long day) {
+        return Math.floorDiv(day + 3, 7L);
+    }
+
+    private static int weekdayMask(DayOfWeek[] days) {
+        int mask = 0;
+        for (int i = 0; i < days.length; i++) mask |= 1 << (days[i].getValue() - 1);
+        return mask;
+    }
+
+    private static long lcm(long a, long b) {
+        long x = a;
+        long y = b;
+        while (y != 0) {
+            long t = x % y;
+            x = y;
+            y = t;
+        }
+        return a / x * b;
+    }
+}
@@ -0,0 +1,100 @@
+package smartoffice.v1;
+
+import java.time.LocalDateTime;
+
+/**
+ * ReportRow: one employee line of an attendance report.
+ *
+ * - DAILY rows carry first check-in / last check-out of the day
+ * - PERIOD rows (weekly, monthly) carry days present over the range
+ * - both carry approximate hours and a notes column
+ */
+public class ReportRow {
+    public enum Kind { DAILY, PERIOD }
+
+    private Kind kind;
+    private int employeeId;
+    private String employeeName;
+    private LocalDateTime firstCheckIn;
+    private LocalDateTime lastCheckOut;
+    private int daysPresent;
+    private double hours;
+    private String notes;
+
+    // DAILY row
+    public ReportRow(int employeeId, String employeeName, LocalDateTime firstCheckIn, LocalDateTime lastCheckOut,
+                     double hours, String notes) {
+        this.kind = Kind.DAILY;
+        this.employeeId = employeeId;
+        this.employeeName = employeeName;
+        this.firstCheckIn = firstCheckIn;
+        this.lastCheckOut = lastCheckOut;
+        this.daysPresent = 1;
+        this.hours = hours;
+        this.notes = notes;
+    }
+
+    // Overloaded constructor: PERIOD row
+    public ReportRow(int employeeId, String employeeName, int daysPresent, double hours, String notes) {
+        this.kind = Kind.PERIOD;
+        this.employeeId = employeeId;
+        this.employeeName = employeeName;
+        this.daysPresent = daysPresent;
+        this.hours = hours;
+        this.notes = notes;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getEmployeeId() {
+        return employeeId;
+    }
+
+    public String getEmployeeName() {
+        return employeeName;
+    }
+
+    public LocalDateTime getFirstCheckIn() {
+        return firstCheckIn;
+    }
+
+    public LocalDateTime getLastCheckOut() {
+        return lastCheckOut;
+    }
+
+    public int getDaysPresent() {
+        return daysPresent;
+    }
+
+    public double getHours() {
+        return hours;
+    }
+
+    public String getNotes() {
+        return notes;
+    }
+
+    // Comma-separated line; the name is CSV-escaped when escapeName is true
+    public String format(boolean escapeName) {
+        String name = escapeName ? escapeCsv(employeeName) : employeeName;
+        if (kind == Kind.DAILY) {
+            String firstStr = (firstCheckIn == null) ? "" : EpochTime.formatIso(firstCheckIn);
+            String lastStr = (lastCheckOut == null) ? "" : EpochTime.formatIso(lastCheckOut);
+            return employeeId + "," + name + "," + firstStr + "," + lastStr + "," +
+                   String.format("%.2f", hours) + "," + notes;
+        }
+        return employeeId + "," + name + "," + daysPresent + "," + String.format("%.2f", hours) + "," + notes;
+    }
+
+    // Basic CSV escaping helper for names in output
+    private static String escapeCsv(String s) {
+        if (s == null) return "";
+        if (s.contains(",") || s.contains("\"") || s.contains("\n")) {
+            s = s.replace("\"", "\"\"");
+            return "\"" + s + "\"";
+        }
+        return s;
+    }
+}
@@ -0,0 +1,16 @@
+package smartoffice.v1;
+
+/**
+ * Destination for streamed attendance report rows.
+ *
+ * The report generator calls begin once, row once per employee (in report order),
+ * then end. Rows are not kept by the generator, so a sink decides what is retained.
+ * Sinks handle their own I/O errors (see getError on the file/console sinks).
+ */
+public interface ReportSink {
+    void begin(ReportRow.Kind kind, String title);
+
+    void row(ReportRow row);
+
+    void end();
+}
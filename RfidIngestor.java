@@ -0,0 +1,420 @@
+package smartoffice.v1;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * RfidIngestor: asynchronous intake of RFID reader scans.
+ *
+ * - readers call publish(); the scan goes into a bounded ring buffer that is allocated
+ *   once (parallel primitive arrays, no object per event)
+ * - one consumer thread ("rfid-ingest") drains the ring in batches: resolves employee names,
+ *   records the batch through AttendanceManager.recordAttendance(recs, from, to) (one
+ *   writer append per partition) and writes the batch's log lines in one ConfigManager call
+ * - back-pressure when the ring is full:
+ *     BLOCK - publish() waits for free space
+ *     DROP  - the scan is discarded and counted, publish() returns false
+ *     SPILL - the scan is appended to a spill file and ingested once the ring is empty
+ *       (a spill file left over from a previous run is ingested on start-up); the consumer
+ *       renames the file to "<spill>.ingesting" and reads it without the spill lock, so
+ *       publishers keep spilling into a fresh file meanwhile
+ * - metrics: queue depth, high-water mark, published/dropped/spilled/ingested counts
+ *
+ * Addresses: producer/consumer threads (wait/notify), batching, back-pressure
+ */
+public class RfidIngestor {
+    public enum BackPressure { BLOCK, DROP, SPILL }
+
+    private final AttendanceManager manager;
+    private final ConfigManager log; // null = no per-scan log lines
+    private final BackPressure policy;
+    private final String spillPath;
+    private final int capacity;
+    private final int batchSize;
+
+    // ring slots; slot of sequence s is s % capacity
+    private final int[] slotEmployee;
+    private final boolean[] slotCheckIn;
+    private final long[] slotSecond;
+    private final int[] slotNano;
+    private long head; // next sequence to consume
+    private long tail; // next sequence to publish
+
+    private final Object lock = new Object();
+    private final Thread consumer;
+    private boolean closed;
+    private boolean busy;         // consumer is working on a batch
+    private boolean spillWaiting; // spill file has rows not yet ingested
+
+    // spill file (guarded by spillLock)
+    private final Object spillLock = new Object();
+    private BufferedWriter spillWriter;
+
+    // metrics (guarded by lock)
+    private long publishedCount;
+    private long droppedCount;
+    private long spilledCount;
+    private long blockedCount;
+    private long ingestedCount;
+    private long batchCount;
+    private int maxQueueDepth;
+
+    public RfidIngestor(AttendanceManager manager, int capacity, BackPressure policy) {
+        this(manager, null, capacity, policy, "rfid-spill.csv");
+    }
+
+    // Overloaded constructor: log each scan through ConfigManager and choose the spill file
+    public RfidIngestor(AttendanceManager manager, ConfigManager log, int capacity, BackPressure policy,
+                        String spillPath) {
+        this.manager = manager;
+        this.log = log;
+        this.policy = policy;
+        this.spillPath = spillPath;
+        this.capacity = Math.max(1, capacity);
+        this.batchSize = Math.min(this.capacity, 512);
+        slotEmployee = new int[this.capacity];
+        slotCheckIn = new boolean[this.capacity];
+        slotSecond = new long[this.capacity];
+        slotNano = new int[this.capacity];
+        File spill = new File(spillPath);
+        spillWaiting = (spill.exists() && spill.length() > 0) || new File(takenSpillPath()).exists();
+
+        consumer = new Thread(new Runnable() {
+            public void run() {
+                consumeLoop();
+            }
+        }, "rfid-ingest");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    // Publish a scan stamped with the current time
+    public boolean publish(int employeeId, boolean isCheckIn) {
+        return publish(employeeId, isCheckIn, LocalDateTime.now());
+    }
+
+    // Overloaded: publish a scan with the reader's own timestamp.
+    // Returns false if the scan was dropped (DROP policy, closed, or spill failed).
+    public boolean publish(int employeeId, boolean isCheckIn, LocalDateTime timestamp) {
+        long second = timestamp.toEpochSecond(ZoneOffset.UTC);
+        int nano = timestamp.getNano();
+        synchronized (lock) {
+            if (closed) return false;
+            publishedCount++;
+            while (tail - head == capacity) {
+                if (policy == BackPressure.DROP) {
+                    droppedCount++;
+                    return false;
+                }
+                if (policy == BackPressure.SPILL) break;
+                blockedCount++;
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    droppedCount++;
+                    return false;
+                }
+                if (closed) {
+                    droppedCount++;
+                    return false;
+                }
+            }
+            if (tail - head < capacity) {
+                int slot = (int) (tail % capacity);
+                slotEmployee[slot] = employeeId;
+                slotCheckIn[slot] = isCheckIn;
+                slotSecond[slot] = second;
+                slotNano[slot] = nano;
+                tail++;
+                int depth = (int) (tail - head);
+                if (depth > maxQueueDepth) maxQueueDepth = depth;
+                if (depth == 1) lock.notifyAll();
+                return true;
+            }
+        }
+        return spill(employeeId, isCheckIn, second, nano);
+    }
+
+    // Wait until every scan published so far (ring and spill file) has been recorded
+    public void drain() {
+        synchronized (lock) {
+            while (tail != head || busy || spillWaiting) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        manager.flush();
+    }
+
+    // Stop accepting scans, ingest what is queued and stop the consumer thread
+    public void close() {
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (spillLock) {
+            closeSpillWriter();
+        }
+        manager.flush();
+    }
+
+    // ---------- metrics ----------
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return (int) (tail - head);
+        }
+    }
+
+    public int getMaxQueueDepth() {
+        synchronized (lock) {
+            return maxQueueDepth;
+        }
+    }
+
+    public long getPublishedCount() {
+        synchronized (lock) {
+            return publishedCount;
+        }
+    }
+
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+
+    public long getSpilledCount() {
+        synchronized (lock) {
+            return spilledCount;
+        }
+    }
+
+    // Times a publisher had to wait for space (BLOCK policy)
+    public long getBlockedCount() {
+        synchronized (lock) {
+            return blockedCount;
+        }
+    }
+
+    public long getIngestedCount() {
+        synchronized (lock) {
+            return ingestedCount;
+        }
+    }
+
+    public long getBatchCount() {
+        synchronized (lock) {
+            return batchCount;
+        }
+    }
+
+    // ---------- consumer ----------
+    private void consumeLoop() {
+        int[] employee = new int[batchSize];
+        boolean[] checkIn = new boolean[batchSize];
+        long[] second = new long[batchSize];
+        int[] nano = new int[batchSize];
+        while (true) {
+            int n;
+            boolean readSpill;
+            synchronized (lock) {
+                while (!closed && tail == head && !spillWaiting) {
+                    try { lock.wait(); } catch (InterruptedException e) { return; }
+                }
+                if (tail == head && !spillWaiting) return; // closed and empty
+                n = (int) Math.min(batchSize, tail - head);
+                for (int i = 0; i < n; i++) {
+                    int slot = (int) ((head + i) % capacity);
+                    employee[i] = slotEmployee[slot];
+                    checkIn[i] = slotCheckIn[slot];
+                    second[i] = slotSecond[slot];
+                    nano[i] = slotNano[slot];
+                }
+                head += n;
+                // the spill file is read only once the ring has been emptied
+                readSpill = (n == 0);
+                if (readSpill) spillWaiting = false;
+                busy = true;
+                lock.notifyAll(); // wake publishers waiting for space
+            }
+
+            int done = 0;
+            try {
+                if (readSpill) done = ingestSpill();
+                else done = ingest(employee, checkIn, second, nano, n);
+            } catch (RuntimeException e) {
+                System.err.println("RFID ingest batch failed: " + e.getMessage());
+            }
+
+            synchronized (lock) {
+                ingestedCount += done;
+                if (done > 0) batchCount++;
+                busy = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // build, record and log one batch; returns the number of records
+    private int ingest(int[] employee, boolean[] checkIn, long[] second, int[] nano, int n) {
+        AttendanceRecord[] recs = new AttendanceRecord[n];
+        // names repeat within a batch (check-in/out pairs); small per-batch cache
+        int[] cachedId = new int[64];
+        String[] cachedName = new String[64];
+        for (int i = 0; i < n; i++) {
+            int id = employee[i];
+            int c = (id & 0x7fffffff) % cachedId.length;
+            if (cachedName[c] == null || cachedId[c] != id) {
+                cachedId[c] = id;
+                cachedName[c] = manager.resolveEmployeeName(id);
+            }
+            recs[i] = new AttendanceRecord(id, cachedName[c], "RFID", checkIn[i], second[i], nano[i]);
+        }
+        manager.recordAttendance(recs, 0, n);
+        if (log != null) {
+            String[] lines = new String[n];
+            for (int i = 0; i < n; i++) lines[i] = "ATTEND: " + recs[i].describe();
+            log.log(lines, 0, n);
+        }
+        return n;
+    }
+
+    // ---------- spill file: "employeeId,1|0,epochSecond,nano" per line ----------
+    private boolean spill(int employeeId, boolean isCheckIn, long second, int nano) {
+        synchronized (spillLock) {
+            try {
+                if (spillWriter == null) spillWriter = new BufferedWriter(new FileWriter(spillPath, true));
+                spillWriter.write(employeeId + "," + (isCheckIn ? "1" : "0") + "," + second + "," + nano);
+                spillWriter.newLine();
+                spillWriter.flush();
+            } catch (IOException e) {
+                System.err.println("Failed to spill RFID scan: " + e.getMessage());
+                closeSpillWriter();
+                synchronized (lock) {
+                    droppedCount++;
+                }
+                return false;
+            }
+        }
+        synchronized (lock) {
+            spilledCount++;
+            spillWaiting = true;
+            lock.notifyAll();
+        }
+        return true;
+    }
+
+    // take everything in the spill file and ingest it in batches. Only the rename happens
+    // under spillLock; new scans spill into a fresh file while the taken one is read.
+    private int ingestSpill() {
+        String taken = takenSpillPath();
+        synchronized (spillLock) {
+            closeSpillWriter();
+            // a file taken by a pass that did not finish (crash) is read first
+            if (!new File(taken).exists()) {
+                // a late flag can point at rows an earlier pass already took
+                if (!new File(spillPath).exists()) return 0;
+                try {
+                    Files.move(Paths.get(spillPath), Paths.get(taken), StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    System.err.println("Failed to take RFID spill file: " + e.getMessage());
+                    return 0;
+                }
+            }
+        }
+
+        int[] employee = new int[batchSize];
+        boolean[] checkIn = new boolean[batchSize];
+        long[] second = new long[batchSize];
+        int[] nano = new int[batchSize];
+        int total = 0;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(taken));
+            int n = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length != 4) continue;
+                try {
+                    employee[n] = Integer.parseInt(parts[0]);
+                    checkIn[n] = parts[1].equals("1");
+                    second[n] = Long.parseLong(parts[2]);
+                    nano[n] = Integer.parseInt(parts[3]);
+                } catch (NumberFormatException e) {
+                    continue; // torn line
+                }
+                if (++n == batchSize) {
+                    total += ingestSpilledBatch(employee, checkIn, second, nano, n);
+                    n = 0;
+                }
+            }
+            if (n > 0) total += ingestSpilledBatch(employee, checkIn, second, nano, n);
+        } catch (IOException e) {
+            System.err.println("Failed to read RFID spill file: " + e.getMessage());
+            return total;
+        } finally {
+            if (reader != null) {
+                try { reader.close(); } catch (IOException e) { /* ignore */ }
+            }
+        }
+        manager.flush(); // spilled rows are persisted before the spill file goes away
+        try {
+            Files.deleteIfExists(Paths.get(taken));
+        } catch (IOException e) {
+            System.err.println("Failed to remove RFID spill file: " + e.getMessage());
+        }
+        // rows spilled before this pass took a leftover file are still waiting
+        synchronized (lock) {
+            if (new File(spillPath).exists()) spillWaiting = true;
+        }
+        return total;
+    }
+
+    // like a failed ring batch, a failed spill batch is reported and skipped, so the rest
+    // of the file is still ingested and the file removed
+    private int ingestSpilledBatch(int[] employee, boolean[] checkIn, long[] second, int[] nano, int n) {
+        try {
+            return ingest(employee, checkIn, second, nano, n);
+        } catch (RuntimeException e) {
+            System.err.println("RFID ingest batch failed: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private String takenSpillPath() {
+        return spillPath + ".ingesting";
+    }
+
+    // caller holds spillLock
+    private void closeSpillWriter() {
+        if (spillWriter != null) {
+            try { spillWriter.close(); } catch (IOException e) { /* ignore */ }
+            spillWriter = null;
+        }
+    }
+}
@@ -1,27 +1,74 @@
 package smartoffice.v1;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Random;
+
 /**
  * Room class with a non-static nested Booking class.
  *
  * Demonstrates:
  * - nested class (non-static)
  * - overloaded constructors
- * - simple booking list
+ * - interval bookings: a time slot ("09:00-10:30") on a date becomes a minute range
+ *   [start, end); bookings are kept in a growing array sorted by start, and since they never
+ *   overlap, a binary search finds the only neighbour a new range could collide with
+ *   (O(log n) conflict check, any number of bookings)
+ * - cancelBooking and findNextFreeSlot use the same binary search
+ * - recurring bookings (RecurringBooking) are stored as rules and expanded only for the
+ *   dates that are asked for; conflict checks test a rule arithmetically, so a new booking
+ *   is checked against a year of recurrences without building any of them
+ * - a RoomAvailabilityIndex the room is registered with is told about every change
+ * - with a BookingJournal attached, every booking and cancellation is journaled (and
+ *   fsync'ed) before the room changes; a failed journal write leaves the room unchanged
+ * - thread-safe per room: the conflict check and the insert run under the room's own lock,
+ *   so of two overlapping requests exactly one wins and the other gets a BookingException,
+ *   while bookings of different rooms proceed in parallel
+ * - createBookings: several (room, slot) pairs all or nothing; the rooms are locked in id
+ *   order (no deadlock between two batches), every pair is checked, then one journal write
+ *   covers the whole batch
+ * - run main() for a concurrent booking stress test (overlaps, lost or extra bookings, and a
+ *   stale RoomAvailabilityIndex all fail it)
  *
  * Addresses rubric items: nested class, overloaded constructors
  */
 public class Room {
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
     private int roomId;
     private String name;
+
+    // bookings sorted by start; starts/ends hold the same ranges as minutes since the epoch
+    // (epochDay * 1440 + minute of day) so searches do not touch the Booking objects
     private Booking[] bookings;
-    private bookingcount;
+    private long[] starts;
+    private long[] ends;
+    private int bookingcount;
+
+    // recurring rules (few per room); occurrences are never stored
+    private RecurringBooking[] rules = new RecurringBooking[0];
+    private int ruleCount;
+
+    // findNextFreeSlot gives up after this many days (recurring rules can fill every day)
+    static final int MAX_SEARCH_DAYS = 366;
+
+    // office-wide free-room index this room reports its changes to (null if none)
+    private RoomAvailabilityIndex availability;
+    private int availabilityBit;
+
+    // durable log of this room's changes (null if none) and the sequence of its last entry
+    private BookingJournal journal;
+    private long journalSeq;
 
     // Constructor
     public Room(int roomId, String name) {
         this.roomId = roomId;
         this.name = name;
         this.bookings = new Booking[10];
-        this.bookingcount=0;
+        this.starts = new long[10];
+        this.ends = new long[10];
+        this.bookingcount = 0;
     }
 
     // Overloaded constructor
@@ -37,63 +84,628 @@ public class Room {
         return name;
     }
 
-    public Bookings[] getBookings() {
-        return bookings;
+    public synchronized int getBookingCount() {
+        return bookingcount;
+    }
+
+    // All single bookings in start order (recurring ones: getRecurringBookings)
+    public synchronized Booking[] getBookings() {
+        Booking[] out = new Booking[bookingcount];
+        System.arraycopy(bookings, 0, out, 0, bookingcount);
+        return out;
     }
 
-    // Book the room (creates a Booking object)
+    // Overloaded: bookings of one date in start order, recurring occurrences included
+    public synchronized Booking[] getBookings(LocalDate date) {
+        long day = date.toEpochDay();
+        long dayStart = day * MINUTES_PER_DAY;
+        int from = firstEndingAfter(dayStart);
+        int to = firstStartingAtOrAfter(dayStart + MINUTES_PER_DAY);
+        int singles = Math.max(0, to - from);
+        int n = singles;
+        for (int r = 0; r < ruleCount; r++) {
+            if (rules[r].occursOn(day)) n++;
+        }
+        Booking[] out = new Booking[n];
+        System.arraycopy(bookings, from, out, 0, singles);
+        // insert the day's occurrences by start (they never overlap the single bookings)
+        for (int r = 0; r < ruleCount && singles < n; r++) {
+            if (!rules[r].occursOn(day)) continue;
+            Booking b = new Booking(rules[r], date);
+            int k = singles++;
+            while (k > 0 && out[k - 1].getStartMinute() > b.getStartMinute()) {
+                out[k] = out[k - 1];
+                k--;
+            }
+            out[k] = b;
+        }
+        return out;
+    }
+
+    // Copies of the recurring booking rules of this room (cancelRecurringBooking accepts them)
+    public synchronized RecurringBooking[] getRecurringBookings() {
+        RecurringBooking[] out = new RecurringBooking[ruleCount];
+        for (int r = 0; r < ruleCount; r++) out[r] = rules[r].copy();
+        return out;
+    }
+
+    // Book the room for today (creates a Booking object)
     public Booking createBooking(String bookedBy, String timeSlot) throws BookingException {
-        // Simple check: prevent duplicate timeSlot
-        for (Booking b : this.bookings) {
-            if (b.getTimeSlot().equals(timeSlot)) {
-                throw new BookingException("Time slot already booked: " + timeSlot);
+        return createBooking(bookedBy, LocalDate.now(), timeSlot);
+    }
+
+    // Overloaded: book a time slot such as "09:00-10:30" on a date
+    public Booking createBooking(String bookedBy, LocalDate date, String timeSlot) throws BookingException {
+        int[] slot = parseSlot(timeSlot);
+        return createBooking(bookedBy, date, slot[0], slot[1]);
+    }
+
+    // Overloaded: book [startMinute, endMinute) of a date (minutes of the day, end may be 1440)
+    public synchronized Booking createBooking(String bookedBy, LocalDate date, int startMinute, int endMinute)
+            throws BookingException {
+        checkRange(startMinute, endMinute);
+        long start = date.toEpochDay() * MINUTES_PER_DAY + startMinute;
+        long end = date.toEpochDay() * MINUTES_PER_DAY + endMinute;
+        int clash = findOverlap(start, end);
+        if (clash >= 0) {
+            throw new BookingException("Time slot " + formatSlot(startMinute, endMinute) + " on " + date
+                    + " overlaps " + bookings[clash].getTimeSlot());
+        }
+        RecurringBooking rule = ruleOverlap(date.toEpochDay(), startMinute, endMinute);
+        if (rule != null) {
+            throw new BookingException("Time slot " + formatSlot(startMinute, endMinute) + " on " + date
+                    + " overlaps recurring " + rule.getTimeSlot() + " of " + rule.getBookedBy());
+        }
+        if (journal != null) {
+            try {
+                journalSeq = journal.logCreate(this, bookedBy, date, startMinute, endMinute);
+            } catch (IOException e) {
+                throw new BookingException("Could not record booking: " + e.getMessage());
             }
         }
-        Booking b = new Booking(bookedBy, timeSlot);
-        this.bookings[this.bookingcount++]= b;
+        Booking b = new Booking(bookedBy, date, startMinute, endMinute);
+        insert(b, start, end);
+        if (availability != null) availability.roomChanged(this, availabilityBit, date);
         return b;
     }
 
-    // Simple method to cancel a booking
+    // Is [startMinute, endMinute) of the date free?
+    public synchronized boolean isFree(LocalDate date, int startMinute, int endMinute) {
+        long dayStart = date.toEpochDay() * MINUTES_PER_DAY;
+        return findOverlap(dayStart + startMinute, dayStart + endMinute) < 0
+                && ruleOverlap(date.toEpochDay(), startMinute, endMinute) == null;
+    }
+
+    // Cancel today's booking of a time slot
     public boolean cancelBooking(String bookedBy, String timeSlot) {
-        Booking toRemove = null;
-        int index=0;
-        for (int i=0;  i<this.bookings.length; i++) {
-            b= this.bookings[i];
-            if (b.getBookedBy().equals(bookedBy) && b.getTimeSlot().equals(timeSlot)) {
-                toRemove = b;
-                index=i;
-                break;
-            }
-        }
-        if (toRemove != null) {
-            bookings[i]= null;
+        return cancelBooking(bookedBy, LocalDate.now(), timeSlot);
+    }
+
+    // Overloaded: cancel the booking of exactly this slot on this date, made by bookedBy
+    // (an occurrence of a recurring booking is skipped, the rule stays)
+    public synchronized boolean cancelBooking(String bookedBy, LocalDate date, String timeSlot) {
+        int[] slot;
+        try {
+            slot = parseSlot(timeSlot);
+        } catch (BookingException e) {
+            return false;
+        }
+        long dayStart = date.toEpochDay() * MINUTES_PER_DAY;
+        int i = firstStartingAtOrAfter(dayStart + slot[0]);
+        if (i == bookingcount || starts[i] != dayStart + slot[0] || ends[i] != dayStart + slot[1]) {
+            return skipOccurrence(bookedBy, date, slot[0], slot[1]);
+        }
+        if (!bookings[i].getBookedBy().equals(bookedBy)) return false;
+        if (journal != null) {
+            try {
+                journalSeq = journal.logCancel(this, bookedBy, date, slot[0], slot[1]);
+            } catch (IOException e) {
+                System.err.println("Could not record cancellation: " + e.getMessage());
+                return false;
+            }
+        }
+        remove(i);
+        if (availability != null) availability.roomChanged(this, availabilityBit, date);
+        return true;
+    }
+
+    // Book entry i = (rooms[i], dates[i], [startMinutes[i], endMinutes[i])) for every i, or
+    // none of them: the first conflicting pair fails the whole batch with a BookingException
+    static Booking[] createBookings(Room[] rooms, String bookedBy, LocalDate[] dates, int[] startMinutes,
+                                    int[] endMinutes) throws BookingException {
+        // distinct rooms sorted by id: every batch takes the locks in the same order
+        Room[] order = new Room[rooms.length];
+        int distinct = 0;
+        for (int i = 0; i < rooms.length; i++) {
+            boolean seen = false;
+            for (int k = 0; k < distinct; k++) {
+                if (order[k] == rooms[i]) seen = true;
+            }
+            if (seen) continue;
+            int k = distinct++;
+            while (k > 0 && order[k - 1].roomId > rooms[i].roomId) {
+                order[k] = order[k - 1];
+                k--;
+            }
+            order[k] = rooms[i];
+        }
+        return lockAndCreate(order, distinct, 0, rooms, bookedBy, dates, startMinutes, endMinutes);
+    }
+
+    // hold the locks of order[0..k) and take the rest, innermost creates the batch
+    private static Booking[] lockAndCreate(Room[] order, int distinct, int k, Room[] rooms, String bookedBy,
+                                           LocalDate[] dates, int[] startMinutes, int[] endMinutes)
+            throws BookingException {
+        if (k == distinct) return createLocked(rooms, bookedBy, dates, startMinutes, endMinutes);
+        synchronized (order[k]) {
+            return lockAndCreate(order, distinct, k + 1, rooms, bookedBy, dates, startMinutes, endMinutes);
+        }
+    }
+
+    // caller holds every room's lock
+    private static Booking[] createLocked(Room[] rooms, String bookedBy, LocalDate[] dates, int[] startMinutes,
+                                          int[] endMinutes) throws BookingException {
+        int n = rooms.length;
+        BookingJournal journal = (n > 0) ? rooms[0].journal : null;
+        for (int i = 0; i < n; i++) {
+            Room room = rooms[i];
+            String what = room.name + " (" + room.roomId + ") " + formatSlot(startMinutes[i], endMinutes[i])
+                    + " on " + dates[i];
+            checkRange(startMinutes[i], endMinutes[i]);
+            if (!room.isFree(dates[i], startMinutes[i], endMinutes[i])) throw new BookingException(what + " is taken");
+            for (int k = 0; k < i; k++) {
+                if (rooms[k] == room && dates[k].equals(dates[i])
+                        && startMinutes[k] < endMinutes[i] && startMinutes[i] < endMinutes[k]) {
+                    throw new BookingException(what + " is requested twice");
+                }
+            }
+            if (room.journal != journal) throw new BookingException(what + ": rooms do not share a booking journal");
+        }
+        long lastSeq = 0;
+        if (journal != null) {
+            try {
+                lastSeq = journal.logCreates(rooms, bookedBy, dates, startMinutes, endMinutes, n);
+            } catch (IOException e) {
+                throw new BookingException("Could not record bookings: " + e.getMessage());
+            }
+        }
+        Booking[] made = new Booking[n];
+        for (int i = 0; i < n; i++) {
+            Room room = rooms[i];
+            if (journal != null) room.journalSeq = lastSeq - n + 1 + i;
+            long dayStart = dates[i].toEpochDay() * MINUTES_PER_DAY;
+            made[i] = room.new Booking(bookedBy, dates[i], startMinutes[i], endMinutes[i]);
+            room.insert(made[i], dayStart + startMinutes[i], dayStart + endMinutes[i]);
+            if (room.availability != null) room.availability.roomChanged(room, room.availabilityBit, dates[i]);
+        }
+        return made;
+    }
+
+    // skip the occurrence of bookedBy's recurring booking with this slot on this date
+    private boolean skipOccurrence(String bookedBy, LocalDate date, int startMinute, int endMinute) {
+        long day = date.toEpochDay();
+        for (int r = 0; r < ruleCount; r++) {
+            RecurringBooking rule = rules[r];
+            if (rule.getStartMinute() != startMinute || rule.getEndMinute() != endMinute) continue;
+            if (!rule.getBookedBy().equals(bookedBy) || !rule.occursOn(day)) continue;
+            if (journal != null) {
+                try {
+                    journalSeq = journal.logSkip(this, bookedBy, date, startMinute, endMinute);
+                } catch (IOException e) {
+                    System.err.println("Could not record cancellation: " + e.getMessage());
+                    return false;
+                }
+            }
+            rule.addException(day);
+            if (availability != null) availability.roomChanged(this, availabilityBit, date);
             return true;
         }
         return false;
     }
 
+    // Add a recurring booking; fails if any occurrence would overlap a booking or another rule
+    public synchronized RecurringBooking addRecurringBooking(RecurringBooking rule) throws BookingException {
+        // single bookings inside the rule's date range, checked against the rule's pattern
+        int from = firstEndingAfter(rule.firstDay() * MINUTES_PER_DAY);
+        int to = firstStartingAtOrAfter((rule.lastDay() + 1) * MINUTES_PER_DAY);
+        for (int i = from; i < to; i++) {
+            long day = Math.floorDiv(starts[i], MINUTES_PER_DAY);
+            int s = (int) (starts[i] - day * MINUTES_PER_DAY);
+            int e = (int) (ends[i] - day * MINUTES_PER_DAY);
+            if (rule.overlapsMinutes(s, e) && rule.occursOn(day)) {
+                throw new BookingException(rule.describe() + " overlaps " + bookings[i].getTimeSlot() + " on "
+                        + bookings[i].getDate());
+            }
+        }
+        for (int r = 0; r < ruleCount; r++) {
+            if (!rules[r].overlapsMinutes(rule.getStartMinute(), rule.getEndMinute())) continue;
+            long day = rules[r].firstCommonDay(rule, Long.MIN_VALUE, Long.MAX_VALUE);
+            if (day != RecurringBooking.NO_DAY) {
+                throw new BookingException(rule.describe() + " overlaps recurring " + rules[r].getTimeSlot() + " of "
+                        + rules[r].getBookedBy() + " on " + LocalDate.ofEpochDay(day));
+            }
+        }
+        if (journal != null) {
+            try {
+                journalSeq = journal.logRule(this, true, rule);
+            } catch (IOException e) {
+                throw new BookingException("Could not record booking: " + e.getMessage());
+            }
+        }
+        if (ruleCount == rules.length) {
+            RecurringBooking[] bigger = new RecurringBooking[Math.max(4, rules.length * 2)];
+            System.arraycopy(rules, 0, bigger, 0, ruleCount);
+            rules = bigger;
+        }
+        rules[ruleCount++] = rule;
+        if (availability != null) availability.roomChangedAll();
+        return rule;
+    }
+
+    // Remove a recurring booking (every future and past occurrence)
+    public synchronized boolean cancelRecurringBooking(RecurringBooking rule) {
+        for (int r = 0; r < ruleCount; r++) {
+            if (rules[r] != rule && !rules[r].sameRule(rule)) continue;
+            if (journal != null) {
+                try {
+                    journalSeq = journal.logRule(this, false, rules[r]);
+                } catch (IOException e) {
+                    System.err.println("Could not record cancellation: " + e.getMessage());
+                    return false;
+                }
+            }
+            System.arraycopy(rules, r + 1, rules, r, ruleCount - r - 1);
+            rules[--ruleCount] = null;
+            if (availability != null) availability.roomChangedAll();
+            return true;
+        }
+        return false;
+    }
+
+    // Earliest start at or after 'after' where the room is free for 'minutes' without
+    // running past midnight (a slot never spans two dates); null if there is none within
+    // MAX_SEARCH_DAYS days
+    public synchronized LocalDateTime findNextFreeSlot(LocalDateTime after, int minutes) {
+        if (minutes <= 0 || minutes > MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Duration must be 1.." + MINUTES_PER_DAY + " minutes");
+        }
+        long t = after.toLocalDate().toEpochDay() * MINUTES_PER_DAY
+                + after.getHour() * 60 + after.getMinute() + ((after.getSecond() > 0 || after.getNano() > 0) ? 1 : 0);
+        long searchEnd = t + (long) MAX_SEARCH_DAYS * MINUTES_PER_DAY;
+        int i = firstEndingAfter(t);
+        while (t < searchEnd) {
+            long day = Math.floorDiv(t, MINUTES_PER_DAY);
+            long dayEnd = day * MINUTES_PER_DAY + MINUTES_PER_DAY;
+            if (t + minutes > dayEnd) {
+                t = dayEnd;
+                continue;
+            }
+            while (i < bookingcount && ends[i] <= t) i++;
+            if (i < bookingcount && starts[i] < t + minutes) {
+                t = ends[i];
+                continue;
+            }
+            int m = (int) (t - day * MINUTES_PER_DAY);
+            RecurringBooking rule = ruleOverlap(day, m, m + minutes);
+            if (rule == null) return minuteToDateTime(t);
+            t = day * MINUTES_PER_DAY + rule.getEndMinute();
+        }
+        return null;
+    }
+
+    // called by RoomAvailabilityIndex.addRoom
+    synchronized void attachIndex(RoomAvailabilityIndex index, int bit) {
+        this.availability = index;
+        this.availabilityBit = bit;
+    }
+
+    // called by BookingJournal once its replay is done
+    synchronized void attachJournal(BookingJournal journal) {
+        this.journal = journal;
+    }
+
+    // sequence number of this room's last journal entry (for snapshots)
+    synchronized long getJournalSeq() {
+        return journalSeq;
+    }
+
+    // a rule with an occurrence on 'day' that meets [startMinute, endMinute), or null
+    private RecurringBooking ruleOverlap(long day, int startMinute, int endMinute) {
+        for (int r = 0; r < ruleCount; r++) {
+            if (rules[r].overlapsMinutes(startMinute, endMinute) && rules[r].occursOn(day)) return rules[r];
+        }
+        return null;
+    }
+
+    // ---------- sorted interval array ----------
+    // index of a booking overlapping [start, end), or -1
+    private int findOverlap(long start, long end) {
+        // only the last booking starting before 'end' can reach into the range
+        int i = firstStartingAtOrAfter(end) - 1;
+        return (i >= 0 && ends[i] > start) ? i : -1;
+    }
+
+    // first index whose start >= minute (bookingcount if none)
+    private int firstStartingAtOrAfter(long minute) {
+        int lo = 0;
+        int hi = bookingcount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] < minute) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // first index whose end > minute (ends are sorted too, bookings do not overlap)
+    private int firstEndingAfter(long minute) {
+        int lo = 0;
+        int hi = bookingcount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ends[mid] <= minute) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private void insert(Booking b, long start, long end) {
+        if (bookingcount == bookings.length) {
+            int n = bookings.length * 2;
+            Booking[] biggerBookings = new Booking[n];
+            long[] biggerStarts = new long[n];
+            long[] biggerEnds = new long[n];
+            System.arraycopy(bookings, 0, biggerBookings, 0, bookingcount);
+            System.arraycopy(starts, 0, biggerStarts, 0, bookingcount);
+            System.arraycopy(ends, 0, biggerEnds, 0, bookingcount);
+            bookings = biggerBookings;
+            starts = biggerStarts;
+            ends = biggerEnds;
+        }
+        int i = firstStartingAtOrAfter(start);
+        System.arraycopy(bookings, i, bookings, i + 1, bookingcount - i);
+        System.arraycopy(starts, i, starts, i + 1, bookingcount - i);
+        System.arraycopy(ends, i, ends, i + 1, bookingcount - i);
+        bookings[i] = b;
+        starts[i] = start;
+        ends[i] = end;
+        bookingcount++;
+    }
+
+    private void remove(int i) {
+        System.arraycopy(bookings, i + 1, bookings, i, bookingcount - i - 1);
+        System.arraycopy(starts, i + 1, starts, i, bookingcount - i - 1);
+        System.arraycopy(ends, i + 1, ends, i, bookingcount - i - 1);
+        bookingcount--;
+        bookings[bookingcount] = null;
+    }
+
+    // ---------- time slots ----------
+    // "HH:mm-HH:mm" -> {startMinute, endMinute}; "24:00" is allowed as an end
+    static int[] parseSlot(String timeSlot) throws BookingException {
+        if (timeSlot == null) throw new BookingException("Missing time slot");
+        int dash = timeSlot.indexOf('-');
+        if (dash < 0) throw new BookingException("Time slot must look like 09:00-10:00: " + timeSlot);
+        int start = parseMinute(timeSlot.substring(0, dash).trim(), timeSlot);
+        int end = parseMinute(timeSlot.substring(dash + 1).trim(), timeSlot);
+        checkRange(start, end);
+        return new int[] { start, end };
+    }
+
+    private static int parseMinute(String hhmm, String timeSlot) throws BookingException {
+        int colon = hhmm.indexOf(':');
+        try {
+            if (colon < 1 || hhmm.length() - colon != 3) throw new NumberFormatException();
+            int h = Integer.parseInt(hhmm.substring(0, colon));
+            int m = Integer.parseInt(hhmm.substring(colon + 1));
+            if (h < 0 || m < 0 || m > 59) throw new NumberFormatException();
+            return h * 60 + m;
+        } catch (NumberFormatException e) {
+            throw new BookingException("Time slot must look like 09:00-10:00: " + timeSlot);
+        }
+    }
+
+    private static void checkRange(int startMinute, int endMinute) throws BookingException {
+        if (startMinute < 0 || endMinute > MINUTES_PER_DAY || startMinute >= endMinute) {
+            throw new BookingException("Invalid time slot " + formatSlot(startMinute, endMinute));
+        }
+    }
+
+    static String formatSlot(int startMinute, int endMinute) {
+        return formatMinute(startMinute) + "-" + formatMinute(endMinute);
+    }
+
+    private static String formatMinute(int minute) {
+        int h = minute / 60;
+        int m = minute % 60;
+        return ((h < 10) ? "0" : "") + h + ":" + ((m < 10) ? "0" : "") + m;
+    }
+
+    private static LocalDateTime minuteToDateTime(long minute) {
+        return LocalDate.ofEpochDay(Math.floorDiv(minute, MINUTES_PER_DAY)).atStartOfDay()
+                .plusMinutes(Math.floorMod(minute, MINUTES_PER_DAY));
+    }
+
     // Non-static nested class (inner class) representing a Booking
     public class Booking {
         private String bookedBy;
-        private String timeSlot;
+        private LocalDate date;
+        private int startMinute;
+        private int endMinute;
+        private RecurringBooking rule; // null unless this is an occurrence of a rule
 
         // Booking constructor
-        public Booking(String bookedBy, String timeSlot) {
+        public Booking(String bookedBy, LocalDate date, int startMinute, int endMinute) {
             this.bookedBy = bookedBy;
-            this.timeSlot = timeSlot;
+            this.date = date;
+            this.startMinute = startMinute;
+            this.endMinute = endMinute;
+        }
+
+        // Overloaded constructor: one occurrence of a recurring booking
+        Booking(RecurringBooking rule, LocalDate date) {
+            this(rule.getBookedBy(), date, rule.getStartMinute(), rule.getEndMinute());
+            this.rule = rule;
+        }
+
+        public boolean isRecurring() {
+            return rule != null;
+        }
+
+        // the rule this occurrence comes from (null for a single booking)
+        public RecurringBooking getRule() {
+            return rule;
         }
 
         public String getBookedBy() {
             return bookedBy;
         }
 
+        public LocalDate getDate() {
+            return date;
+        }
+
+        // minutes of the day, end exclusive
+        public int getStartMinute() {
+            return startMinute;
+        }
+
+        public int getEndMinute() {
+            return endMinute;
+        }
+
         public String getTimeSlot() {
-            return timeSlot;
+            return formatSlot(startMinute, endMinute);
+        }
+
+        public Room getRoom() {
+            return Room.this;
         }
 
         public String describe() {
-            return "Booking: " + bookedBy + " at " + timeSlot + " in " + Room.this.name;
+            return "Booking: " + bookedBy + " on " + date + " at " + getTimeSlot() + " in " + Room.this.name;
+        }
+    }
+
+    // ---------- stress test ----------
+    // java smartoffice.v1.Room [rooms] [threads] [operationsPerThread]
+    // Threads book, batch-book (two rooms at once), cancel and query free rooms on the same few
+    // rooms and dates. Afterwards no room may hold overlapping bookings, the live bookings must
+    // equal the successful bookings minus the cancellations, and the availability index must
+    // agree with isFree for every quarter hour. Exits with status 1 otherwise.
+    public static void main(String[] args) throws Exception {
+        final int roomCount = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+        int threadCount = (args.length > 1) ? Integer.parseInt(args[1]) : 16;
+        final int operations = (args.length > 2) ? Integer.parseInt(args[2]) : 20000;
+        final int days = 3;
+        final LocalDate first = LocalDate.of(2026, 1, 5);
+        final RoomAvailabilityIndex index = new RoomAvailabilityIndex();
+        final Room[] rooms = new Room[roomCount];
+        for (int i = 0; i < roomCount; i++) {
+            rooms[i] = new Room(i + 1);
+            index.addRoom(rooms[i]);
+        }
+
+        // per thread: [0] bookings made, [1] cancellations (each thread writes only its own row)
+        final long[][] counts = new long[threadCount][2];
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[threadCount];
+        long started = System.nanoTime();
+        for (int t = 0; t < threadCount; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    Random random = new Random(thread);
+                    String me = "t" + thread;
+                    try {
+                        for (int k = 0; k < operations; k++) {
+                            Room room = rooms[random.nextInt(roomCount)];
+                            LocalDate date = first.plusDays(random.nextInt(days));
+                            int start = 480 + random.nextInt(40) * 15;
+                            int end = start + 15 * (1 + random.nextInt(4));
+                            int op = random.nextInt(10);
+                            if (op < 5) {
+                                try {
+                                    room.createBooking(me, date, start, end);
+                                    counts[thread][0]++;
+                                } catch (BookingException e) {
+                                    // taken: expected under contention
+                                }
+                            } else if (op < 7) {
+                                Room other = rooms[random.nextInt(roomCount)];
+                                try {
+                                    Booking[] made = createBookings(new Room[] { room, other }, me,
+                                            new LocalDate[] { date, date }, new int[] { start, end },
+                                            new int[] { end, end + 15 });
+                                    counts[thread][0] += made.length;
+                                } catch (BookingException e) {
+                                    // one of the two taken: neither may have been booked
+                                }
+                            } else if (op < 9) {
+                                Booking[] booked = room.getBookings(date);
+                                if (booked.length == 0) continue;
+                                Booking b = booked[random.nextInt(booked.length)];
+                                if (room.cancelBooking(b.getBookedBy(), date, b.getTimeSlot())) counts[thread][1]++;
+                            } else {
+                                index.findFreeRooms(date, start, end);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failure) {
+                            if (failure[0] == null) failure[0] = e;
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threadCount; t++) threads[t].join();
+        long nanos = System.nanoTime() - started;
+
+        long made = 0;
+        long cancelled = 0;
+        for (int t = 0; t < threadCount; t++) {
+            made += counts[t][0];
+            cancelled += counts[t][1];
+        }
+        String problem = null;
+        if (failure[0] != null) problem = "a thread failed: " + failure[0];
+        long live = 0;
+        for (int i = 0; i < roomCount && problem == null; i++) {
+            Booking[] booked = rooms[i].getBookings();
+            live += booked.length;
+            for (int k = 1; k < booked.length; k++) {
+                long prevEnd = booked[k - 1].getDate().toEpochDay() * MINUTES_PER_DAY + booked[k - 1].getEndMinute();
+                long start = booked[k].getDate().toEpochDay() * MINUTES_PER_DAY + booked[k].getStartMinute();
+                if (start < prevEnd) problem = "overlap in " + rooms[i].getName() + ": " + booked[k - 1].describe()
+                        + " / " + booked[k].describe();
+            }
+        }
+        if (problem == null && live != made - cancelled) {
+            problem = live + " live bookings, expected " + made + " made - " + cancelled + " cancelled";
+        }
+        for (int d = 0; d < days && problem == null; d++) {
+            LocalDate date = first.plusDays(d);
+            for (int m = 0; m < MINUTES_PER_DAY && problem == null; m += 15) {
+                Room[] free = index.findFreeRooms(date, m, m + 15);
+                int f = 0;
+                for (int i = 0; i < roomCount; i++) {
+                    boolean expected = rooms[i].isFree(date, m, m + 15);
+                    boolean listed = f < free.length && free[f] == rooms[i];
+                    if (listed) f++;
+                    if (expected != listed) problem = "index disagrees with " + rooms[i].getName() + " on " + date
+                            + " at " + formatSlot(m, m + 15);
+                }
+            }
+        }
+
+        System.out.println(threadCount + " threads x " + operations + " operations on " + roomCount + " rooms: "
+                + made + " booked, " + cancelled + " cancelled, " + live + " live, "
+                + String.format("%.0f", (double) threadCount * operations * 1_000_000_000.0 / nanos) + " ops/s");
+        if (problem != null) {
+            System.out.println("FAILED: " + problem);
+            System.exit(1);
         }
+        System.out.println("OK: no overlaps, counts match, index consistent");
     }
 }
@@ -0,0 +1,310 @@
+package smartoffice.v1;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * RoomAvailabilityIndex: office-wide "which rooms are free" lookups without scanning bookings.
+ *
+ * - one bitmap per 15-minute slot of a day, one bit per room: the bit is set when any
+ *   booking of the room overlaps the slot (96 slots x rooms/64 longs per day)
+ * - findFreeRooms(date, start, end): OR of the busy bitmaps of the slots the range covers;
+ *   a slot only partly covered by the range is confirmed with Room.isFree for the rooms it
+ *   flags, so the answer is exact for any minute range
+ * - findEarliestFree(after, minutes): the same answer as the earliest Room.findNextFreeSlot
+ *   over all rooms (any minute, the partly covered first slot included, following days up to
+ *   Room.MAX_SEARCH_DAYS); per slot the busy bitmaps narrow the rooms down, and only rooms
+ *   that are busy in a partly covered slot are confirmed with Room.isFree
+ * - days are built on first use from each room's bookings of that date and then kept up to
+ *   date by the rooms (Room.createBooking / cancelBooking call roomChanged); at most
+ *   MAX_CACHED_DAYS days are kept, least recently used dropped first
+ *
+ * Rooms call in while holding their own lock, so the index never calls a Room while it holds
+ * its lock: candidates are collected first and confirmed afterwards.
+ *
+ * Addresses: free-room search over thousands of rooms in microseconds
+ */
+public class RoomAvailabilityIndex {
+    public static final int SLOT_MINUTES = 15;
+    private static final int SLOTS = Room.MINUTES_PER_DAY / SLOT_MINUTES;
+    private static final int MAX_CACHED_DAYS = 64;
+
+    // registered rooms; a room's position is its bit number
+    private Room[] rooms = new Room[16];
+    private int roomCount;
+
+    // cached days (unsorted, few): epoch day, busy[slot][word], LRU stamp
+    private long[] dayKeys = new long[8];
+    private long[][][] dayBusy = new long[8][][];
+    private long[] dayUsed = new long[8];
+    private int dayCount;
+    private long useClock;
+    // bumped by every change, so a day built outside the lock is only cached if still current
+    private long changes;
+
+    // Register a room (its bookings are picked up when a day is built or changes)
+    public void addRoom(Room room) {
+        int bit;
+        synchronized (this) {
+            if (roomCount == rooms.length) {
+                Room[] bigger = new Room[rooms.length * 2];
+                System.arraycopy(rooms, 0, bigger, 0, roomCount);
+                rooms = bigger;
+            }
+            bit = roomCount;
+            rooms[roomCount++] = room;
+            // days cached (or being built) with the old room count have no word for the new
+            // bit: drop them before the room can report a change
+            dayCount = 0;
+            changes++;
+        }
+        // outside the lock (the room's lock is taken first everywhere else); days built before
+        // the room reports its changes may miss a booking it took meanwhile, so drop them again
+        room.attachIndex(this, bit);
+        roomChangedAll();
+    }
+
+    public synchronized int getRoomCount() {
+        return roomCount;
+    }
+
+    // A room's bookings of 'date' changed: recompute its bits for that day if cached
+    void roomChanged(Room room, int roomBit, LocalDate date) {
+        Room.Booking[] bookings = room.getBookings(date);
+        synchronized (this) {
+            int d = findDay(date.toEpochDay());
+            if (d >= 0) setRoomBits(dayBusy[d], roomBit, bookings);
+            changes++;
+        }
+    }
+
+    // A room's bookings changed on many days at once: drop every cached day
+    synchronized void roomChangedAll() {
+        dayCount = 0;
+        changes++;
+    }
+
+    // Rooms with no booking overlapping [startMinute, endMinute) of the date, in registration order
+    public Room[] findFreeRooms(LocalDate date, int startMinute, int endMinute) {
+        if (startMinute < 0 || endMinute > Room.MINUTES_PER_DAY || startMinute >= endMinute) {
+            throw new IllegalArgumentException("Invalid range " + Room.formatSlot(startMinute, endMinute));
+        }
+        DayView view = view(date);
+        long[] free;
+        long[] edge;
+        Room[] snapshot = view.rooms;
+        synchronized (this) {
+            long[][] busy = view.busy;
+            int words = busy[0].length;
+            free = new long[words];
+            edge = new long[words];
+            int first = startMinute / SLOT_MINUTES;
+            int last = (endMinute - 1) / SLOT_MINUTES;
+            for (int w = 0; w < words; w++) free[w] = roomMask(view.roomCount, w);
+            for (int s = first; s <= last; s++) {
+                boolean partial = s * SLOT_MINUTES < startMinute || (s + 1) * SLOT_MINUTES > endMinute;
+                for (int w = 0; w < words; w++) {
+                    if (partial) edge[w] |= busy[s][w];
+                    else free[w] &= ~busy[s][w];
+                }
+            }
+        }
+        // rooms busy only in a partly covered slot may still be free for the exact range
+        Room[] out = new Room[0];
+        int n = 0;
+        for (int w = 0; w < free.length; w++) {
+            long bits = free[w];
+            while (bits != 0) {
+                int bit = w * 64 + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if ((edge[w] & (1L << bit)) != 0 && !snapshot[bit].isFree(date, startMinute, endMinute)) continue;
+                if (n == out.length) {
+                    Room[] bigger = new Room[Math.max(8, n * 2)];
+                    System.arraycopy(out, 0, bigger, 0, n);
+                    out = bigger;
+                }
+                out[n++] = snapshot[bit];
+            }
+        }
+        Room[] trimmed = new Room[n];
+        System.arraycopy(out, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
+    // Overloaded: time slot such as "09:00-10:30"
+    public Room[] findFreeRooms(LocalDate date, String timeSlot) throws BookingException {
+        int[] slot = Room.parseSlot(timeSlot);
+        return findFreeRooms(date, slot[0], slot[1]);
+    }
+
+    // Earliest start at or after 'after' (to the minute, like Room.findNextFreeSlot) at which
+    // some room is free for 'minutes' without running past midnight; the following days are
+    // searched too, up to Room.MAX_SEARCH_DAYS. null if no room has such a gap.
+    public Availability findEarliestFree(LocalDateTime after, int minutes) {
+        if (minutes <= 0 || minutes > Room.MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Duration must be 1.." + Room.MINUTES_PER_DAY + " minutes");
+        }
+        long firstDay = after.toLocalDate().toEpochDay();
+        int firstMinute = after.getHour() * 60 + after.getMinute() + ((after.getSecond() > 0 || after.getNano() > 0) ? 1 : 0);
+        for (int d = 0; d < Room.MAX_SEARCH_DAYS; d++) {
+            Availability found = earliestFreeOn(LocalDate.ofEpochDay(firstDay + d), (d == 0) ? firstMinute : 0, minutes);
+            if (found != null) return found;
+        }
+        return null;
+    }
+
+    // Earliest start in [fromMinute, midnight - minutes] of one date. Slot by slot: rooms clear
+    // in every slot the range from the slot's first candidate minute touches are free right
+    // there; rooms clear in the slots such a range fully covers may be free at some minute of
+    // the slot and are confirmed minute by minute with Room.isFree, outside the lock.
+    private Availability earliestFreeOn(LocalDate date, int fromMinute, int minutes) {
+        DayView view = view(date);
+        Room[] snapshot = view.rooms;
+        int lastStart = Room.MINUTES_PER_DAY - minutes;
+        for (int s = fromMinute / SLOT_MINUTES; s * SLOT_MINUTES <= lastStart; s++) {
+            int windowStart = Math.max(fromMinute, s * SLOT_MINUTES);
+            int windowEnd = Math.min((s + 1) * SLOT_MINUTES, lastStart + 1);
+            if (windowStart >= windowEnd) continue;
+            long[] sure;
+            long[] maybe;
+            boolean any = false;
+            synchronized (this) {
+                long[][] busy = view.busy;
+                int words = busy[0].length;
+                sure = new long[words];
+                maybe = new long[words];
+                int touchedLast = (windowStart + minutes - 1) / SLOT_MINUTES;
+                int coveredLast = (windowStart + minutes) / SLOT_MINUTES - 1;
+                for (int w = 0; w < words; w++) {
+                    long m = roomMask(view.roomCount, w);
+                    for (int k = s + 1; k <= coveredLast; k++) m &= ~busy[k][w];
+                    long clear = m & ~busy[s][w];
+                    for (int k = Math.max(s + 1, coveredLast + 1); k <= touchedLast; k++) clear &= ~busy[k][w];
+                    sure[w] = clear;
+                    maybe[w] = m;
+                    if (m != 0) any = true;
+                }
+            }
+            if (!any) continue;
+            for (int t = windowStart; t < windowEnd; t++) {
+                for (int w = 0; w < maybe.length; w++) {
+                    long bits = maybe[w];
+                    while (bits != 0) {
+                        int bit = w * 64 + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                        boolean free = (t == windowStart && (sure[w] & (1L << bit)) != 0)
+                                || snapshot[bit].isFree(date, t, t + minutes);
+                        if (free) return new Availability(snapshot[bit], date.atStartOfDay().plusMinutes(t));
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // Result of findEarliestFree: a free room and the start time
+    public static class Availability {
+        private final Room room;
+        private final LocalDateTime start;
+
+        Availability(Room room, LocalDateTime start) {
+            this.room = room;
+            this.start = start;
+        }
+
+        public Room getRoom() {
+            return room;
+        }
+
+        public LocalDateTime getStart() {
+            return start;
+        }
+    }
+
+    // ---------- day bitmaps ----------
+    // busy bitmaps of a day with the rooms they cover (read them under this object's lock)
+    private static class DayView {
+        long[][] busy;
+        Room[] rooms;
+        int roomCount;
+    }
+
+    // bits of the first roomCount rooms in word w
+    private static long roomMask(int roomCount, int w) {
+        int bitsInWord = Math.max(0, Math.min(64, roomCount - w * 64));
+        return (bitsInWord == 64) ? -1L : (1L << bitsInWord) - 1;
+    }
+
+    // The day's bitmaps: cached, or built from every room's bookings outside the lock (rooms
+    // are not called under it) and cached if nothing changed meanwhile
+    private DayView view(LocalDate date) {
+        long key = date.toEpochDay();
+        DayView view = new DayView();
+        long seen;
+        synchronized (this) {
+            view.rooms = rooms;
+            view.roomCount = roomCount;
+            int d = findDay(key);
+            if (d >= 0) {
+                dayUsed[d] = ++useClock;
+                view.busy = dayBusy[d];
+                return view;
+            }
+            seen = changes;
+        }
+        long[][] busy = new long[SLOTS][Math.max(1, (view.roomCount + 63) >>> 6)];
+        for (int r = 0; r < view.roomCount; r++) setRoomBits(busy, r, view.rooms[r].getBookings(date));
+        view.busy = busy;
+        synchronized (this) {
+            if (changes == seen && findDay(key) < 0) dayUsed[addDay(key, busy)] = ++useClock;
+        }
+        return view;
+    }
+
+    private int findDay(long key) {
+        for (int i = 0; i < dayCount; i++) {
+            if (dayKeys[i] == key) return i;
+        }
+        return -1;
+    }
+
+    private int addDay(long key, long[][] busy) {
+        int d;
+        if (dayCount < MAX_CACHED_DAYS) {
+            if (dayCount == dayKeys.length) {
+                long[] keys = new long[dayKeys.length * 2];
+                long[][][] maps = new long[dayKeys.length * 2][][];
+                long[] used = new long[dayKeys.length * 2];
+                System.arraycopy(dayKeys, 0, keys, 0, dayCount);
+                System.arraycopy(dayBusy, 0, maps, 0, dayCount);
+                System.arraycopy(dayUsed, 0, used, 0, dayCount);
+                dayKeys = keys;
+                dayBusy = maps;
+                dayUsed = used;
+            }
+            d = dayCount++;
+        } else {
+            d = 0;
+            for (int i = 1; i < dayCount; i++) {
+                if (dayUsed[i] < dayUsed[d]) d = i;
+            }
+        }
+        dayKeys[d] = key;
+        dayBusy[d] = busy;
+        return d;
+    }
+
+    // clear the room's bit in every slot, then set it for the slots its bookings overlap
+    // (a room registered after the bitmaps were sized has no bit in them)
+    private static void setRoomBits(long[][] busy, int roomBit, Room.Booking[] bookings) {
+        int w = roomBit >>> 6;
+        if (w >= busy[0].length) return;
+        long mask = 1L << roomBit;
+        for (int s = 0; s < SLOTS; s++) busy[s][w] &= ~mask;
+        for (int i = 0; i < bookings.length; i++) {
+            int first = bookings[i].getStartMinute() / SLOT_MINUTES;
+            int last = (bookings[i].getEndMinute() - 1) / SLOT_MINUTES;
+            for (int s = first; s <= last; s++) busy[s][w] |= mask;
+        }
+    }
+}
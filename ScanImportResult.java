@@ -0,0 +1,107 @@
+package smartoffice.v1;
+
+/**
+ * ScanImportResult: counters of one AttendanceManager.importScans call.
+ *
+ * - linesRead    = non-empty lines in the input
+ * - imported     = scans appended and indexed
+ * - malformed    = lines that did not parse (bad columns, number or timestamp)
+ * - invalid      = parsed, but employee id not positive or timestamp in the future
+ * - duplicates   = repeated inside the import (same employee, timestamp and direction)
+ * - alreadyKnown = the same scan was already recorded
+ */
+public class ScanImportResult {
+    private long linesRead;
+    private long imported;
+    private long malformed;
+    private long invalid;
+    private long duplicates;
+    private long alreadyKnown;
+    private long batches;
+    private long elapsedNanos;
+    private String firstError; // reason and line number of the first malformed line
+
+    void countLine() {
+        linesRead++;
+    }
+
+    void countImported(int n) {
+        imported += n;
+        batches++;
+    }
+
+    void countMalformed(long lineNumber, String reason) {
+        malformed++;
+        if (firstError == null) firstError = "line " + lineNumber + ": " + reason;
+    }
+
+    void countInvalid() {
+        invalid++;
+    }
+
+    void countDuplicate() {
+        duplicates++;
+    }
+
+    void countAlreadyKnown() {
+        alreadyKnown++;
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getLinesRead() {
+        return linesRead;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getMalformed() {
+        return malformed;
+    }
+
+    public long getInvalid() {
+        return invalid;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getAlreadyKnown() {
+        return alreadyKnown;
+    }
+
+    // All lines that were not imported
+    public long getRejected() {
+        return malformed + invalid + duplicates + alreadyKnown;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getRowsPerSecond() {
+        if (elapsedNanos == 0) return 0.0;
+        return linesRead * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    public String getFirstError() {
+        return firstError;
+    }
+
+    public String toString() {
+        return "Imported " + imported + " of " + linesRead + " scans in " + batches + " batches ("
+                + String.format("%.0f", getRowsPerSecond()) + " rows/s); rejected " + getRejected()
+                + " (malformed " + malformed + ", invalid " + invalid + ", duplicates " + duplicates
+                + ", already recorded " + alreadyKnown + ")"
+                + (firstError == null ? "" : "; first error at " + firstError);
+    }
+}
@@ -0,0 +1,104 @@
+package smartoffice.v1;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * ShardTool: changes the shard count of a ShardedAttendanceManager layout.
+ *
+ * Usage (run while the CLI is stopped; use the same partition scheme and log settings
+ * the engine runs with):
+ *   java smartoffice.v1.ShardTool attendance.csv <newShardCount> [NONE|MONTHLY|DAILY] [--wal]
+ *
+ * - every scan is copied, one old shard at a time, into the shard files of the new count
+ * - "<stem>.shards" is switched to the new count only once the new files are complete, then
+ *   the old shard files are deleted; an interrupted run leaves the old layout in charge
+ *   (files of the unfinished new layout are removed by the next run)
+ * - a plain attendance.csv (never sharded) is split as if it were a single shard
+ */
+public class ShardTool {
+    private static final int COPY_BATCH_ROWS = 4096;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ShardTool <attendance.csv> <newShardCount> [NONE|MONTHLY|DAILY] [--wal]");
+            return;
+        }
+        String path = args[0];
+        int newCount = Integer.parseInt(args[1]);
+        AttendanceOptions options = new AttendanceOptions();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--wal")) options.setWriteAheadLog(true);
+            else options.setPartitionScheme(AttendanceOptions.PartitionScheme.valueOf(args[i]));
+        }
+        reshard(path, newCount, options);
+    }
+
+    // Move every scan of the layout at 'path' into newCount shards
+    public static void reshard(String path, int newCount, AttendanceOptions options) throws IOException {
+        if (newCount < 1) throw new IllegalArgumentException("Shard count must be at least 1");
+        int oldCount = ShardedAttendanceManager.readShardCount(path);
+        if (oldCount == newCount) {
+            System.out.println(path + " already has " + newCount + " shards");
+            return;
+        }
+        int removed = deleteShardFiles(path, newCount);
+        if (removed > 0) System.out.println("Removed " + removed + " files of an unfinished re-shard");
+
+        ShardedAttendanceManager target = new ShardedAttendanceManager(path, newCount, options, false);
+        long copied = 0;
+        try {
+            if (oldCount < 0) {
+                copied += copy(new AttendanceManager(path, options), target);
+            } else {
+                for (int k = 0; k < oldCount; k++) {
+                    copied += copy(new AttendanceManager(ShardedAttendanceManager.shardPath(path, k, oldCount), options), target);
+                }
+            }
+        } finally {
+            target.close();
+        }
+
+        ShardedAttendanceManager.writeShardCount(path, newCount);
+        if (oldCount > 0) deleteShardFiles(path, oldCount);
+        System.out.println("Re-sharded " + copied + " scans of " + path + " from "
+                + ((oldCount < 0) ? "an unsharded file" : oldCount + " shards") + " into " + newCount + " shards"
+                + ((oldCount < 0) ? " (" + path + " itself was left in place)" : ""));
+    }
+
+    // all scans of one source shard into the target layout, then close the source
+    private static long copy(AttendanceManager source, ShardedAttendanceManager target) {
+        try {
+            AttendanceRecord[] recs = source.getAllRecords();
+            for (int from = 0; from < recs.length; from += COPY_BATCH_ROWS) {
+                target.recordAttendance(recs, from, Math.min(recs.length, from + COPY_BATCH_ROWS));
+            }
+            target.flush();
+            return recs.length;
+        } finally {
+            source.close();
+        }
+    }
+
+    // delete every file (CSV, partitions, logs, snapshots) of the layout with shardCount shards
+    private static int deleteShardFiles(String path, int shardCount) throws IOException {
+        File dir = new File(path).getAbsoluteFile().getParentFile();
+        File[] files = dir.listFiles();
+        if (files == null) return 0;
+        int removed = 0;
+        for (int k = 0; k < shardCount; k++) {
+            String prefix = ShardedAttendanceManager.shardFilePrefix(path, k, shardCount);
+            for (int i = 0; i < files.length; i++) {
+                String name = files[i].getName();
+                // "shard1of4" must not match "shard1of40"
+                if (name.startsWith(prefix) && name.length() > prefix.length()
+                        && (name.charAt(prefix.length()) == '.' || name.charAt(prefix.length()) == '-')) {
+                    Files.delete(files[i].toPath());
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,473 @@
+package smartoffice.v1;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ShardedAttendanceManager: attendance split by employee id over N independent AttendanceManagers.
+ *
+ * - shard of an employee = hash(employeeId) mod N, so all scans of one employee live in one shard
+ * - shard k of N is stored under "<stem>.shard<k>of<N><ext>" (attendance.shard0of4.csv, ...), with
+ *   its own partitions, index, write-ahead log and group-commit writer thread; AttendanceOptions
+ *   apply to every shard (the resident-row budget is per shard)
+ * - writers of different shards never share a lock or a file
+ * - "<stem>.shards" holds N; opening with another count fails, use ShardTool to re-shard;
+ *   the shards are opened (loaded, logs replayed) in parallel
+ * - reports fan out: every shard streams its rows in employee id order, computed a block at a
+ *   time with the shards' blocks filled on the fork-join pool at the same time, and the
+ *   streams are k-way merged into the sinks, so at most a block and a half per shard is held
+ *   (a single AttendanceManager lists employees in the order they were first seen)
+ * - range queries merge the shards' timestamp-sorted results; query() merges the shards'
+ *   cursors lazily, so paging and resume positions work as with one manager
+ * - importScans parses the file once and hands each shard its scans; the estimates union the
+ *   shards' sketches (every employee is counted by one shard only)
+ *
+ * Addresses: horizontal partitioning, parallel fan-out / merge
+ */
+public class ShardedAttendanceManager {
+    private final String attendanceCsvPath;
+    private final AttendanceManager[] shards;
+
+    public ShardedAttendanceManager(String attendanceCsvPath, int shardCount) {
+        this(attendanceCsvPath, shardCount, new AttendanceOptions());
+    }
+
+    // Overloaded constructor: start-up settings shared by all shards
+    public ShardedAttendanceManager(String attendanceCsvPath, int shardCount, AttendanceOptions options) {
+        this(attendanceCsvPath, shardCount, options, true);
+    }
+
+    // checkLayout false: ShardTool building a new layout next to the current one
+    ShardedAttendanceManager(String attendanceCsvPath, int shardCount, AttendanceOptions options, boolean checkLayout) {
+        if (shardCount < 1) throw new IllegalArgumentException("Shard count must be at least 1");
+        this.attendanceCsvPath = attendanceCsvPath;
+        if (checkLayout) {
+            int stored = readShardCount(attendanceCsvPath);
+            if (stored > 0 && stored != shardCount) {
+                throw new IllegalStateException(attendanceCsvPath + " is split into " + stored
+                        + " shards, not " + shardCount + "; re-shard it with ShardTool first");
+            }
+            if (stored < 0) writeShardCount(attendanceCsvPath, shardCount);
+        }
+        shards = openShards(attendanceCsvPath, shardCount, options);
+    }
+
+    // every shard opened on the fork-join pool at the same time; if one fails, the ones
+    // already open are closed again
+    private static AttendanceManager[] openShards(final String attendanceCsvPath, final int shardCount,
+                                                  final AttendanceOptions options) {
+        final AttendanceManager[] out = new AttendanceManager[shardCount];
+        RecursiveAction[] tasks = new RecursiveAction[shardCount];
+        for (int k = 0; k < shardCount; k++) {
+            final int shard = k;
+            tasks[k] = new RecursiveAction() {
+                protected void compute() {
+                    out[shard] = new AttendanceManager(shardPath(attendanceCsvPath, shard, shardCount), options);
+                }
+            };
+        }
+        try {
+            invokeAll(tasks);
+        } catch (RuntimeException e) {
+            for (int k = 0; k < shardCount; k++) {
+                if (out[k] != null) out[k].close();
+            }
+            throw e;
+        }
+        return out;
+    }
+
+    // run the tasks on the common pool and wait for all of them
+    private static void invokeAll(final RecursiveAction[] tasks) {
+        if (tasks.length == 1) {
+            tasks[0].invoke();
+            return;
+        }
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    // Shard holding an employee's scans
+    public int shardOf(int employeeId) {
+        return shardOf(employeeId, shards.length);
+    }
+
+    static int shardOf(int employeeId, int shardCount) {
+        int x = employeeId * 0x9E3779B9;
+        x ^= x >>> 16;
+        return (x & 0x7fffffff) % shardCount;
+    }
+
+    // The manager of one shard (for per-shard tools and metrics)
+    public AttendanceManager getShard(int k) {
+        return shards[k];
+    }
+
+    // ========================= WRITES =============================
+    public void recordAttendance(AttendanceRecord rec) {
+        shards[shardOf(rec.getEmployeeId())].recordAttendance(rec);
+    }
+
+    // Overloaded: recs[from, to) are grouped per shard (order kept) and handed over as one batch each
+    public void recordAttendance(AttendanceRecord[] recs, int from, int to) {
+        int[] counts = new int[shards.length];
+        int[] shardOfRec = new int[to - from];
+        for (int i = from; i < to; i++) {
+            shardOfRec[i - from] = shardOf(recs[i].getEmployeeId());
+            counts[shardOfRec[i - from]]++;
+        }
+        for (int k = 0; k < shards.length; k++) {
+            if (counts[k] == 0) continue;
+            if (counts[k] == to - from) {
+                shards[k].recordAttendance(recs, from, to);
+                return;
+            }
+            AttendanceRecord[] batch = new AttendanceRecord[counts[k]];
+            int c = 0;
+            for (int i = from; i < to; i++) {
+                if (shardOfRec[i - from] == k) batch[c++] = recs[i];
+            }
+            shards[k].recordAttendance(batch, 0, c);
+        }
+    }
+
+    public AttendanceRecord simulateRFIDScan(int employeeId, boolean isCheckIn) {
+        return shards[shardOf(employeeId)].simulateRFIDScan(employeeId, isCheckIn);
+    }
+
+    public void flush() {
+        for (int k = 0; k < shards.length; k++) shards[k].flush();
+    }
+
+    public void checkpoint() throws IOException {
+        for (int k = 0; k < shards.length; k++) shards[k].checkpoint();
+    }
+
+    public void close() {
+        for (int k = 0; k < shards.length; k++) shards[k].close();
+    }
+
+    // ========================= QUERIES =============================
+    public boolean isPresent(int employeeId) {
+        return shards[shardOf(employeeId)].getOccupancy().isPresent(employeeId);
+    }
+
+    public int getPresentCount() {
+        int n = 0;
+        for (int k = 0; k < shards.length; k++) n += shards[k].getOccupancy().getPresentCount();
+        return n;
+    }
+
+    public AttendanceRecord[] collectRecordsForDate(LocalDate date) {
+        return collectRecordsBetween(date, date);
+    }
+
+    // Records between inclusive start and end, sorted by timestamp across all shards
+    public AttendanceRecord[] collectRecordsBetween(LocalDate start, LocalDate end) {
+        AttendanceRecord[] out = new AttendanceRecord[0];
+        for (int k = 0; k < shards.length; k++) {
+            AttendanceRecord[] recs = shards[k].collectRecordsBetween(start, end);
+            out = (out.length == 0) ? recs : mergeByTimestamp(out, recs);
+        }
+        return out;
+    }
+
+    // All records, shard after shard. Loads every partition of every shard.
+    public AttendanceRecord[] getAllRecords() {
+        AttendanceRecord[][] parts = new AttendanceRecord[shards.length][];
+        int total = 0;
+        for (int k = 0; k < shards.length; k++) {
+            parts[k] = shards[k].getAllRecords();
+            total += parts[k].length;
+        }
+        AttendanceRecord[] out = new AttendanceRecord[total];
+        int c = 0;
+        for (int k = 0; k < parts.length; k++) {
+            System.arraycopy(parts[k], 0, out, c, parts[k].length);
+            c += parts[k].length;
+        }
+        return out;
+    }
+
+    // Lazy cursor over all shards in the usual (timestamp, employee, direction) order; with an
+    // employee filter only the shards of those employees are read
+    public AttendanceCursor query(AttendanceQuery query) {
+        int[] employees = query.getEmployees();
+        boolean[] wanted = new boolean[shards.length];
+        int n = 0;
+        for (int k = 0; k < shards.length; k++) {
+            if (employees == null) wanted[k] = true;
+        }
+        if (employees != null) {
+            for (int i = 0; i < employees.length; i++) wanted[shardOf(employees[i])] = true;
+        }
+        for (int k = 0; k < shards.length; k++) {
+            if (wanted[k]) n++;
+        }
+        AttendanceCursor[] parts = new AttendanceCursor[n];
+        int c = 0;
+        for (int k = 0; k < shards.length; k++) {
+            if (wanted[k]) parts[c++] = shards[k].query(query);
+        }
+        return (n == 1) ? parts[0] : new AttendanceCursor(parts, query);
+    }
+
+    private static AttendanceRecord[] mergeByTimestamp(AttendanceRecord[] a, AttendanceRecord[] b) {
+        AttendanceRecord[] out = new AttendanceRecord[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            boolean bFirst = EpochTime.compare(b[j].getEpochSecond(), b[j].getNano(), a[i].getEpochSecond(), a[i].getNano()) < 0;
+            out[k++] = bFirst ? b[j++] : a[i++];
+        }
+        while (i < a.length) out[k++] = a[i++];
+        while (j < b.length) out[k++] = b[j++];
+        return out;
+    }
+
+    // ========================= APPROXIMATE ANALYTICS =============================
+    // Same answers as AttendanceManager's estimates (sketches must be on for every shard)
+    public long estimateDistinctEmployees(LocalDate start, LocalDate end) {
+        return estimateDistinctEmployees(start, end, null);
+    }
+
+    // Overloaded: only employees of one department
+    public long estimateDistinctEmployees(LocalDate start, LocalDate end, String department) {
+        HyperLogLog union = new HyperLogLog();
+        for (int k = 0; k < shards.length; k++) union.merge(shards[k].employeesSketch(start, end, department));
+        return union.estimate();
+    }
+
+    public double estimateHoursQuantile(LocalDate start, LocalDate end, double q) {
+        HoursSketch merged = new HoursSketch();
+        for (int k = 0; k < shards.length; k++) merged.merge(shards[k].hoursSketch(start, end));
+        return merged.quantile(q);
+    }
+
+    // ========================= BULK IMPORT =============================
+    // Import a reader export file; see AttendanceManager.importScans(Reader)
+    public ScanImportResult importScans(String path) throws IOException {
+        Reader in = new FileReader(path);
+        try {
+            return importScans(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    // Overloaded: the rows are parsed once, then each shard sorts, de-duplicates and records
+    // its own scans; the counters cover all shards
+    public ScanImportResult importScans(Reader in) throws IOException {
+        long start = System.nanoTime();
+        ScanImportResult result = new ScanImportResult();
+        AttendanceRecord[] recs = AttendanceManager.readScans(in, result);
+        int[] counts = new int[shards.length];
+        int[] shardOfRec = new int[recs.length];
+        for (int i = 0; i < recs.length; i++) {
+            shardOfRec[i] = shardOf(recs[i].getEmployeeId());
+            counts[shardOfRec[i]]++;
+        }
+        for (int k = 0; k < shards.length; k++) {
+            if (counts[k] == 0) continue;
+            AttendanceRecord[] batch = new AttendanceRecord[counts[k]];
+            int c = 0;
+            for (int i = 0; i < recs.length; i++) {
+                if (shardOfRec[i] == k) batch[c++] = recs[i];
+            }
+            shards[k].importParsed(batch, c, result);
+        }
+        result.setElapsedNanos(System.nanoTime() - start);
+        return result;
+    }
+
+    // ========================= REPORTS =============================
+    // rows held per shard while merging; a shard is topped up when below half
+    private static final int MERGE_BUFFER_ROWS = 6144;
+
+    // K-way merge of the shards' report streams (each in employee id order) into the sinks
+    private void fanOutReport(ReportRow.Kind kind, String title, long startDay, long endDay, ReportSink[] sinks) {
+        AttendanceManager.ReportStream[] streams = new AttendanceManager.ReportStream[shards.length];
+        ReportRow[][] buffers = new ReportRow[shards.length][];
+        int[] heads = new int[shards.length];
+        int[] ends = new int[shards.length];
+        int opened = 0;
+        try {
+            // opened here: a stream holds its shard's read lock, released by this thread
+            for (; opened < shards.length; opened++) {
+                streams[opened] = shards[opened].openReportStream(kind, startDay, endDay);
+                buffers[opened] = new ReportRow[MERGE_BUFFER_ROWS];
+            }
+            for (int s = 0; s < sinks.length; s++) sinks[s].begin(kind, title);
+            refill(streams, buffers, heads, ends);
+            while (true) {
+                int best = -1;
+                for (int k = 0; k < shards.length; k++) {
+                    if (heads[k] == ends[k]) continue;
+                    if (best < 0 || buffers[k][heads[k]].getEmployeeId() < buffers[best][heads[best]].getEmployeeId()) {
+                        best = k;
+                    }
+                }
+                if (best < 0) break;
+                ReportRow row = buffers[best][heads[best]];
+                buffers[best][heads[best]++] = null;
+                for (int s = 0; s < sinks.length; s++) sinks[s].row(row);
+                if (heads[best] == ends[best] && !streams[best].isDone()) refill(streams, buffers, heads, ends);
+            }
+            for (int s = 0; s < sinks.length; s++) sinks[s].end();
+        } finally {
+            for (int k = 0; k < opened; k++) streams[k].close();
+        }
+    }
+
+    // top up every unfinished shard buffer that is less than half full, all at once
+    private static void refill(final AttendanceManager.ReportStream[] streams, final ReportRow[][] buffers,
+                               final int[] heads, final int[] ends) {
+        RecursiveAction[] tasks = new RecursiveAction[streams.length];
+        int n = 0;
+        for (int k = 0; k < streams.length; k++) {
+            if (streams[k].isDone() || ends[k] - heads[k] >= MERGE_BUFFER_ROWS / 2) continue;
+            final int shard = k;
+            tasks[n++] = new RecursiveAction() {
+                protected void compute() {
+                    ReportRow[] buf = buffers[shard];
+                    int left = ends[shard] - heads[shard];
+                    System.arraycopy(buf, heads[shard], buf, 0, left);
+                    for (int i = left; i < ends[shard]; i++) buf[i] = null;
+                    heads[shard] = 0;
+                    ends[shard] = left + streams[shard].fill(buf, left, buf.length - left);
+                }
+            };
+        }
+        if (n == 0) return;
+        RecursiveAction[] exact = new RecursiveAction[n];
+        System.arraycopy(tasks, 0, exact, 0, n);
+        invokeAll(exact);
+    }
+
+    // console text + CSV file, like AttendanceManager's String-returning reports
+    private String reportToText(ReportRow.Kind kind, String title, long startDay, long endDay, String outCsv,
+                                String label) {
+        StringWriter text = new StringWriter();
+        CsvReportSink csv = new CsvReportSink(outCsv);
+        fanOutReport(kind, title, startDay, endDay, new ReportSink[] { new AppendableReportSink(text), csv });
+        if (csv.getError() != null) {
+            text.write("Failed to write " + label + " report CSV: " + csv.getError().getMessage() + System.lineSeparator());
+        }
+        return text.toString();
+    }
+
+    public String generateReportDaily(LocalDate date) {
+        String outCsv = "attendance-report-" + date.format(DateTimeFormatter.BASIC_ISO_DATE) + ".csv";
+        return reportToText(ReportRow.Kind.DAILY, AttendanceManager.dailyTitle(date), date.toEpochDay(),
+                date.toEpochDay(), outCsv, "daily");
+    }
+
+    public void generateReportDaily(LocalDate date, ReportSink... sinks) {
+        fanOutReport(ReportRow.Kind.DAILY, AttendanceManager.dailyTitle(date), date.toEpochDay(), date.toEpochDay(),
+                sinks);
+    }
+
+    public String generateReportWeekly(LocalDate anyDateInWeek) {
+        LocalDate monday = anyDateInWeek.with(java.time.DayOfWeek.MONDAY);
+        String outCsv = "attendance-report-week-" + monday.format(DateTimeFormatter.BASIC_ISO_DATE) + ".csv";
+        return reportToText(ReportRow.Kind.PERIOD, AttendanceManager.weeklyTitle(monday), monday.toEpochDay(),
+                monday.toEpochDay() + 6, outCsv, "weekly");
+    }
+
+    public void generateReportWeekly(LocalDate anyDateInWeek, ReportSink... sinks) {
+        LocalDate monday = anyDateInWeek.with(java.time.DayOfWeek.MONDAY);
+        fanOutReport(ReportRow.Kind.PERIOD, AttendanceManager.weeklyTitle(monday), monday.toEpochDay(),
+                monday.toEpochDay() + 6, sinks);
+    }
+
+    public String generateReportMonthly(int year, int month) {
+        LocalDate start = LocalDate.of(year, month, 1);
+        String outCsv = "attendance-report-month-" + year + String.format("%02d", month) + ".csv";
+        return reportToText(ReportRow.Kind.PERIOD, AttendanceManager.monthlyTitle(year, month), start.toEpochDay(),
+                start.withDayOfMonth(start.lengthOfMonth()).toEpochDay(), outCsv, "monthly");
+    }
+
+    public void generateReportMonthly(int year, int month, ReportSink... sinks) {
+        LocalDate start = LocalDate.of(year, month, 1);
+        fanOutReport(ReportRow.Kind.PERIOD, AttendanceManager.monthlyTitle(year, month), start.toEpochDay(),
+                start.withDayOfMonth(start.lengthOfMonth()).toEpochDay(), sinks);
+    }
+
+    // ========================= LAYOUT =============================
+    // "<dir>/<stem>.shard<k>of<n><ext>"
+    static String shardPath(String attendanceCsvPath, int k, int shardCount) {
+        return stemPath(attendanceCsvPath) + ".shard" + k + "of" + shardCount + extension(attendanceCsvPath);
+    }
+
+    // File prefix shared by every file of shard k of n (partitions, logs, snapshots)
+    static String shardFilePrefix(String attendanceCsvPath, int k, int shardCount) {
+        return new File(stemPath(attendanceCsvPath)).getName() + ".shard" + k + "of" + shardCount;
+    }
+
+    static String layoutPath(String attendanceCsvPath) {
+        return stemPath(attendanceCsvPath) + ".shards";
+    }
+
+    // Shard count recorded for the path (-1 if it was never opened sharded)
+    static int readShardCount(String attendanceCsvPath) {
+        File f = new File(layoutPath(attendanceCsvPath));
+        if (!f.exists()) return -1;
+        try {
+            String s = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8).trim();
+            return Integer.parseInt(s);
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Unreadable shard layout file " + f + ": " + e.getMessage());
+        }
+    }
+
+    // written to a temp file and moved into place, so a crash leaves the old count or the new one
+    static void writeShardCount(String attendanceCsvPath, int shardCount) {
+        String path = layoutPath(attendanceCsvPath);
+        try {
+            BufferedWriter w = new BufferedWriter(new FileWriter(path + ".tmp"));
+            try {
+                w.write(Integer.toString(shardCount));
+                w.newLine();
+            } finally {
+                w.close();
+            }
+            Files.move(Paths.get(path + ".tmp"), Paths.get(path), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write shard layout file " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static String stemPath(String path) {
+        File f = new File(path);
+        String name = f.getName();
+        int dot = name.lastIndexOf('.');
+        String stem = (dot <= 0) ? name : name.substring(0, dot);
+        return (f.getParent() == null) ? stem : f.getParent() + File.separator + stem;
+    }
+
+    private static String extension(String path) {
+        String name = new File(path).getName();
+        int dot = name.lastIndexOf('.');
+        return (dot <= 0) ? "" : name.substring(dot);
+    }
+}
@@ -0,0 +1,60 @@
+package smartoffice.v1;
+
+/**
+ * StringDictionary: assigns small int codes to repeated strings (names, methods).
+ *
+ * - codes are dense (0, 1, 2, ...) so columns can store an int instead of a reference
+ * - lookup is an open-addressing hash over arrays (no Maps)
+ */
+public class StringDictionary {
+    private String[] values = new String[16];
+    private int count;
+
+    private int[] slots = new int[32]; // code + 1, 0 = empty
+
+    // Code for a string, adding it if new
+    public int encode(String s) {
+        int mask = slots.length - 1;
+        int i = s.hashCode() & mask;
+        while (slots[i] != 0) {
+            int code = slots[i] - 1;
+            if (values[code].equals(s)) return code;
+            i = (i + 1) & mask;
+        }
+        if (count == values.length) {
+            String[] bigger = new String[values.length * 2];
+            System.arraycopy(values, 0, bigger, 0, count);
+            values = bigger;
+        }
+        values[count] = s;
+        slots[i] = count + 1;
+        count++;
+        if (count * 2 > slots.length) rehash();
+        return count - 1;
+    }
+
+    public String decode(int code) {
+        return values[code];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Rough heap footprint: both arrays plus each distinct String (header + chars)
+    public long estimateBytes() {
+        long bytes = (long) values.length * 4 + (long) slots.length * 4;
+        for (int i = 0; i < count; i++) bytes += 40 + values[i].length();
+        return bytes;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int code = 0; code < count; code++) {
+            int i = values[code].hashCode() & mask;
+            while (slots[i] != 0) i = (i + 1) & mask;
+            slots[i] = code + 1;
+        }
+    }
+}
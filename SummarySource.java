@@ -0,0 +1,15 @@
+package smartoffice.v1;
+
+/**
+ * Read side of the per-employee-per-day rollups used by the attendance reports.
+ *
+ * Implemented by the in-memory AttendanceIndex and by memory-mapped AttendanceSegments,
+ * so a report can be served from either (or both) without touching raw rows.
+ */
+public interface SummarySource {
+    // Distinct employee ids with at least one record in the inclusive day range
+    int[] employeesBetween(long startDay, long endDay);
+
+    // Rollup for one employee on one day, or null if there are no records
+    DailySummary summary(int employeeId, long epochDay);
+}